@@ -8,13 +8,26 @@ import org.kitpies.canvaslayout.adapter.TestAdapter;
 
 public class AdapterActivity extends AppCompatActivity {
 
+    private TestAdapter mTestAdapter;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_adapter);
 
         ListView listView = (ListView) findViewById(R.id.list);
-        TestAdapter testAdapter = new TestAdapter(this);
-        listView.setAdapter(testAdapter);
+        mTestAdapter = new TestAdapter(this);
+        listView.setAdapter(mTestAdapter);
+    }
+
+    public TestAdapter getTestAdapter() {
+        return mTestAdapter;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        //The pooled rows are inflated with this activity, don't keep them after it's destroyed.
+        mTestAdapter.getViewPool().clear();
     }
 }
@@ -0,0 +1,13 @@
+package org.kitpies.canvaslayout;
+
+import android.app.Application;
+
+public class CanvasApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        //The compiled designs must be registered before any canvas layout is inflated.
+        CanvasDesigns.install();
+    }
+}
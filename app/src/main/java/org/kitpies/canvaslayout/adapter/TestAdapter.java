@@ -1,21 +1,44 @@
 package org.kitpies.canvaslayout.adapter;
 
 import android.content.Context;
+import android.view.Gravity;
 import android.view.View;
+import android.view.View.MeasureSpec;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.BaseAdapter;
+import android.widget.LinearLayout;
 
+import org.kitpies.canvaslayout.CanvasDesigns;
 import org.kitpies.canvaslayout.R;
+import org.kitpies.canvaslayout.widget.CanvasLayout;
+import org.kitpies.canvaslayout.widget.CanvasViewPool;
+import org.kitpies.canvaslayout.widget.CompiledDesign;
 
 /**
  * Adapter for test.
  */
 public class TestAdapter extends BaseAdapter{
 
+    //About the rows of the first screen.
+    private static final int POOLED_ITEM_COUNT = 6;
+
     private Context mContext;
+    private CompiledDesign mItemDesign;
+    private CanvasViewPool mViewPool;
+    //The list width the item plan was prefetched for.
+    private int mPrefetchedWidth;
 
     public TestAdapter(Context context){
         mContext = context;
+        mItemDesign = CompiledDesign.find(CanvasDesigns.ITEM);
+        //The rows are inflated in the background before the list asks for them.
+        mViewPool = new CanvasViewPool(context);
+        mViewPool.prefill(R.layout.item_view,POOLED_ITEM_COUNT);
+    }
+
+    public CanvasViewPool getViewPool() {
+        return mViewPool;
     }
 
     @Override
@@ -39,9 +62,50 @@ public class TestAdapter extends BaseAdapter{
         if(convertView!=null){
             canvasLayout = convertView;
         }else {
-            canvasLayout = View.inflate(mContext, R.layout.item_view,null);
+            //Take a row inflated in the background, build one from the compiled design if there is none.
+            canvasLayout = mViewPool.obtain(R.layout.item_view);
+            if(canvasLayout==null){
+                canvasLayout = newRow();
+            }
+        }
+        if(parent instanceof AbsListView){
+            prefetchItemPlan((AbsListView) parent,canvasLayout);
         }
 
         return canvasLayout;
     }
+
+    /**
+     * Build a row like item_view.xml, its canvas layout is built by the compiled design without parsing the<br/>
+     * xml. The xml is inflated if the design isn't compiled or can't be built.
+     */
+    private View newRow(){
+        CanvasLayout canvas = mItemDesign!=null?mItemDesign.create(mContext):null;
+        if(canvas==null){
+            return View.inflate(mContext, R.layout.item_view,null);
+        }
+        LinearLayout row = new LinearLayout(mContext);
+        row.setOrientation(LinearLayout.VERTICAL);
+        row.setGravity(Gravity.CENTER);
+        row.setLayoutParams(new AbsListView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,ViewGroup.LayoutParams.MATCH_PARENT));
+        row.addView(canvas,new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,ViewGroup.LayoutParams.WRAP_CONTENT));
+        return row;
+    }
+
+    /**
+     * Prefetch the plan of the item design for the measure specs the list and the row measure its canvas<br/>
+     * layout with, once the list is measured. The list measures a row with its width without its list padding<br/>
+     * and an unspecified height, the row gives them to its canvas layout without its own padding.
+     */
+    private void prefetchItemPlan(AbsListView list, View row){
+        int width = list.getMeasuredWidth();
+        if(mItemDesign==null||width==0||width==mPrefetchedWidth)return;
+        mPrefetchedWidth = width;
+        int rowWidthSpec = ViewGroup.getChildMeasureSpec(MeasureSpec.makeMeasureSpec(width,MeasureSpec.EXACTLY),
+                list.getListPaddingLeft()+list.getListPaddingRight(),ViewGroup.LayoutParams.MATCH_PARENT);
+        int rowHeightSpec = MeasureSpec.makeMeasureSpec(list.getMeasuredHeight(),MeasureSpec.UNSPECIFIED);
+        mItemDesign.prefetchLayoutPlan(
+                ViewGroup.getChildMeasureSpec(rowWidthSpec,row.getPaddingLeft()+row.getPaddingRight(),ViewGroup.LayoutParams.MATCH_PARENT),
+                ViewGroup.getChildMeasureSpec(rowHeightSpec,row.getPaddingTop()+row.getPaddingBottom(),ViewGroup.LayoutParams.WRAP_CONTENT));
+    }
 }
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2016 YuHao-KitPies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitpies.canvaslayout.widget;
+
+import android.os.Process;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The executors of the background work of the canvas layouts: inflating pooled views, decoding images,<br/>
+ * rendering tiles and prefetching layout plans.
+ */
+final class BackgroundExecutors {
+
+    private BackgroundExecutors() {
+    }
+
+    /**
+     * @param name The name of the thread.
+     * @return An executor of one daemon thread with the background priority, so it never competes with<br/>
+     *         the UI thread or keeps the process alive.
+     */
+    static ExecutorService single(final String name){
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                },name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2016 YuHao-KitPies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitpies.canvaslayout.widget;
+
+import android.database.DataSetObservable;
+import android.database.DataSetObserver;
+import android.view.View;
+
+/**
+ * <h1>Description:</h1>
+ * Supply the items of a virtualized canvas layout, see {@link CanvasLayout#setAdapter(CanvasAdapter)}.<br/>
+ * Every item has a design rect and a layout_zDepth, but only the items inside the visible area of the<br/>
+ * canvas layout have a view. The views are recycled by view type when the items scroll out.<br/>
+ */
+public abstract class CanvasAdapter {
+
+    private final DataSetObservable mDataSetObservable = new DataSetObservable();
+
+    /**
+     * @return The number of items.
+     */
+    public abstract int getCount();
+
+    /**
+     * Write the design of the item into the layout params, e.g. setDesignX, setDesignWidth and setZDepth.
+     * @param position The position of the item.
+     * @param params The layout params to write in, it may hold the design of another item.
+     */
+    public abstract void getItemDesign(int position, CanvasLayout.LayoutParams params);
+
+    /**
+     * @return The view type of the item. Views are only recycled for items of the same type.
+     */
+    public int getItemViewType(int position){
+        return 0;
+    }
+
+    /**
+     * Create a view for the view type, it will be bound by {@link #onBindView(View, int)}.
+     */
+    public abstract View onCreateView(CanvasLayout parent, int viewType);
+
+    /**
+     * Show the item in the view, the view may have shown another item of the same view type.
+     */
+    public abstract void onBindView(View view, int position);
+
+    /**
+     * Call it if the items changed, every visible item is bound again.
+     */
+    public void notifyDataSetChanged(){
+        mDataSetObservable.notifyChanged();
+    }
+
+    void registerDataSetObserver(DataSetObserver observer){
+        mDataSetObservable.registerObserver(observer);
+    }
+
+    void unregisterDataSetObserver(DataSetObserver observer){
+        mDataSetObservable.unregisterObserver(observer);
+    }
+}
@@ -16,15 +16,40 @@
 package org.kitpies.canvaslayout.widget;
 
 import android.content.Context;
+import android.content.res.ColorStateList;
 import android.content.res.TypedArray;
+import android.database.DataSetObserver;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Trace;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.AttributeSet;
+import android.util.SparseArray;
+import android.util.TypedValue;
+import android.view.LayoutInflater;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.view.ViewTreeObserver;
+import android.widget.ImageView;
+import android.widget.TextView;
 
 import org.kitpies.canvaslayout.R;
+import org.kitpies.canvaslayout.geometry.CanvasGeometry;
+import org.kitpies.canvaslayout.geometry.ChildStore;
+import org.kitpies.canvaslayout.geometry.DrawOrder;
+import org.kitpies.canvaslayout.geometry.LayoutPlan;
+import org.kitpies.canvaslayout.geometry.LayoutPlanCache;
+import org.kitpies.canvaslayout.geometry.SpatialGrid;
+import org.xmlpull.v1.XmlPullParser;
 
-import java.util.Comparator;
-import java.util.TreeSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * <h1>Description:</h1>
@@ -74,224 +99,1849 @@ import java.util.TreeSet;
  *       	&nbsp;&lt;/org.kitpies.canvaslayout.widget.CanvasLayout&gt;<br/>
  * </code>
  *
+ * Set design_name to compile the design at build time, see {@link CompiledDesign}.<br/>
+ * <br/>
+ * If canvas layouts are nested, set flatten_nested_canvases to true on the outer one. The children of the<br/>
+ * nested canvas layouts are moved into it, and placed in one pass. See {@link #flattenNestedCanvases()}.<br/>
+ * <br/>
+ * If the children are stacked, set cull_occluded_children to true. A child which is covered by an opaque<br/>
+ * child in front of it isn't drawn. A child is opaque if {@link View#isOpaque()} or layout_opaque is true.<br/>
+ * <br/>
+ * If the children at the back are static decorations, set layout_static to true on them. They are drawn once<br/>
+ * into a cached bitmap, and only the children in front of them are drawn every frame. The bitmap is drawn<br/>
+ * again when a static child is invalidated, moved, resized, shown or hidden.<br/>
+ * <br/>
+ * If there are many touchable children, set index_touch_targets to true. The touched or hovered child is found<br/>
+ * with a spatial index of the children rects, and the children under the pointer are tried from front to back.<br/>
+ * <br/>
+ * For thousands of items, e.g. a floor plan, set a {@link CanvasAdapter} instead of adding children.<br/>
+ * Only the items inside the visible area get a view, and the views are recycled as the canvas scrolls.<br/>
+ * <br/>
+ * If the canvas is zoomed far beyond the screen size, set tiled_rendering to true. The children are drawn<br/>
+ * from bitmap tiles at discrete zoom levels, rendered on a worker thread and cached, see {@link #setTiledRendering(boolean)}.<br/>
+ * <br/>
+ * To change the design of many children at runtime, use a {@link Transaction}. The changes are applied<br/>
+ * together with one layout pass, see {@link #beginTransaction()}.<br/>
+ * <br/>
+ * To find out how often and how long the canvas layout measures and lays out, enable the metrics, see<br/>
+ * {@link #setMetricsEnabled(boolean)}. The passes show up as Trace sections too.<br/>
+ * <br/>
+ * If many canvas layouts have the same design, e.g. the items of an adapter view, set share_layout_plan<br/>
+ * to true. The children rects are computed once and shared by {@link LayoutPlanCache#getDefault()}.<br/>
+ * <br/>
+ * The text size of a TextView child is scaled like its height if layout_design_text_size is set. Set layout_fit_text<br/>
+ * to shrink the text until it fits into the child, the fitted sizes are cached.<br/>
+ * <br/>
+ * Set layout_image_src instead of android:src on an ImageView child, and the image is decoded for the size<br/>
+ * of the child rather than at full resolution. The decoded bitmaps are cached and shared by every canvas layout.<br/>
+ * <br/>
  * The layout_zDepth accept a float value to specify the widget position in z-axis. A widget with a larger<br/>
- * layout_zDepth value will be layout more front than another.<br/>
+ * layout_zDepth value will be layout more front than another. Widgets with the same layout_zDepth<br/>
+ * keep their order in the hierarchy.<br/>
  */
-public class CanvasLayout extends ViewGroup implements Comparator<View>{
+public class CanvasLayout extends ViewGroup {
 
-    private TreeSet<View> mDrawList = new TreeSet<View>(this);
+    //Children indexes sorted by layout_zDepth from back to front, and the children it was sorted for.
+    private int[] mDrawOrder = new int[0];
+    //The position of every child in mDrawOrder.
+    private int[] mDrawRanks = new int[0];
+    private float[] mDrawDepths = new float[0];
+    private View[] mDrawOrderChildren = new View[0];
+    private boolean mDrawOrderDirty = true;
+    //A work array of the sort.
+    private int[] mDrawSorted = new int[0];
+    //Only used by a flattened canvas layout, the frame index of every child.
+    private int[] mDrawFrames = new int[0];
 
     private int mDesignWidth = 0;
     private int mDesignHeight = 0;
 
-    public CanvasLayout(Context context) {
-        super(context);
+    //The scaling math, and the children specs and rects it works on, packed by child slot.
+    private final CanvasGeometry mGeometry = new CanvasGeometry();
+    private final ChildStore mChildStore = new ChildStore();
+    //The child and the layout params of every slot when the store was synced, null for a foreign layout params.
+    private View[] mStoreChildren = new View[0];
+    private LayoutParams[] mStoreParams = new LayoutParams[0];
+    private int mContentRight, mContentBottom;
+
+    //The measure cache. Children's rects are reused while the key doesn't change.
+    private boolean mMeasureCacheValid = false;
+    private int mCachedWidthMeasureSpec, mCachedHeightMeasureSpec;
+    private float mCachedStretchXS, mCachedStretchYS, mCachedVirtualXS, mCachedVirtualYS;
+    private int mCachedVirtualXPadding, mCachedVirtualYPadding;
+
+    private boolean mLayoutPlanShared = false;
+    //The key of the shared plan the child store holds, so it isn't looked up again while nothing changed.
+    private boolean mLayoutPlanHeld = false;
+    private int mHeldPlanSpecsVersion;
+    private int mHeldPlanDesignWidth, mHeldPlanDesignHeight;
+    private int mHeldPlanWidthMeasureSpec, mHeldPlanHeightMeasureSpec;
+
+    //The design compiled at build time, the children's layout params are taken from it.
+    private CompiledDesign mCompiledDesign;
+    //While the children of the xml are inflated, the parser of the xml, the depth of the children in it and
+    //the number of children inflated. A child's position in the design is only known from them.
+    private XmlPullParser mInflationParser;
+    private int mInflationDepth;
+    private int mInflatedChildCount;
+
+    //Whether nested canvas layouts were flattened into this one.
+    private boolean mFlattened = false;
+    private boolean mFlattenOnInflate = false;
+    //If this canvas layout was flattened into another, it's the frame of its former children.
+    private CanvasLayout mFlattenedInto;
+    private boolean mFrameChanged;
+
+    //Skip drawing the children covered by an opaque child in front of them.
+    private boolean mOcclusionCulling = false;
+    private int[] mOccluders = new int[0];
+    private int mCulledChildCount;
+
+    //The spatial index of the children rects for the touch dispatch, and the children it was built for.
+    private boolean mTouchIndexEnabled = false;
+    private final SpatialGrid mTouchIndex = new SpatialGrid();
+    private View[] mTouchIndexChildren = new View[0];
+    private int mTouchIndexWidth, mTouchIndexHeight;
+    private int[] mTouchCandidates = new int[0];
+    //The children order the view group finds the touched child in, while a touch or a hover is dispatched.
+    private boolean mTouchOrdered;
+    private int[] mTouchOrder = new int[0];
+    private boolean[] mTouchCandidateFlags = new boolean[0];
+
+    //The tiles the children are drawn from, null unless the tiled rendering is enabled.
+    private TileRenderer mTileRenderer;
+    private float mRenderScale = 0.0f;
+    //Whether the children were drawn by themselves, because one of them can't be drawn from the tiles.
+    private boolean mTilesFallenBack;
+
+    //The area to invalidate for the committed transaction, and the children whose new rect is added after the layout.
+    private final Rect mTransactionDirty = new Rect();
+    private final ArrayList<View> mTransactionChildren = new ArrayList<View>();
+
+    //The static children at the back, drawn into a cached bitmap. Their order, rects and visibility are
+    //recorded when they are drawn, so any change of them is found before the next frame.
+    private Bitmap mStaticBitmap;
+    private Canvas mStaticCanvas;
+    private boolean mStaticCacheValid = false;
+    private boolean mDrawingStaticCache = false;
+    private int mStaticCount;
+    private View[] mStaticChildren = new View[0];
+    private int[] mStaticRects = new int[0];
+    private int[] mStaticVisibilities = new int[0];
+    private int mStaticScrollX, mStaticScrollY;
+
+    //The statistics of the passes, null while they are disabled.
+    private CanvasLayoutMetrics mMetrics;
+    private CanvasLayoutMetrics.Listener mMetricsListener;
+    private int mRemeasuredChildCount;
+    private int mCachedChildCount;
+
+    //The virtualized items, see setAdapter().
+    private CanvasAdapter mAdapter;
+    private int mItemCount;
+    private boolean mItemsDirty;
+    private int[] mItemSpecs = new int[0];
+    private float[] mItemDepths = new float[0];
+    private int[] mItemRects = new int[0];
+    private View[] mItemViews = new View[0];
+    //The item rects are kept until the items or the scaling change, the visible items are found through the index.
+    private final SpatialGrid mItemIndex = new SpatialGrid();
+    private int[] mVisibleItems = new int[0];
+    private int mItemContentRight, mItemContentBottom;
+    //Reused to read the design of every item from the adapter.
+    private final LayoutParams mItemDesign = new LayoutParams();
+    private final SparseArray<ArrayList<View>> mScrapViews = new SparseArray<ArrayList<View>>();
+    private final Rect mViewport = new Rect();
+    private int mViewportMargin = 0;
+    private final DataSetObserver mItemsObserver = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            onItemsChanged();
+        }
+
+        @Override
+        public void onInvalidated() {
+            onItemsChanged();
+        }
+    };
+    private final ViewTreeObserver.OnScrollChangedListener mScrollChangedListener = new ViewTreeObserver.OnScrollChangedListener() {
+        @Override
+        public void onScrollChanged() {
+            updateVisibleItems(false);
+            inflateVisibleLazyChildren(false);
+        }
+    };
+
+    /**
+     * Called when a lazy child is inflated, see layout_lazy.
+     */
+    public interface OnLazyChildInflateListener {
+        /**
+         * @param placeholder The child declared with layout_lazy, it's removed.
+         * @param child The view inflated in its place, with its layout params.
+         */
+        void onLazyChildInflated(CanvasLayout parent, View placeholder, View child);
+    }
+
+    //Whether a child may still be lazy, they are looked for after the layout and when the canvas scrolls.
+    private boolean mHasLazyChildren = false;
+    private OnLazyChildInflateListener mOnLazyChildInflateListener;
+
+    public CanvasLayout(Context context) {
+        super(context);
+        setChildrenDrawingOrderEnabled(true);
+    }
+
+    public CanvasLayout(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        setChildrenDrawingOrderEnabled(true);
+        TypedArray a = context.obtainStyledAttributes(attrs,R.styleable.CanvasLayout);
+        mDesignWidth = a.getInt(R.styleable.CanvasLayout_design_width,0);
+        mDesignHeight = a.getInt(R.styleable.CanvasLayout_design_height,0);
+        mLayoutPlanShared = a.getBoolean(R.styleable.CanvasLayout_share_layout_plan,false);
+        String designName = a.getString(R.styleable.CanvasLayout_design_name);
+        mFlattenOnInflate = a.getBoolean(R.styleable.CanvasLayout_flatten_nested_canvases,false);
+        mOcclusionCulling = a.getBoolean(R.styleable.CanvasLayout_cull_occluded_children,false);
+        mTouchIndexEnabled = a.getBoolean(R.styleable.CanvasLayout_index_touch_targets,false);
+        boolean tiled = a.getBoolean(R.styleable.CanvasLayout_tiled_rendering,false);
+        a.recycle();
+        setTiledRendering(tiled);
+        if(designName!=null){
+            mCompiledDesign = CompiledDesign.find(designName);
+        }
+        if(mCompiledDesign!=null&&attrs instanceof XmlPullParser){
+            mInflationParser = (XmlPullParser) attrs;
+            mInflationDepth = mInflationParser.getDepth()+1;
+        }
+    }
+
+    @Override
+    protected void onFinishInflate() {
+        super.onFinishInflate();
+        //The children added from now on aren't the ones of the compiled design.
+        mInflationParser = null;
+        if(mFlattenOnInflate){
+            flattenNestedCanvases();
+        }
+    }
+
+    /**
+     * Move the children of the nested canvas layouts into this canvas layout, so every descendant is<br/>
+     * measured and laid out in one pass. A nested canvas layout stays as an empty child, it still draws<br/>
+     * its background and becomes the frame of its former children: their rects are computed with its<br/>
+     * design size and scaling, and they are drawn right above it in z-axis. So the result looks the same.<br/>
+     * A nested canvas layout whose children aren't all canvas layout children is kept as it is.<br/>
+     * The visibility of a frame doesn't apply to its former children. It can't be undone.
+     */
+    public void flattenNestedCanvases(){
+        View view;
+        CanvasLayout frame;
+        View child;
+        LayoutParams lP;
+        //The children moved in are visited too, so nested canvas layouts of any depth are flattened.
+        for(int i=0;i<getChildCount();i++){
+            view = getChildAt(i);
+            if(!(view instanceof CanvasLayout)||!(view.getLayoutParams() instanceof LayoutParams))continue;
+            frame = (CanvasLayout) view;
+            if(!frame.canBeFlattened())continue;
+            int index = i+1;
+            while(frame.getChildCount()>0){
+                child = frame.getChildAt(0);
+                lP = (LayoutParams) child.getLayoutParams();
+                frame.removeViewAt(0);
+                if(lP.mFrame==null){
+                    lP.mFrame = frame;
+                }
+                lP.mDirty = true;
+                if(child instanceof CanvasLayout&&((CanvasLayout) child).mFlattenedInto==frame){
+                    ((CanvasLayout) child).mFlattenedInto = this;
+                }
+                addView(child,index++,lP);
+            }
+            frame.mFlattenedInto = this;
+            frame.mFlattened = false;
+        }
+        mFlattened = true;
+        mDrawOrderDirty = true;
+        requestLayout();
+    }
+
+    private boolean canBeFlattened(){
+        int count = getChildCount();
+        for(int i=0;i<count;i++){
+            if(!(getChildAt(i).getLayoutParams() instanceof LayoutParams))return false;
+        }
+        return true;
+    }
+
+    /**
+     * Compute the rect of a former child in the coordinate of the canvas layout it was flattened into.
+     */
+    private void computeFramedRect(int[] specs, int specOffset, int[] rects, int rectOffset){
+        mGeometry.computeRect(specs,specOffset,rects,rectOffset);
+        LayoutParams lP = (LayoutParams) getLayoutParams();
+        rects[rectOffset+CanvasGeometry.RECT_LEFT] += lP.mLeft;
+        rects[rectOffset+CanvasGeometry.RECT_TOP] += lP.mTop;
+        rects[rectOffset+CanvasGeometry.RECT_RIGHT] += lP.mLeft;
+        rects[rectOffset+CanvasGeometry.RECT_BOTTOM] += lP.mTop;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        CanvasLayoutMetrics metrics = mMetrics;
+        long start = 0;
+        boolean specsChanged = false;
+        if(metrics!=null){
+            start = System.nanoTime();
+            specsChanged = !mMeasureCacheValid||mCachedWidthMeasureSpec!=widthMeasureSpec||mCachedHeightMeasureSpec!=heightMeasureSpec;
+            beginTraceSection("CanvasLayout#onMeasure");
+        }
+        //The measure modes of the geometry have the same values as MeasureSpec's.
+        mGeometry.setDesignSize(mDesignWidth,mDesignHeight);
+        mGeometry.resolve(MeasureSpec.getMode(widthMeasureSpec),MeasureSpec.getSize(widthMeasureSpec),
+                MeasureSpec.getMode(heightMeasureSpec),MeasureSpec.getSize(heightMeasureSpec));
+        //The shared plan doesn't know the frames of a flattened canvas layout, or the items of an adapter.
+        boolean shared = mLayoutPlanShared&&!mFlattened&&mAdapter==null;
+        syncChildStore();
+        if(!shared){
+            mLayoutPlanHeld = false;
+        }else if(!holdsLayoutPlan(widthMeasureSpec,heightMeasureSpec)){
+            //If the rects of the plan are still in the child store, it's neither a hit nor a miss.
+            boolean planned = loadSharedLayoutPlan(widthMeasureSpec,heightMeasureSpec);
+            if(metrics!=null){
+                metrics.onSharedPlan(planned);
+            }
+        }
+        //measure every child
+        boolean scalingChanged = measureEveryChild(widthMeasureSpec,heightMeasureSpec,shared);
+
+        if(mAdapter!=null){
+            //Every item counts, not only the ones with a view.
+            measureItems(scalingChanged);
+        }
+
+        int width = mGeometry.getMeasuredWidth(mContentRight);
+        int height = mGeometry.getMeasuredHeight(mContentBottom);
+        int measureWidth = MeasureSpec.makeMeasureSpec(width,MeasureSpec.EXACTLY);
+        int measureHeight = MeasureSpec.makeMeasureSpec(height,MeasureSpec.EXACTLY);
+        setMeasuredDimension(measureWidth,measureHeight);
+        if(metrics!=null){
+            endTraceSection();
+            metrics.onMeasured(widthMeasureSpec,heightMeasureSpec,specsChanged,mRemeasuredChildCount,mCachedChildCount,
+                    System.nanoTime()-start);
+            if(mMetricsListener!=null){
+                mMetricsListener.onMeasurePass(this,metrics);
+            }
+        }
+    }
+
+    /**
+     * Bring the child store in line with the children. Only a slot whose child or layout params changed<br/>
+     * takes the spec of its layout params, the layout params write their later changes through to the slot.
+     */
+    private void syncChildStore(){
+        int count = getChildCount();
+        int synced = mChildStore.getCount();
+        if(mStoreChildren.length<count){
+            int capacity = Math.max(count,mStoreChildren.length*2);
+            mStoreChildren = Arrays.copyOf(mStoreChildren,capacity);
+            mStoreParams = Arrays.copyOf(mStoreParams,capacity);
+        }
+        mChildStore.setCount(count);
+        int[] specs = mChildStore.getSpecs();
+        View view;
+        LayoutParams lP;
+        for(int i=0;i<count;i++){
+            view = getChildAt(i);
+            Object obj = view.getLayoutParams();
+            lP = obj instanceof LayoutParams?(LayoutParams) obj:null;
+            if(mStoreChildren[i]==view&&mStoreParams[i]==lP)continue;
+            if(mStoreChildren[i]==view&&mStoreParams[i]!=null){
+                //The child's layout params were replaced.
+                mStoreParams[i].removeFitTextWatcher();
+            }
+            mStoreChildren[i] = view;
+            mStoreParams[i] = lP;
+            if(lP!=null){
+                lP.mSlot = i;
+                lP.writeSpec(specs,i*CanvasGeometry.SPEC_STRIDE);
+                if(lP.needsMeasure(this)){
+                    mChildStore.markDirty(i);
+                }else {
+                    //The child was measured by this canvas with its design, e.g. it was placed at once or moved to another slot.
+                    lP.writeRect(mChildStore.getRects(),i*CanvasGeometry.RECT_STRIDE);
+                    mChildStore.markMeasured(i);
+                    mChildStore.markSpecChanged();
+                }
+            }else {
+                mChildStore.clearSpec(i);
+            }
+        }
+        if(synced>count){
+            //Don't hold the removed children.
+            Arrays.fill(mStoreChildren,count,synced,null);
+            Arrays.fill(mStoreParams,count,synced,null);
+        }
+    }
+
+    /**
+     * Write the design of a child through to its slot of the child store, unless the slot belongs to another child.
+     * @param rectReady Whether the rect of the layout params is up to date, so it's written too and the slot stays clean.
+     */
+    void writeChildSpec(LayoutParams lP, boolean rectReady){
+        int slot = lP.mSlot;
+        if(slot<0||slot>=mChildStore.getCount()||mStoreParams[slot]!=lP)return;
+        lP.writeSpec(mChildStore.getSpecs(),slot*CanvasGeometry.SPEC_STRIDE);
+        if(rectReady){
+            lP.writeRect(mChildStore.getRects(),slot*CanvasGeometry.RECT_STRIDE);
+            mChildStore.markMeasured(slot);
+            mChildStore.markSpecChanged();
+        }else {
+            mChildStore.markDirty(slot);
+        }
+    }
+
+    /**
+     * Move a child to the index without removing it, so it stays attached to the window and keeps its focus.<br/>
+     * Children of the same layout_zDepth are drawn in their order, so the canvas is drawn again.
+     * @param index The index of the child after the move.
+     */
+    void moveChild(View child, int index){
+        int from = indexOfChild(child);
+        if(from<0||from==index)return;
+        detachViewFromParent(from);
+        attachViewToParent(child,index,child.getLayoutParams());
+        //The slots of the child store follow the children.
+        requestLayout();
+        invalidate();
+    }
+
+    /**
+     * Copy the children rects from the shared plan if there is one.
+     * If there isn't, every child rect is computed and the plan is cached, like a prefetched one.
+     * @return Whether the shared plan was found.
+     */
+    private boolean loadSharedLayoutPlan(int widthMeasureSpec, int heightMeasureSpec){
+        LayoutPlan plan = LayoutPlanCache.getDefault().get(mDesignWidth,mDesignHeight,widthMeasureSpec,heightMeasureSpec,
+                mChildStore.getSpecs(),mChildStore.getCount());
+        mLayoutPlanHeld = true;
+        mHeldPlanSpecsVersion = mChildStore.getVersion();
+        mHeldPlanDesignWidth = mDesignWidth;
+        mHeldPlanDesignHeight = mDesignHeight;
+        mHeldPlanWidthMeasureSpec = widthMeasureSpec;
+        mHeldPlanHeightMeasureSpec = heightMeasureSpec;
+        if(plan!=null){
+            plan.copyRectsTo(mChildStore.getRects());
+            return true;
+        }
+        LayoutPlanCache.getDefault().compute(mGeometry,widthMeasureSpec,heightMeasureSpec,mChildStore.getSpecs(),mChildStore.getCount(),
+                mChildStore.getRects());
+        return false;
+    }
+
+    /**
+     * Whether the child store still holds the rects of the plan for the design and the measure specs,<br/>
+     * so the specs don't have to be hashed for another lookup.
+     */
+    private boolean holdsLayoutPlan(int widthMeasureSpec, int heightMeasureSpec){
+        return mLayoutPlanHeld&&mHeldPlanSpecsVersion==mChildStore.getVersion()
+                &&mHeldPlanDesignWidth==mDesignWidth&&mHeldPlanDesignHeight==mDesignHeight
+                &&mHeldPlanWidthMeasureSpec==widthMeasureSpec&&mHeldPlanHeightMeasureSpec==heightMeasureSpec;
+    }
+
+    /**
+     * Compute the children rects for the measure specs on a background thread, e.g. for the other orientation.<br/>
+     * The canvas layouts with the same design only look them up when they are measured with the same specs.<br/>
+     * The design is copied now, so later changes of the children aren't seen. It does nothing if the layout<br/>
+     * plan isn't shared, see {@link #setLayoutPlanShared(boolean)}.
+     */
+    public void prefetchLayoutPlan(int widthMeasureSpec, int heightMeasureSpec){
+        if(!mLayoutPlanShared||mFlattened||mAdapter!=null)return;
+        int count = getChildCount();
+        int[] specs = new int[count*CanvasGeometry.SPEC_STRIDE];
+        for(int i=0;i<count;i++){
+            Object obj = getChildAt(i).getLayoutParams();
+            if(obj instanceof LayoutParams){
+                ((LayoutParams) obj).writeSpec(specs,i*CanvasGeometry.SPEC_STRIDE);
+            }
+        }
+        LayoutPlanPrefetcher.prefetch(mDesignWidth,mDesignHeight,widthMeasureSpec,heightMeasureSpec,specs,count);
+    }
+
+    /**
+     * The rects are computed in one pass over the child store first, then the children whose rect or design<br/>
+     * changed are measured.
+     * @param rectsReady Whether every child rect is already in the child store.
+     * @return Whether the measure specs or the scaling changed since the last measure, so every rect changed.
+     */
+    private boolean measureEveryChild(int widthMeasureSpec, int heightMeasureSpec, boolean rectsReady){
+        int r=0,b=0;
+        float stretchXS = mGeometry.getStretchXS();
+        float stretchYS = mGeometry.getStretchYS();
+        float virtualXS = mGeometry.getVirtualXS();
+        float virtualYS = mGeometry.getVirtualYS();
+        int virtualXPadding = mGeometry.getVirtualXPadding();
+        int virtualYPadding = mGeometry.getVirtualYPadding();
+        //If the cache key changed, every child has to be measured again.
+        boolean keyChanged = !mMeasureCacheValid
+                ||mCachedWidthMeasureSpec!=widthMeasureSpec||mCachedHeightMeasureSpec!=heightMeasureSpec
+                ||mCachedStretchXS!=stretchXS||mCachedStretchYS!=stretchYS
+                ||mCachedVirtualXS!=virtualXS||mCachedVirtualYS!=virtualYS
+                ||mCachedVirtualXPadding!=virtualXPadding||mCachedVirtualYPadding!=virtualYPadding;
+        int count = mChildStore.getCount();
+        if(!rectsReady){
+            mChildStore.computeRects(mGeometry,keyChanged);
+        }
+        int[] specs = mChildStore.getSpecs();
+        int[] rects = mChildStore.getRects();
+        View view;
+        LayoutParams lP;
+        CanvasLayout frame;
+        int wMSP, hMSP, rectOffset, width, height;
+        boolean remeasure;
+        int remeasured = 0;
+        int cached = 0;
+        //The decision is made from the child store, the layout params are only written when a child is measured.
+        for(int i=0;i<count;i++){
+            lP = mStoreParams[i];
+            //If child didn't has a canvas layout params, ignore it.
+            if(lP==null)continue;
+            view = mStoreChildren[i];
+            rectOffset = i*CanvasGeometry.RECT_STRIDE;
+            frame = mFlattened?lP.mFrame:null;
+            remeasure = keyChanged||!mChildStore.isMeasured(i)||view.isLayoutRequested()
+                    ||(frame!=null&&frame.mFrameChanged);
+            if(frame!=null&&frame.mFlattenedInto==this&&(remeasure||mChildStore.isDirty(i))){
+                //The frame is measured before, so its scaling is resolved.
+                frame.computeFramedRect(specs,i*CanvasGeometry.SPEC_STRIDE,rects,rectOffset);
+                remeasure = remeasure||!mChildStore.isMeasured(i);
+            }
+            width = rects[rectOffset+CanvasGeometry.RECT_RIGHT]-rects[rectOffset+CanvasGeometry.RECT_LEFT];
+            height = rects[rectOffset+CanvasGeometry.RECT_BOTTOM]-rects[rectOffset+CanvasGeometry.RECT_TOP];
+            remeasure = remeasure||view.getMeasuredWidth()!=width||view.getMeasuredHeight()!=height;
+            if(remeasure){
+                lP.setRect(rects,rectOffset);
+                applyDesignTextSize(view,lP);
+                applyImageSource(view,lP);
+                wMSP = MeasureSpec.makeMeasureSpec(width,MeasureSpec.EXACTLY);
+                hMSP = MeasureSpec.makeMeasureSpec(height,MeasureSpec.EXACTLY);
+                //measure child.
+                view.measure(wMSP,hMSP);
+                lP.markMeasured(this);
+                mChildStore.markMeasured(i);
+                remeasured++;
+            }else {
+                cached++;
+            }
+            if(view instanceof CanvasLayout&&((CanvasLayout) view).mFlattenedInto==this){
+                ((CanvasLayout) view).mFrameChanged = remeasure;
+            }
+            //record the right and bottom position.
+            r = Math.max(r, rects[rectOffset+CanvasGeometry.RECT_RIGHT]);
+            b = Math.max(b, rects[rectOffset+CanvasGeometry.RECT_BOTTOM]);
+        }
+        mCachedWidthMeasureSpec = widthMeasureSpec;
+        mCachedHeightMeasureSpec = heightMeasureSpec;
+        mCachedStretchXS = stretchXS;
+        mCachedStretchYS = stretchYS;
+        mCachedVirtualXS = virtualXS;
+        mCachedVirtualYS = virtualYS;
+        mCachedVirtualXPadding = virtualXPadding;
+        mCachedVirtualYPadding = virtualYPadding;
+        mMeasureCacheValid = true;
+        mChildStore.clearDirty();
+        mRemeasuredChildCount = remeasured;
+        mCachedChildCount = cached;
+        mContentRight = r;
+        mContentBottom = b;
+        return keyChanged;
+    }
+
+    /**
+     * Scale the text size of a TextView child like its height, and fit it into the child if layout_fit_text is set.
+     */
+    private void applyDesignTextSize(View view, LayoutParams lP){
+        if(lP.mDesignTextSize<=0||!(view instanceof TextView)){
+            lP.removeFitTextWatcher();
+            return;
+        }
+        TextView textView = (TextView) view;
+        CanvasGeometry geometry = lP.mFrame!=null&&lP.mFrame.mFlattenedInto==this?lP.mFrame.mGeometry:mGeometry;
+        float scale = lP.mHeightScalingMode==LayoutParams.STRETCH_DESIGN_MODE?geometry.getStretchYS():geometry.getVirtualYS();
+        float size = lP.mDesignTextSize*scale;
+        if(lP.mFitText){
+            if(lP.mFitTextWatcher==null||lP.mFitTextWatcher.mView!=textView){
+                //A TextView of a fixed size doesn't request a layout when its text changes.
+                lP.removeFitTextWatcher();
+                lP.mFitTextWatcher = new FitTextWatcher(textView,lP);
+                textView.addTextChangedListener(lP.mFitTextWatcher);
+            }
+            int width = lP.width-textView.getCompoundPaddingLeft()-textView.getCompoundPaddingRight();
+            int height = lP.height-textView.getCompoundPaddingTop()-textView.getCompoundPaddingBottom();
+            size = TextSizeCache.fit(textView,size,Math.max(0,width),Math.max(0,height));
+        }else {
+            lP.removeFitTextWatcher();
+        }
+        if(textView.getTextSize()!=size){
+            textView.setTextSize(TypedValue.COMPLEX_UNIT_PX,size);
+        }
+    }
+
+    /**
+     * Load the image source of an ImageView child for its size, unless it was loaded for the size already.<br/>
+     * It's called while measuring, so only a cached bitmap is set now, the others are set when they are decoded.
+     */
+    private void applyImageSource(View view, LayoutParams lP){
+        if(!(view instanceof ImageView))return;
+        if(!lP.hasImageSource()){
+            if(lP.mImageChanged){
+                //The source was removed, a pending one mustn't be set.
+                ImageSourceCache.cancel((ImageView) view);
+                lP.mImageChanged = false;
+            }
+            return;
+        }
+        if(!lP.mImageChanged&&lP.mImageWidth==lP.width&&lP.mImageHeight==lP.height)return;
+        Bitmap bitmap = ImageSourceCache.load(getContext(),(ImageView) view,lP.mImageResource,lP.mImagePath,lP.width,lP.height);
+        if(bitmap!=null){
+            ((ImageView) view).setImageBitmap(bitmap);
+        }
+        lP.mImageChanged = false;
+        lP.mImageWidth = lP.width;
+        lP.mImageHeight = lP.height;
+    }
+
+    /**
+     * Measures its TextView again when the text changes, while the TextView has the layout params.
+     */
+    private static final class FitTextWatcher implements TextWatcher {
+
+        private final TextView mView;
+        private final LayoutParams mParams;
+
+        FitTextWatcher(TextView view, LayoutParams params) {
+            mView = view;
+            mParams = params;
+        }
+
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        }
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+        }
+
+        @Override
+        public void afterTextChanged(Editable s) {
+            //The layout params may have been replaced before the next measure pass removes the watcher.
+            if(mView.getLayoutParams()!=mParams)return;
+            //Fit the new text, the size is looked up in the cache if the text was fitted before.
+            mView.requestLayout();
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        CanvasLayoutMetrics metrics = mMetrics;
+        long start = 0;
+        if(metrics!=null){
+            start = System.nanoTime();
+            beginTraceSection("CanvasLayout#onLayout");
+        }
+        int count = getChildCount();
+        View view;
+        LayoutParams lP;
+        for(int i=0;i<count;i++){
+            view = getChildAt(i);
+            Object obj = view.getLayoutParams();
+            //If child didn't has a canvas layout params, ignore it.
+            if(obj instanceof LayoutParams){
+                lP = (LayoutParams) obj;
+            }else {
+                continue;
+            }
+            view.layout(lP.mLeft, lP.mTop, lP.mRight, lP.mBottom);
+            mHasLazyChildren |= lP.mLazyLayout!=0;
+        }
+        if(mAdapter!=null){
+            updateVisibleItems(true);
+        }
+        inflateVisibleLazyChildren(true);
+        updateDrawOrder();
+        updateTouchIndex();
+        if(!mTransactionChildren.isEmpty()){
+            invalidateTransaction();
+        }
+        if(metrics!=null){
+            endTraceSection();
+            metrics.onLaidOut(System.nanoTime()-start);
+            if(mMetricsListener!=null){
+                mMetricsListener.onLayoutPass(this,metrics);
+            }
+        }
+    }
+
+    private static void beginTraceSection(String name){
+        if(Build.VERSION.SDK_INT>=Build.VERSION_CODES.JELLY_BEAN_MR2){
+            Trace.beginSection(name);
+        }
+    }
+
+    private static void endTraceSection(){
+        if(Build.VERSION.SDK_INT>=Build.VERSION_CODES.JELLY_BEAN_MR2){
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * @param enabled Whether to count and time the measure and layout passes, and mark them as Trace sections.<br/>
+     *                It costs nothing while disabled. The metrics are reset when it's enabled.
+     */
+    public void setMetricsEnabled(boolean enabled){
+        if(enabled&&mMetrics==null){
+            mMetrics = new CanvasLayoutMetrics();
+        }else if(!enabled){
+            mMetrics = null;
+        }
+    }
+
+    /**
+     * @return The statistics of the passes, or null if they are disabled.
+     */
+    public CanvasLayoutMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * @param listener Called after every pass with the metrics. Setting a listener enables the metrics.
+     */
+    public void setMetricsListener(CanvasLayoutMetrics.Listener listener) {
+        mMetricsListener = listener;
+        if(listener!=null){
+            setMetricsEnabled(true);
+        }
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        if(mTileRenderer!=null){
+            if(canDrawTiles()){
+                if(mTilesFallenBack){
+                    //The children were drawn by themselves, so their changes weren't seen.
+                    mTilesFallenBack = false;
+                    mTileRenderer.invalidateAll();
+                }
+                mTileRenderer.draw(canvas,getRenderScale());
+                return;
+            }
+            mTilesFallenBack = true;
+        }
+        if(mOcclusionCulling){
+            cullOccludedChildren();
+        }
+        if(updateStaticCache()){
+            canvas.drawBitmap(mStaticBitmap,getScrollX(),getScrollY(),null);
+        }
+        super.dispatchDraw(canvas);
+    }
+
+    @Override
+    protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        if(mDrawingStaticCache){
+            return super.drawChild(canvas, child, drawingTime);
+        }
+        if(mStaticCount>0){
+            Object obj = child.getLayoutParams();
+            if(obj instanceof LayoutParams&&((LayoutParams) obj).mStaticCached){
+                return false;
+            }
+        }
+        if(mOcclusionCulling){
+            Object obj = child.getLayoutParams();
+            if(obj instanceof LayoutParams&&((LayoutParams) obj).mCulled){
+                return false;
+            }
+        }
+        return super.drawChild(canvas, child, drawingTime);
+    }
+
+    /**
+     * Find the static children at the back, and draw them into the cached bitmap if they changed.
+     * @return Whether there is a cached bitmap to draw.
+     */
+    private boolean updateStaticCache(){
+        int count = getChildCount();
+        int staticCount = 0;
+        View view;
+        while(staticCount<count){
+            view = getChildAt(getChildDrawingOrder(count,staticCount));
+            Object obj = view.getLayoutParams();
+            if(!(obj instanceof LayoutParams)||!((LayoutParams) obj).mStatic||!isCacheable(view))break;
+            staticCount++;
+        }
+        int width = getWidth();
+        int height = getHeight();
+        if(staticCount==0||width<=0||height<=0){
+            releaseStaticCache();
+            return false;
+        }
+        boolean valid = mStaticCacheValid&&staticCount==mStaticCount&&mStaticScrollX==getScrollX()&&mStaticScrollY==getScrollY()
+                &&mStaticBitmap.getWidth()==width&&mStaticBitmap.getHeight()==height;
+        int offset;
+        for(int i=0;i<staticCount&&valid;i++){
+            view = getChildAt(getChildDrawingOrder(count,i));
+            offset = i*CanvasGeometry.RECT_STRIDE;
+            //A child invalidated while the invalidation doesn't pass through the canvas stays dirty, it isn't drawn by itself.
+            valid = mStaticChildren[i]==view&&mStaticVisibilities[i]==view.getVisibility()
+                    &&(Build.VERSION.SDK_INT<Build.VERSION_CODES.HONEYCOMB||!view.isDirty())
+                    &&mStaticRects[offset+CanvasGeometry.RECT_LEFT]==view.getLeft()&&mStaticRects[offset+CanvasGeometry.RECT_TOP]==view.getTop()
+                    &&mStaticRects[offset+CanvasGeometry.RECT_RIGHT]==view.getRight()&&mStaticRects[offset+CanvasGeometry.RECT_BOTTOM]==view.getBottom();
+        }
+        if(valid){
+            return true;
+        }
+        if(mStaticBitmap==null||mStaticBitmap.getWidth()!=width||mStaticBitmap.getHeight()!=height){
+            if(mStaticBitmap!=null){
+                mStaticBitmap.recycle();
+            }
+            mStaticBitmap = Bitmap.createBitmap(width,height,Bitmap.Config.ARGB_8888);
+            mStaticCanvas = new Canvas(mStaticBitmap);
+        }else {
+            mStaticBitmap.eraseColor(Color.TRANSPARENT);
+        }
+        clearStaticFlags();
+        if(mStaticChildren.length<staticCount){
+            mStaticChildren = new View[staticCount];
+            mStaticRects = new int[staticCount*CanvasGeometry.RECT_STRIDE];
+            mStaticVisibilities = new int[staticCount];
+        }
+        mStaticScrollX = getScrollX();
+        mStaticScrollY = getScrollY();
+        mStaticCanvas.save();
+        mStaticCanvas.translate(-mStaticScrollX,-mStaticScrollY);
+        mDrawingStaticCache = true;
+        long drawingTime = getDrawingTime();
+        for(int i=0;i<staticCount;i++){
+            view = getChildAt(getChildDrawingOrder(count,i));
+            offset = i*CanvasGeometry.RECT_STRIDE;
+            mStaticChildren[i] = view;
+            mStaticVisibilities[i] = view.getVisibility();
+            mStaticRects[offset+CanvasGeometry.RECT_LEFT] = view.getLeft();
+            mStaticRects[offset+CanvasGeometry.RECT_TOP] = view.getTop();
+            mStaticRects[offset+CanvasGeometry.RECT_RIGHT] = view.getRight();
+            mStaticRects[offset+CanvasGeometry.RECT_BOTTOM] = view.getBottom();
+            ((LayoutParams) view.getLayoutParams()).mStaticCached = true;
+            if(view.getVisibility()==VISIBLE){
+                drawChild(mStaticCanvas,view,drawingTime);
+            }
+        }
+        mDrawingStaticCache = false;
+        mStaticCanvas.restore();
+        mStaticCount = staticCount;
+        mStaticCacheValid = true;
+        return true;
+    }
+
+    /**
+     * @return Whether the child is drawn the same every frame as long as it isn't invalidated.
+     */
+    private static boolean isCacheable(View view){
+        if(view.getAnimation()!=null)return false;
+        if(Build.VERSION.SDK_INT>=Build.VERSION_CODES.HONEYCOMB){
+            if(view.getAlpha()<1||!view.getMatrix().isIdentity())return false;
+        }
+        return true;
+    }
+
+    private void clearStaticFlags(){
+        for(int i=0;i<mStaticCount;i++){
+            Object obj = mStaticChildren[i].getLayoutParams();
+            if(obj instanceof LayoutParams){
+                ((LayoutParams) obj).mStaticCached = false;
+            }
+            mStaticChildren[i] = null;
+        }
+        mStaticCount = 0;
+    }
+
+    private void releaseStaticCache(){
+        clearStaticFlags();
+        if(mStaticBitmap!=null){
+            mStaticBitmap.recycle();
+            mStaticBitmap = null;
+            mStaticCanvas = null;
+        }
+        mStaticCacheValid = false;
+    }
+
+    /**
+     * Draw the static children into the cached bitmap again before the next frame, e.g. after a static child<br/>
+     * changed what it draws without invalidating itself.
+     */
+    public void invalidateStaticCache(){
+        mStaticCacheValid = false;
+        invalidate();
+    }
+
+    @Override
+    public ViewParent invalidateChildInParent(int[] location, Rect dirty) {
+        if(mTileRenderer!=null||mStaticCount>0&&!mDrawingStaticCache&&mStaticCacheValid){
+            //The location is the left and top of the child which is invalidated, or whose descendant is. The invalidation
+            //marks that child dirty, the other children at the same location are clean since they were drawn.
+            int count = getChildCount();
+            View view;
+            for(int i=0;i<count;i++){
+                view = getChildAt(i);
+                if(view.getLeft()==location[0]&&view.getTop()==location[1]&&isChildDirty(view)){
+                    onChildInvalidated(view);
+                }
+            }
+        }
+        return super.invalidateChildInParent(location, dirty);
+    }
+
+    /**
+     * @return Whether the child changed since it was drawn. Before Honeycomb it's unknown, so it's assumed.
+     */
+    private static boolean isChildDirty(View child){
+        return Build.VERSION.SDK_INT<Build.VERSION_CODES.HONEYCOMB||child.isDirty();
+    }
+
+    private void onChildInvalidated(View child){
+        if(mTileRenderer!=null&&mTileRenderer.invalidateChild(child)){
+            //The children aren't drawn by themselves, the canvas has to draw its tiles again.
+            invalidate();
+        }
+        if(mStaticCount>0&&!mDrawingStaticCache&&mStaticCacheValid){
+            Object obj = child.getLayoutParams();
+            if(obj instanceof LayoutParams&&((LayoutParams) obj).mStaticCached){
+                //The whole canvas is drawn again, a hardware accelerated canvas doesn't redraw its own content otherwise.
+                invalidateStaticCache();
+            }
+        }
+    }
+
+    /**
+     * Mark the children which are covered by an opaque child in front of them, from front to back.
+     */
+    private void cullOccludedChildren(){
+        int count = getChildCount();
+        if(mOccluders.length<count){
+            mOccluders = new int[count];
+        }
+        int occluderCount = 0;
+        int culled = 0;
+        View view, occluder;
+        LayoutParams lP;
+        int index;
+        boolean covered;
+        for(int i=count-1;i>=0;i--){
+            index = getChildDrawingOrder(count,i);
+            view = getChildAt(index);
+            Object obj = view.getLayoutParams();
+            if(!(obj instanceof LayoutParams))continue;
+            lP = (LayoutParams) obj;
+            covered = false;
+            for(int j=0;j<occluderCount&&!covered;j++){
+                occluder = getChildAt(mOccluders[j]);
+                covered = occluder.getLeft()<=view.getLeft()&&occluder.getTop()<=view.getTop()
+                        &&occluder.getRight()>=view.getRight()&&occluder.getBottom()>=view.getBottom();
+            }
+            lP.mCulled = covered;
+            if(covered){
+                culled++;
+            }else if(isOccluder(view,lP)){
+                mOccluders[occluderCount++] = index;
+            }
+        }
+        mCulledChildCount = culled;
+    }
+
+    /**
+     * @return Whether the child hides everything behind its rect.
+     */
+    private static boolean isOccluder(View view, LayoutParams lP){
+        if(view.getVisibility()!=VISIBLE||view.getAnimation()!=null)return false;
+        if(Build.VERSION.SDK_INT>=Build.VERSION_CODES.HONEYCOMB){
+            //The rect of a transformed child isn't where it's drawn.
+            if(view.getAlpha()<1||!view.getMatrix().isIdentity())return false;
+        }
+        return lP.isOpaque()||view.isOpaque();
+    }
+
+    public boolean isTiledRendering() {
+        return mTileRenderer!=null;
+    }
+
+    /**
+     * Draw the children from bitmap tiles instead of drawing every child every frame. The canvas is split into<br/>
+     * tiles of a fixed size at discrete zoom levels, the level is chosen for the scale the canvas is shown at.<br/>
+     * Every child is recorded into a picture when it changes, and the tiles it touches are rendered again from<br/>
+     * the pictures on a worker thread. Until then, the stale tile or a coarser one is drawn.<br/>
+     * The tiles don't render the children's alpha, transformations and animations, so while a visible child has<br/>
+     * one of them the children are drawn by themselves, and every child is recorded again afterwards.<br/>
+     * A child is recorded again when it or a descendant is invalidated, or its rect changes. On Android O and later<br/>
+     * with hardware acceleration the invalidation of a child doesn't reach the canvas layout, so call<br/>
+     * {@link #invalidate()} on the canvas layout after changing a child, the dirty children are recorded again.<br/>
+     * Call {@link #invalidateTiles()} if a child changed what it draws without invalidating itself.<br/>
+     * The tiles of every tiled canvas layout share one cache, see {@link #setTileCacheBudget(int)}.
+     */
+    public void setTiledRendering(boolean tiled) {
+        if(tiled==(mTileRenderer!=null))return;
+        if(tiled){
+            mTileRenderer = new TileRenderer(this);
+        }else {
+            mTileRenderer.release();
+            mTileRenderer = null;
+        }
+        invalidate();
+    }
+
+    /**
+     * @param budget The memory of the tiles cached for every tiled canvas layout together, in bytes. 0 for an<br/>
+     *               eighth of the heap. The decoded images of layout_image_src have a budget of their own,<br/>
+     *               an eighth of the heap too. Only call it on the UI thread.
+     */
+    public static void setTileCacheBudget(int budget) {
+        TileRenderer.setBudget(budget);
+    }
+
+    /**
+     * Record every child again and render every tile again.
+     */
+    public void invalidateTiles(){
+        if(mTileRenderer!=null){
+            mTileRenderer.invalidateAll();
+            invalidate();
+        }
+    }
+
+    /**
+     * @param renderScale The scale the canvas is shown at, for a zoom container which scales its canvas<br/>
+     *                    while drawing. 0 to multiply the scales of the canvas and its ancestors.
+     */
+    public void setRenderScale(float renderScale) {
+        mRenderScale = renderScale;
+        invalidate();
+    }
+
+    /**
+     * @return The scale the canvas is shown at. The tiles are rendered for the larger of the horizontal and the<br/>
+     *         vertical scale, so they aren't blurry in either direction.
+     */
+    private float getRenderScale(){
+        if(mRenderScale>0||Build.VERSION.SDK_INT<Build.VERSION_CODES.HONEYCOMB){
+            return mRenderScale>0?mRenderScale:1.0f;
+        }
+        float scale = Math.max(Math.abs(getScaleX()),Math.abs(getScaleY()));
+        ViewParent parent = getParent();
+        View view;
+        while(parent instanceof View){
+            view = (View) parent;
+            scale *= Math.max(Math.abs(view.getScaleX()),Math.abs(view.getScaleY()));
+            parent = parent.getParent();
+        }
+        return scale;
+    }
+
+    /**
+     * @return Whether every visible child can be drawn from the tiles, which don't render the children's alpha,<br/>
+     *         transformations and animations.
+     */
+    private boolean canDrawTiles(){
+        int count = getChildCount();
+        View view;
+        for(int i=0;i<count;i++){
+            view = getChildAt(i);
+            if(view.getVisibility()==VISIBLE&&!isCacheable(view))return false;
+        }
+        return true;
+    }
+
+    public boolean isOcclusionCullingEnabled() {
+        return mOcclusionCulling;
+    }
+
+    /**
+     * @param occlusionCulling Whether to skip drawing the children covered by an opaque child in front of them.
+     */
+    public void setOcclusionCullingEnabled(boolean occlusionCulling) {
+        if(mOcclusionCulling!=occlusionCulling){
+            mOcclusionCulling = occlusionCulling;
+            if(!occlusionCulling){
+                mCulledChildCount = 0;
+                int count = getChildCount();
+                for(int i=0;i<count;i++){
+                    Object obj = getChildAt(i).getLayoutParams();
+                    if(obj instanceof LayoutParams){
+                        ((LayoutParams) obj).mCulled = false;
+                    }
+                }
+            }
+            invalidate();
+        }
+    }
+
+    /**
+     * @return The number of children which weren't drawn in the last frame because they were covered.
+     */
+    public int getCulledChildCount() {
+        return mCulledChildCount;
+    }
+
+    /**
+     * Update the spatial index with the children's laid out rects. It's rebuilt if the children changed,<br/>
+     * otherwise only the children which moved are updated.
+     */
+    private void updateTouchIndex(){
+        if(!mTouchIndexEnabled)return;
+        int count = getChildCount();
+        //Items may be laid out beyond the measured size, the grid is only sized for the common case.
+        int width = Math.max(getWidth(),mContentRight);
+        int height = Math.max(getHeight(),mContentBottom);
+        boolean rebuild = mTouchIndexChildren.length!=count||mTouchIndexWidth!=width||mTouchIndexHeight!=height;
+        for(int i=0;i<count&&!rebuild;i++){
+            rebuild = mTouchIndexChildren[i]!=getChildAt(i);
+        }
+        if(rebuild){
+            if(mTouchIndexChildren.length!=count){
+                mTouchIndexChildren = new View[count];
+                mTouchCandidates = new int[count];
+            }
+            for(int i=0;i<count;i++){
+                mTouchIndexChildren[i] = getChildAt(i);
+            }
+            mTouchIndexWidth = width;
+            mTouchIndexHeight = height;
+            mTouchIndex.reset(width,height,count);
+        }
+        View view;
+        for(int i=0;i<count;i++){
+            view = mTouchIndexChildren[i];
+            mTouchIndex.update(i,view.getLeft(),view.getTop(),view.getRight(),view.getBottom());
+        }
+    }
+
+    /**
+     * The view group finds the touched child from the last one to the first one of {@link #getChildDrawingOrder(int, int)},<br/>
+     * so it's hit tested in the reverse drawing order and the children aren't moved. Before Lollipop the view<br/>
+     * group tests them in the hierarchy order, so a child overlapped by a child later in the hierarchy but<br/>
+     * drawn behind it only gets the touches the later child doesn't take.
+     */
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent ev) {
+        int action = ev.getActionMasked();
+        if(action!=MotionEvent.ACTION_DOWN&&action!=MotionEvent.ACTION_POINTER_DOWN){
+            return super.dispatchTouchEvent(ev);
+        }
+        int pointerIndex = ev.getActionIndex();
+        mTouchOrdered = orderTouchCandidates(ev.getX(pointerIndex),ev.getY(pointerIndex));
+        boolean handled = super.dispatchTouchEvent(ev);
+        mTouchOrdered = false;
+        return handled;
+    }
+
+    @Override
+    protected boolean dispatchHoverEvent(MotionEvent ev) {
+        mTouchOrdered = ev.getActionMasked()!=MotionEvent.ACTION_HOVER_EXIT&&orderTouchCandidates(ev.getX(),ev.getY());
+        boolean handled = super.dispatchHoverEvent(ev);
+        mTouchOrdered = false;
+        return handled;
+    }
+
+    private boolean isTouchIndexReady(){
+        return mTouchIndexEnabled&&!isLayoutRequested()&&mTouchIndexChildren.length==getChildCount();
+    }
+
+    /**
+     * Order the children for the view group, which tests them from the last one to the first one: the children<br/>
+     * found under the point by the index come last, the front most one at the end. The others keep the<br/>
+     * drawing order before them. A child moved by a transformation is kept with the children found.
+     * @return Whether the children were ordered, false if the index isn't ready.
+     */
+    private boolean orderTouchCandidates(float x, float y){
+        if(!isTouchIndexReady())return false;
+        //A depth may have changed since the last frame, the ranks are only sorted again when they are needed.
+        updateDrawOrder();
+        int count = mDrawOrder.length;
+        if(mTouchOrder.length!=count){
+            mTouchOrder = new int[count];
+            mTouchCandidateFlags = new boolean[count];
+        }
+        int found = mTouchIndex.query((int) x+getScrollX(),(int) y+getScrollY(),mTouchCandidates);
+        for(int i=0;i<found;i++){
+            mTouchCandidateFlags[mTouchCandidates[i]] = true;
+        }
+        int k = count;
+        int child;
+        for(int i=count-1;i>=0;i--){
+            child = mDrawOrder[i];
+            if(!mTouchCandidateFlags[child]&&Build.VERSION.SDK_INT>=Build.VERSION_CODES.HONEYCOMB
+                    &&!getChildAt(child).getMatrix().isIdentity()){
+                mTouchCandidateFlags[child] = true;
+            }
+            if(mTouchCandidateFlags[child]){
+                mTouchOrder[--k] = child;
+            }
+        }
+        for(int i=count-1;i>=0;i--){
+            child = mDrawOrder[i];
+            if(mTouchCandidateFlags[child]){
+                mTouchCandidateFlags[child] = false;
+            }else {
+                mTouchOrder[--k] = child;
+            }
+        }
+        return true;
+    }
+
+    public boolean isTouchIndexEnabled() {
+        return mTouchIndexEnabled;
+    }
+
+    /**
+     * @param touchIndexEnabled Whether to find the touched or hovered child with a spatial index of the children rects.<br/>
+     *                          The view group still dispatches the touches, the index only orders the children<br/>
+     *                          under the point first, see {@link #getChildDrawingOrder(int, int)}. It knows the<br/>
+     *                          laid out rects only, so a child moved by a view animation may not be found first.
+     */
+    public void setTouchIndexEnabled(boolean touchIndexEnabled) {
+        if(mTouchIndexEnabled!=touchIndexEnabled){
+            mTouchIndexEnabled = touchIndexEnabled;
+            mTouchIndexChildren = new View[0];
+            updateTouchIndex();
+        }
+    }
+
+    /**
+     * Stop fitting the text of the removed child. It's only called from Marshmallow on, before that the<br/>
+     * watcher stays on the removed child, where it only requests layouts of the child.
+     */
+    @Override
+    public void onViewRemoved(View child) {
+        super.onViewRemoved(child);
+        Object obj = child.getLayoutParams();
+        if(obj instanceof LayoutParams&&((LayoutParams) obj).mFitTextWatcher!=null
+                &&((LayoutParams) obj).mFitTextWatcher.mView==child){
+            ((LayoutParams) obj).removeFitTextWatcher();
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        getViewTreeObserver().addOnScrollChangedListener(mScrollChangedListener);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        getViewTreeObserver().removeOnScrollChangedListener(mScrollChangedListener);
+        releaseStaticCache();
+        if(mTileRenderer!=null){
+            mTileRenderer.release();
+        }
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+        super.onScrollChanged(l, t, oldl, oldt);
+        updateVisibleItems(false);
+        inflateVisibleLazyChildren(false);
     }
 
-    public CanvasLayout(Context context, AttributeSet attrs) {
-        super(context, attrs);
-        TypedArray a = context.obtainStyledAttributes(attrs,R.styleable.CanvasLayout);
-        mDesignWidth = a.getInt(R.styleable.CanvasLayout_design_width,0);
-        mDesignHeight = a.getInt(R.styleable.CanvasLayout_design_height,0);
-        a.recycle();
+    public void setOnLazyChildInflateListener(OnLazyChildInflateListener listener) {
+        mOnLazyChildInflateListener = listener;
     }
 
-    @Override
-    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        int pWidth = MeasureSpec.getSize(widthMeasureSpec);
-        int pHeight = MeasureSpec.getSize(heightMeasureSpec);
-        int wMode = MeasureSpec.getMode(widthMeasureSpec);
-        int hMode = MeasureSpec.getMode(heightMeasureSpec);
-        int tPWidth = 0, tPHeight = 0;
-        float stretchXS;
-        float stretchYS;
-        float virtualXS, virtualYS;
-        int virtualXPadding, virtualYPadding;
-        //To handle different measure type.
-        if(wMode==MeasureSpec.EXACTLY){
-            if(hMode==MeasureSpec.EXACTLY){
-                stretchXS = mDesignWidth!=0?pWidth/(float)mDesignWidth:0;
-                stretchYS = mDesignHeight!=0?pHeight/(float)mDesignHeight:0;
-                virtualXS = virtualYS = Math.min(stretchXS,stretchYS);
-                virtualXPadding = (int) ((pWidth-virtualXS*mDesignWidth)/2);
-                virtualYPadding = (int) ((pHeight-virtualYS*mDesignHeight)/2);
-                //verify scaling
-                if(stretchXS==0&&stretchYS!=0)stretchYS=0;
-                if(stretchXS!=0&&stretchYS==0)stretchXS=0;
-                //measure every child
-                measureEveryChild(stretchXS,stretchYS,virtualXS,virtualYS,virtualXPadding,virtualYPadding);
-                tPWidth = pWidth;
-                tPHeight = pHeight;
-            }else if(hMode==MeasureSpec.AT_MOST){
-                stretchXS = mDesignWidth!=0?pWidth/(float)mDesignWidth:0;
-                int tempH = (mDesignHeight!=0&&mDesignWidth!=0)?(int)(pWidth/(float)mDesignWidth*mDesignHeight):0;
-                stretchYS = mDesignHeight!=0?Math.min(tempH,pHeight)/(float)mDesignHeight:0;
-                virtualXS = virtualYS = Math.min(stretchXS,stretchYS);
-                virtualXPadding = (int) ((pWidth-virtualXS*mDesignWidth)/2);
-                virtualYPadding = tempH!=0?(int) ((Math.min(tempH,pHeight)-virtualYS*mDesignHeight)/2):0;
-                //verify scaling
-                if(stretchXS==0&&stretchYS!=0)stretchYS=0;
-                if(stretchXS!=0&&stretchYS==0)stretchXS=0;
-                //measure every child
-                int[] tSize = measureEveryChild(stretchXS,stretchYS,virtualXS,virtualYS,virtualXPadding,virtualYPadding);
-                tPWidth = pWidth;
-                tPHeight =Math.min(pHeight, tempH!=0?tempH:tSize[1]);
-            }else if(hMode==MeasureSpec.UNSPECIFIED){
-                stretchXS = mDesignWidth!=0?pWidth/(float)mDesignWidth:0;
-                stretchYS = stretchXS;
-                virtualXS = virtualYS = stretchXS;
-                virtualXPadding = (int) ((pWidth-virtualXS*mDesignWidth)/2);
-                virtualYPadding = 0;
-                //measure every child
-                int[] tSize = measureEveryChild(stretchXS,stretchYS,virtualXS,virtualYS,virtualXPadding,virtualYPadding);
-                tPWidth = pWidth;
-                int tempH = (mDesignHeight!=0&&mDesignWidth!=0)?(int)(tPWidth/(float)mDesignWidth*mDesignHeight):0;
-                tPHeight =tempH!=0?tempH:tSize[1];
-            }
-        }else if(wMode==MeasureSpec.AT_MOST){
-            if(hMode==MeasureSpec.EXACTLY){
-                stretchYS = mDesignHeight!=0?pHeight/(float)mDesignHeight:0;
-                int tempW = (mDesignHeight!=0&&mDesignWidth!=0)?(int)(pHeight/(float)mDesignHeight*mDesignWidth):0;
-                stretchXS = mDesignWidth!=0?Math.min(tempW,pWidth)/(float)mDesignWidth:0;
-                virtualXS = virtualYS = Math.min(stretchXS,stretchYS);
-                virtualXPadding = tempW!=0?(int) ((Math.min(tempW,pWidth)-virtualXS*mDesignWidth)/2):0;
-                virtualYPadding = (int) ((pHeight-virtualYS*mDesignHeight)/2);
-                //verify scaling
-                if(stretchXS==0&&stretchYS!=0)stretchYS=0;
-                if(stretchXS!=0&&stretchYS==0)stretchXS=0;
-                //measure every child
-                int[] tSize = measureEveryChild(stretchXS,stretchYS,virtualXS,virtualYS,virtualXPadding,virtualYPadding);
-                tPHeight = pHeight;
-                tPWidth = Math.min(pWidth, tempW!=0?tempW:tSize[0]);
-            }else if(hMode==MeasureSpec.AT_MOST){
-                stretchXS = mDesignWidth!=0?Math.min(pWidth,mDesignWidth)/(float)mDesignWidth:0;
-                stretchYS = mDesignHeight!=0?Math.min(pHeight,mDesignHeight)/(float)mDesignHeight:0;
-                virtualXS = virtualYS = Math.min(stretchXS,stretchYS);
-                virtualXPadding = (int) ((Math.min(pWidth,mDesignWidth)-virtualXS*mDesignWidth)/2);
-                virtualYPadding = (int) ((Math.min(pHeight,mDesignHeight)-virtualYS*mDesignHeight)/2);
-                //verify scaling
-                if(stretchXS==0&&stretchYS!=0)stretchYS=0;
-                if(stretchXS!=0&&stretchYS==0)stretchXS=0;
-                //measure every child
-                int[] tSize = measureEveryChild(stretchXS,stretchYS,virtualXS,virtualYS,virtualXPadding,virtualYPadding);
-                tPWidth = Math.min(pWidth,mDesignWidth);
-                tPHeight = Math.min(pHeight,mDesignHeight);
-            }else if(hMode==MeasureSpec.UNSPECIFIED){
-                stretchXS = mDesignWidth!=0?Math.min(pWidth,mDesignWidth)/(float)mDesignWidth:0;
-                int tempH = (mDesignHeight!=0&&mDesignWidth!=0)?(int)(Math.min(pWidth,mDesignWidth)/(float)mDesignWidth*mDesignHeight):0;
-                stretchYS = stretchXS;
-                virtualXS = virtualYS = stretchXS;
-                virtualXPadding = 0;
-                virtualYPadding = 0;
-                //measure every child
-                int[] tSize = measureEveryChild(stretchXS,stretchYS,virtualXS,virtualYS,virtualXPadding,virtualYPadding);
-                tPWidth = Math.min(pWidth,mDesignWidth);
-                tPHeight = tempH;
-            }
-        }else if(wMode==MeasureSpec.UNSPECIFIED){
-            if(hMode==MeasureSpec.EXACTLY){
-                stretchYS = mDesignHeight!=0?pHeight/(float)mDesignHeight:0;
-                stretchXS = stretchYS;
-                virtualXS = virtualYS = stretchYS;
-                virtualXPadding = 0;
-                virtualYPadding = (int) ((pHeight-virtualYS*mDesignHeight)/2);
-                //measure every child
-                int[] tSize = measureEveryChild(stretchXS,stretchYS,virtualXS,virtualYS,virtualXPadding,virtualYPadding);
-                tPHeight = pHeight;
-                int tempW = (mDesignHeight!=0&&mDesignWidth!=0)?(int)(tPHeight/(float)mDesignHeight*mDesignWidth):0;
-                tPWidth = Math.min(pWidth, tempW!=0?tempW:tSize[0]);
-            }else if(hMode==MeasureSpec.AT_MOST){
-                stretchYS = mDesignHeight!=0?Math.min(pHeight,mDesignHeight)/(float)mDesignHeight:0;
-                int tempW = (mDesignHeight!=0&&mDesignWidth!=0)?(int)(pHeight/(float)mDesignHeight*mDesignWidth):0;
-                stretchXS = stretchYS;
-                virtualXS = virtualYS = stretchYS;
-                virtualXPadding = 0;
-                virtualYPadding = 0;
-                //measure every child
-                int[] tSize = measureEveryChild(stretchXS,stretchYS,virtualXS,virtualYS,virtualXPadding,virtualYPadding);
-                tPWidth = tempW;
-                tPHeight = Math.min(pHeight, mDesignHeight);
-            }else if(hMode==MeasureSpec.UNSPECIFIED){
-                //measure every child
-                int[] tSize = measureEveryChild(1,1,1,1,0,0);
-                tPWidth = mDesignWidth;
-                tPHeight = mDesignHeight;
-            }
-        }
-
-        int measureWidth = MeasureSpec.makeMeasureSpec(tPWidth,MeasureSpec.EXACTLY);
-        int measureHeight = MeasureSpec.makeMeasureSpec(tPHeight,MeasureSpec.EXACTLY);
-        setMeasuredDimension(measureWidth,measureHeight);
+    /**
+     * Inflate the layout of a lazy child now, e.g. before it's made visible. The inflated view takes the<br/>
+     * index, the layout params and the id of the child. If it was laid out, the view is placed at once.
+     * @return The inflated view, or the child itself if it isn't lazy.
+     */
+    public View inflateLazyChild(View child){
+        LayoutParams lP = checkChild(child);
+        if(lP.mLazyLayout==0)return child;
+        int index = indexOfChild(child);
+        if(lP.needsMeasure(this)||isLayoutRequested()){
+            View view = inflateLazyLayout(child,lP);
+            removeViewAt(index);
+            addView(view,index,lP);
+            onLazyChildInflated(child,view);
+            return view;
+        }
+        View view = replaceLazyChild(index,child,lP);
+        updateDrawOrder();
+        updateTouchIndex();
+        invalidate();
+        return view;
     }
 
-    private int[] measureEveryChild(float stretchXS, float stretchYS, float virtualXS, float virtualYS, int virtualXPadding, int virtualYPadding){
-        int[] tSize = new int[2];
-        int l=0,r=0,t=0,b=0;
-        int count = getChildCount();
+    /**
+     * Inflate the lazy children whose rect is inside the visible area and the viewport margin.
+     * @param inLayout Whether it's called by onLayout. Otherwise it waits for the pending layout if there is one.
+     */
+    private void inflateVisibleLazyChildren(boolean inLayout){
+        if(!mHasLazyChildren||(!inLayout&&isLayoutRequested())||getWindowToken()==null)return;
+        if(!getLocalVisibleRect(mViewport))return;
+        mViewport.offset(getScrollX(),getScrollY());
+        mViewport.inset(-mViewportMargin,-mViewportMargin);
+        boolean lazy = false;
+        boolean changed = false;
         View view;
         LayoutParams lP;
-        int wMSP, hMSP;
-        for(int i=0;i<count;i++){
+        for(int i=0;i<getChildCount();i++){
             view = getChildAt(i);
             Object obj = view.getLayoutParams();
-            //If child didn't has a canvas layout params, ignore it.
-            if(obj instanceof LayoutParams){
-                lP = (LayoutParams) obj;
+            if(!(obj instanceof LayoutParams)||((LayoutParams) obj).mLazyLayout==0)continue;
+            lP = (LayoutParams) obj;
+            //A gone child is inflated when it's shown, that requests a layout.
+            if(view.getVisibility()==VISIBLE&&mViewport.intersects(lP.mLeft,lP.mTop,lP.mRight,lP.mBottom)){
+                replaceLazyChild(i,view,lP);
+                changed = true;
             }else {
-                continue;
+                lazy = true;
+            }
+        }
+        mHasLazyChildren = lazy;
+        if(changed){
+            updateDrawOrder();
+            updateTouchIndex();
+            invalidate();
+        }
+    }
+
+    private View inflateLazyLayout(View placeholder, LayoutParams lP){
+        //The layout params are the placeholder's, so the root's layout attributes aren't resolved.
+        View view = LayoutInflater.from(getContext()).inflate(lP.mLazyLayout,null);
+        lP.mLazyLayout = 0;
+        if(view.getId()==NO_ID){
+            view.setId(placeholder.getId());
+        }
+        return view;
+    }
+
+    /**
+     * Replace the placeholder by its inflated layout, and place it at once like an adapter item.
+     */
+    private View replaceLazyChild(int index, View placeholder, LayoutParams lP){
+        View view = inflateLazyLayout(placeholder,lP);
+        removeViewInLayout(placeholder);
+        addViewInLayout(view,index,lP,true);
+        applyDesignTextSize(view,lP);
+        applyImageSource(view,lP);
+        view.measure(MeasureSpec.makeMeasureSpec(lP.width,MeasureSpec.EXACTLY),MeasureSpec.makeMeasureSpec(lP.height,MeasureSpec.EXACTLY));
+        lP.markMeasured(this);
+        view.layout(lP.mLeft,lP.mTop,lP.mRight,lP.mBottom);
+        if(lP.mStatic){
+            invalidateStaticCache();
+        }
+        onLazyChildInflated(placeholder,view);
+        return view;
+    }
+
+    private void onLazyChildInflated(View placeholder, View view){
+        if(mOnLazyChildInflateListener!=null){
+            mOnLazyChildInflateListener.onLazyChildInflated(this,placeholder,view);
+        }
+    }
+
+    public CanvasAdapter getAdapter() {
+        return mAdapter;
+    }
+
+    /**
+     * Virtualize the canvas layout. The children are replaced by the views of the adapter items which<br/>
+     * are inside the visible area, the rest of the items only have a rect. Set null to stop it.
+     */
+    public void setAdapter(CanvasAdapter adapter) {
+        if(mAdapter!=null){
+            mAdapter.unregisterDataSetObserver(mItemsObserver);
+        }
+        removeAllViews();
+        mScrapViews.clear();
+        Arrays.fill(mItemViews,null);
+        mAdapter = adapter;
+        if(mAdapter!=null){
+            mAdapter.registerDataSetObserver(mItemsObserver);
+        }
+        mItemsDirty = true;
+        requestLayout();
+    }
+
+    public int getViewportMargin() {
+        return mViewportMargin;
+    }
+
+    /**
+     * @param viewportMargin The items and the lazy children within the margin around the visible area get<br/>
+     *                       a view too, in pixels.
+     */
+    public void setViewportMargin(int viewportMargin) {
+        mViewportMargin = viewportMargin;
+        updateVisibleItems(false);
+        inflateVisibleLazyChildren(false);
+    }
+
+    private void onItemsChanged(){
+        //Recycle every item view, the visible items are bound again after the layout.
+        for(int i=0;i<mItemCount;i++){
+            if(mItemViews[i]!=null){
+                recycleItemView(i);
+            }
+        }
+        mItemsDirty = true;
+        requestLayout();
+        invalidate();
+    }
+
+    /**
+     * Read the design of every item from the adapter if they changed, then compute every item rect and index<br/>
+     * them if the items or the scaling changed. Otherwise the rects of the last measure are kept.
+     */
+    private void measureItems(boolean scalingChanged){
+        boolean changed = scalingChanged||mItemsDirty;
+        if(mItemsDirty){
+            int count = mAdapter.getCount();
+            if(mItemDepths.length<count){
+                mItemSpecs = new int[count*CanvasGeometry.SPEC_STRIDE];
+                mItemDepths = new float[count];
+                mItemRects = new int[count*CanvasGeometry.RECT_STRIDE];
+                mItemViews = Arrays.copyOf(mItemViews,count);
+                mVisibleItems = new int[count];
+            }
+            for(int i=0;i<count;i++){
+                mAdapter.getItemDesign(i,mItemDesign);
+                mItemDesign.writeSpec(mItemSpecs,i*CanvasGeometry.SPEC_STRIDE);
+                mItemDepths[i] = mItemDesign.getZDepth();
+            }
+            mItemCount = count;
+            mItemsDirty = false;
+        }
+        if(changed){
+            mGeometry.computeRects(mItemSpecs,mItemCount,mItemRects);
+            mItemContentRight = mGeometry.getContentRight();
+            mItemContentBottom = mGeometry.getContentBottom();
+            mItemIndex.reset(mItemContentRight,mItemContentBottom,mItemCount);
+            int offset;
+            for(int i=0;i<mItemCount;i++){
+                offset = i*CanvasGeometry.RECT_STRIDE;
+                mItemIndex.update(i,mItemRects[offset+CanvasGeometry.RECT_LEFT],mItemRects[offset+CanvasGeometry.RECT_TOP],
+                        mItemRects[offset+CanvasGeometry.RECT_RIGHT],mItemRects[offset+CanvasGeometry.RECT_BOTTOM]);
+            }
+        }
+        mContentRight = Math.max(mContentRight,mItemContentRight);
+        mContentBottom = Math.max(mContentBottom,mItemContentBottom);
+    }
+
+    /**
+     * Give a view to the items inside the visible area, and recycle the views of the items outside. Only the<br/>
+     * item views and the items the index finds in the visible area are visited, not every item.
+     * @param inLayout Whether it's called by onLayout. Otherwise it waits for the pending layout if there is one.
+     */
+    private void updateVisibleItems(boolean inLayout){
+        if(mAdapter==null||mItemsDirty||(!inLayout&&isLayoutRequested())||getWindowToken()==null)return;
+        if(getLocalVisibleRect(mViewport)){
+            mViewport.offset(getScrollX(),getScrollY());
+            mViewport.inset(-mViewportMargin,-mViewportMargin);
+        }else {
+            mViewport.setEmpty();
+        }
+        boolean changed = false;
+        int position, offset;
+        Object obj;
+        //Backwards, a recycled view is removed.
+        for(int i=getChildCount()-1;i>=0;i--){
+            obj = getChildAt(i).getLayoutParams();
+            position = obj instanceof LayoutParams?((LayoutParams) obj).mItemPosition:-1;
+            if(position<0)continue;
+            offset = position*CanvasGeometry.RECT_STRIDE;
+            if(mViewport.isEmpty()||!mViewport.intersects(mItemRects[offset+CanvasGeometry.RECT_LEFT],mItemRects[offset+CanvasGeometry.RECT_TOP],
+                    mItemRects[offset+CanvasGeometry.RECT_RIGHT],mItemRects[offset+CanvasGeometry.RECT_BOTTOM])){
+                recycleItemView(position);
+                changed = true;
+            }
+        }
+        int found = mItemIndex.query(mViewport.left,mViewport.top,mViewport.right,mViewport.bottom,mVisibleItems);
+        for(int i=0;i<found;i++){
+            position = mVisibleItems[i];
+            if(mItemViews[position]==null){
+                addItemView(position);
+                changed = true;
             }
-            lP.width = lP.getWidth(stretchXS,virtualXS);
-            lP.height = lP.getHeight(stretchYS,virtualYS);
-            wMSP = MeasureSpec.makeMeasureSpec(lP.width,MeasureSpec.EXACTLY);
-            hMSP = MeasureSpec.makeMeasureSpec(lP.height,MeasureSpec.EXACTLY);
-            //measure child.
-            view.measure(wMSP,hMSP);
-            lP.mLeft = lP.getX(stretchXS,virtualXS,virtualXPadding);
-            lP.mTop = lP.getY(stretchYS,virtualYS,virtualYPadding);
-            lP.mRight = lP.mLeft + lP.width;
-            lP.mBottom = lP.mTop + lP.height;
-            //record the right and bottom position.
-            r = Math.max(r, lP.mRight);
-            b = Math.max(b, lP.mBottom);
         }
-        tSize[0] = r - l;
-        tSize[1] = b - t;
-        return tSize;
+        if(changed){
+            updateDrawOrder();
+            updateTouchIndex();
+            invalidate();
+        }
+    }
+
+    private void addItemView(int position){
+        int viewType = mAdapter.getItemViewType(position);
+        ArrayList<View> scrap = mScrapViews.get(viewType);
+        View view = scrap!=null&&!scrap.isEmpty()?scrap.remove(scrap.size()-1):mAdapter.onCreateView(this,viewType);
+        Object obj = view.getLayoutParams();
+        LayoutParams lP = obj instanceof LayoutParams?(LayoutParams) obj:new LayoutParams();
+        lP.setSpec(mItemSpecs,position*CanvasGeometry.SPEC_STRIDE,mItemDepths[position]);
+        lP.mItemPosition = position;
+        lP.mItemViewType = viewType;
+        mAdapter.onBindView(view,position);
+        //Place it at once, there is no need to lay out the other children.
+        addViewInLayout(view,-1,lP,true);
+        lP.setRect(mItemRects,position*CanvasGeometry.RECT_STRIDE);
+        applyDesignTextSize(view,lP);
+        applyImageSource(view,lP);
+        view.measure(MeasureSpec.makeMeasureSpec(lP.width,MeasureSpec.EXACTLY),MeasureSpec.makeMeasureSpec(lP.height,MeasureSpec.EXACTLY));
+        lP.markMeasured(this);
+        view.layout(lP.mLeft,lP.mTop,lP.mRight,lP.mBottom);
+        mItemViews[position] = view;
+    }
+
+    private void recycleItemView(int position){
+        View view = mItemViews[position];
+        LayoutParams lP = (LayoutParams) view.getLayoutParams();
+        removeViewInLayout(view);
+        mItemViews[position] = null;
+        lP.mItemPosition = -1;
+        ArrayList<View> scrap = mScrapViews.get(lP.mItemViewType);
+        if(scrap==null){
+            scrap = new ArrayList<View>();
+            mScrapViews.put(lP.mItemViewType,scrap);
+        }
+        scrap.add(view);
     }
 
     @Override
-    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+    protected int getChildDrawingOrder(int childCount, int i) {
+        if(mTouchOrdered&&mTouchOrder.length==childCount){
+            return mTouchOrder[i];
+        }
+        if(mDrawOrderDirty||mDrawOrder.length!=childCount){
+            updateDrawOrder();
+        }
+        return mDrawOrder[i];
+    }
+
+    /**
+     * Sort the children by layout_zDepth if a depth or the children changed since the last sort.
+     * The sort is stable, so children with the same layout_zDepth keep their order in the hierarchy.<br/>
+     * It's called while drawing, so it doesn't invalidate. Whoever marks the order dirty invalidates.
+     */
+    private void updateDrawOrder(){
         int count = getChildCount();
+        if(!mDrawOrderDirty&&mDrawOrder.length==count){
+            int i=0;
+            while(i<count&&mDrawOrderChildren[i]==getChildAt(i))i++;
+            if(i==count)return;
+        }
+        if(mDrawOrder.length!=count){
+            mDrawOrder = new int[count];
+            mDrawRanks = new int[count];
+            mDrawDepths = new float[count];
+            mDrawOrderChildren = new View[count];
+            mDrawSorted = new int[count];
+        }
         View view;
-        mDrawList.clear();
         for(int i=0;i<count;i++){
             view = getChildAt(i);
             Object obj = view.getLayoutParams();
-            //If child didn't has a canvas layout params, ignore it.
-            if(obj instanceof LayoutParams){
-                mDrawList.add(view);
-            }else {
-                continue;
+            //Children without a canvas layout params stay behind the others.
+            mDrawDepths[i] = obj instanceof LayoutParams?((LayoutParams) obj).getZDepth():Float.NEGATIVE_INFINITY;
+            mDrawOrderChildren[i] = view;
+        }
+        if(mFlattened){
+            //Former children are drawn right above their frame.
+            if(mDrawFrames.length!=count){
+                mDrawFrames = new int[count];
+            }
+            if(mDrawSorted.length<DrawOrder.treeWorkLength(count)){
+                mDrawSorted = new int[DrawOrder.treeWorkLength(count)];
+            }
+            for(int i=0;i<count;i++){
+                Object obj = mDrawOrderChildren[i].getLayoutParams();
+                CanvasLayout frame = obj instanceof LayoutParams?((LayoutParams) obj).mFrame:null;
+                mDrawFrames[i] = frame!=null&&frame.mFlattenedInto==this?indexOfChild(frame):-1;
+            }
+            DrawOrder.sortByDepth(mDrawDepths,mDrawFrames,count,mDrawSorted,mDrawOrder);
+        }else {
+            DrawOrder.sortByDepth(mDrawDepths,count,mDrawSorted,mDrawOrder);
+        }
+        for(int i=0;i<count;i++){
+            mDrawRanks[mDrawOrder[i]] = i;
+        }
+        mDrawOrderDirty = false;
+    }
+
+    public int getDesignWidth() {
+        return mDesignWidth;
+    }
+
+    public int getDesignHeight() {
+        return mDesignHeight;
+    }
+
+    public void setDesignSize(int designWidth, int designHeight){
+        if(mDesignWidth!=designWidth||mDesignHeight!=designHeight){
+            mDesignWidth = designWidth;
+            mDesignHeight = designHeight;
+            requestLayout();
+        }
+    }
+
+    /**
+     * Move a child to a new position in design units. If the child's rect is known, it's offset in place<br/>
+     * like {@link View#offsetLeftAndRight(int)}, without a measure pass. Otherwise, or if the canvas size<br/>
+     * follows its children, the layout is requested as if the layout params were changed.<br/>
+     * Use it to animate the position, see {@link DesignMotion}.
+     */
+    public void setChildDesignPosition(View child, int designX, int designY){
+        LayoutParams lP = checkChild(child);
+        if(lP.mDesignX==designX&&lP.mDesignY==designY)return;
+        lP.mDesignX = designX;
+        lP.mDesignY = designY;
+        CanvasLayout frame = lP.mFrame!=null&&lP.mFrame.mFlattenedInto==this?lP.mFrame:null;
+        boolean isFrame = child instanceof CanvasLayout&&((CanvasLayout) child).mFlattenedInto==this;
+        //The rect is only up to date if the child was measured by this canvas with its current design.
+        if(lP.needsMeasure(this)||isLayoutRequested()||mGeometry.isSizedByContent()||isFrame){
+            lP.onDesignChanged();
+            requestLayout();
+            return;
+        }
+        CanvasGeometry geometry = frame!=null?frame.mGeometry:mGeometry;
+        int left = CanvasGeometry.scalePosition(lP.mXScalingMode,designX,geometry.getStretchXS(),geometry.getVirtualXS(),geometry.getVirtualXPadding());
+        int top = CanvasGeometry.scalePosition(lP.mYScalingMode,designY,geometry.getStretchYS(),geometry.getVirtualYS(),geometry.getVirtualYPadding());
+        if(frame!=null){
+            LayoutParams frameLP = (LayoutParams) frame.getLayoutParams();
+            left += frameLP.mLeft;
+            top += frameLP.mTop;
+        }
+        int dx = left-lP.mLeft;
+        int dy = top-lP.mTop;
+        lP.mLeft += dx;
+        lP.mRight += dx;
+        lP.mTop += dy;
+        lP.mBottom += dy;
+        child.offsetLeftAndRight(dx);
+        child.offsetTopAndBottom(dy);
+        writeChildSpec(lP,true);
+        if(mTouchIndexEnabled&&mTouchIndexChildren.length==getChildCount()){
+            int index = indexOfChild(child);
+            if(mTouchIndexChildren[index]==child){
+                mTouchIndex.update(index,lP.mLeft,lP.mTop,lP.mRight,lP.mBottom);
             }
         }
+        invalidate();
+    }
+
+    /**
+     * Change the layout_zDepth of a child. Only the drawing order is updated, there is no layout pass.<br/>
+     * Use it to animate the depth, see {@link DesignMotion}.
+     */
+    public void setChildZDepth(View child, float zDepth){
+        LayoutParams lP = checkChild(child);
+        if(lP.mZDepth==zDepth)return;
+        lP.mZDepth = zDepth;
+        mDrawOrderDirty = true;
+        invalidate();
+    }
+
+    private LayoutParams checkChild(View child){
+        Object obj = child.getLayoutParams();
+        if(child.getParent()!=this||!(obj instanceof LayoutParams)){
+            throw new IllegalArgumentException("The view isn't a child of this canvas layout");
+        }
+        return (LayoutParams) obj;
+    }
+
+    /**
+     * Start collecting changes of the children's design. Nothing is changed until the transaction is<br/>
+     * committed, then every change is applied at once with a single layout pass, and only the union of<br/>
+     * the old and new rects of the changed children is invalidated.
+     */
+    public Transaction beginTransaction(){
+        return new Transaction();
+    }
+
+    private void commitTransaction(Transaction transaction){
+        boolean layout = false;
+        View child;
         LayoutParams lP;
-        for(View item:mDrawList){
-            lP = (LayoutParams) item.getLayoutParams();
-            item.layout(lP.mLeft, lP.mTop, lP.mRight, lP.mBottom);
-            item.bringToFront();
+        int offset;
+        float zDepth;
+        for(int i=0;i<transaction.mCount;i++){
+            child = transaction.mChildren[i];
+            //The child may be removed since it was edited.
+            if(child.getParent()!=this)continue;
+            lP = (LayoutParams) child.getLayoutParams();
+            offset = i*CanvasGeometry.SPEC_STRIDE;
+            zDepth = transaction.mZDepths[i];
+            if(!lP.hasSpec(transaction.mSpecs,offset)){
+                mTransactionDirty.union(child.getLeft(),child.getTop(),child.getRight(),child.getBottom());
+                lP.setSpec(transaction.mSpecs,offset,zDepth);
+                mTransactionChildren.add(child);
+                layout = true;
+            }else if(lP.mZDepth!=zDepth){
+                mTransactionDirty.union(child.getLeft(),child.getTop(),child.getRight(),child.getBottom());
+                lP.mZDepth = zDepth;
+                mDrawOrderDirty = true;
+            }
+        }
+        if(transaction.mDesignSizeChanged&&(mDesignWidth!=transaction.mDesignWidth||mDesignHeight!=transaction.mDesignHeight)){
+            mDesignWidth = transaction.mDesignWidth;
+            mDesignHeight = transaction.mDesignHeight;
+            //Every child moves.
+            mTransactionDirty.union(0,0,getWidth(),getHeight());
+            layout = true;
+        }
+        if(layout){
+            requestLayout();
+        }else if(!mTransactionDirty.isEmpty()){
+            updateDrawOrder();
+            invalidateTransaction();
+        }
+    }
+
+    private void invalidateTransaction(){
+        View child;
+        for(int i=0;i<mTransactionChildren.size();i++){
+            child = mTransactionChildren.get(i);
+            if(child.getParent()==this){
+                mTransactionDirty.union(child.getLeft(),child.getTop(),child.getRight(),child.getBottom());
+            }
+        }
+        mTransactionChildren.clear();
+        invalidate(mTransactionDirty);
+        mTransactionDirty.setEmpty();
+    }
+
+    public boolean isFlattened() {
+        return mFlattened;
+    }
+
+    public boolean isLayoutPlanShared() {
+        return mLayoutPlanShared;
+    }
+
+    /**
+     * @param layoutPlanShared Whether to share the children rects with other canvas layouts of the same design.
+     */
+    public void setLayoutPlanShared(boolean layoutPlanShared) {
+        if(mLayoutPlanShared!=layoutPlanShared){
+            mLayoutPlanShared = layoutPlanShared;
+            requestLayout();
         }
     }
 
     @Override
     public LayoutParams generateLayoutParams(AttributeSet attrs) {
+        //Only a direct child in the canvas layout's own xml has a known position in the compiled design. The children
+        //of an included layout, or of a layout inflated into the canvas layout later, have their attributes parsed.
+        if(mInflationParser!=null&&attrs==mInflationParser&&mInflationParser.getDepth()==mInflationDepth){
+            int index = mInflatedChildCount++;
+            if(index<mCompiledDesign.getChildCount()&&!mCompiledDesign.needsAttributes(index)){
+                return mCompiledDesign.newLayoutParams(index);
+            }
+        }
         return new LayoutParams(getContext(), attrs);
     }
 
-    @Override
-    public int compare(View lhs, View rhs) {
-        LayoutParams lLp = (LayoutParams) lhs.getLayoutParams();
-        LayoutParams rLp = (LayoutParams) rhs.getLayoutParams();
-        return lLp.getZDepth()>rLp.getZDepth()?1:lLp.getZDepth()<rLp.getZDepth()?-1:0;
+    /**
+     * Changes of the children's design, applied together by {@link #commit()}. The changes of a child<br/>
+     * start from its design when it's edited for the first time, and the later changes are merged.
+     */
+    public final class Transaction {
+
+        private View[] mChildren = new View[4];
+        private int[] mSpecs = new int[4*CanvasGeometry.SPEC_STRIDE];
+        private float[] mZDepths = new float[4];
+        private int mCount;
+        private boolean mDesignSizeChanged;
+        private int mDesignWidth, mDesignHeight;
+        private boolean mCommitted;
+
+        private Transaction() {
+        }
+
+        /**
+         * @return The offset of the child's spec, after it's added to the transaction if it wasn't there.
+         */
+        private int edit(View child){
+            if(mCommitted){
+                throw new IllegalStateException("The transaction was committed");
+            }
+            for(int i=0;i<mCount;i++){
+                if(mChildren[i]==child){
+                    return i*CanvasGeometry.SPEC_STRIDE;
+                }
+            }
+            LayoutParams lP = checkChild(child);
+            if(mCount==mChildren.length){
+                mChildren = Arrays.copyOf(mChildren,mCount*2);
+                mSpecs = Arrays.copyOf(mSpecs,mCount*2*CanvasGeometry.SPEC_STRIDE);
+                mZDepths = Arrays.copyOf(mZDepths,mCount*2);
+            }
+            mChildren[mCount] = child;
+            lP.writeSpec(mSpecs,mCount*CanvasGeometry.SPEC_STRIDE);
+            mZDepths[mCount] = lP.getZDepth();
+            return (mCount++)*CanvasGeometry.SPEC_STRIDE;
+        }
+
+        public Transaction setDesignPosition(View child, int designX, int designY){
+            int offset = edit(child);
+            mSpecs[offset+CanvasGeometry.SPEC_DESIGN_X] = designX;
+            mSpecs[offset+CanvasGeometry.SPEC_DESIGN_Y] = designY;
+            return this;
+        }
+
+        public Transaction setDesignSize(View child, int designWidth, int designHeight){
+            int offset = edit(child);
+            mSpecs[offset+CanvasGeometry.SPEC_DESIGN_WIDTH] = designWidth;
+            mSpecs[offset+CanvasGeometry.SPEC_DESIGN_HEIGHT] = designHeight;
+            return this;
+        }
+
+        /**
+         * @param widthScalingMode {@link LayoutParams#VIRTUAL_DESIGN_MODE} or {@link LayoutParams#STRETCH_DESIGN_MODE}, so are the others.
+         */
+        public Transaction setScalingModes(View child, int widthScalingMode, int heightScalingMode, int xScalingMode, int yScalingMode){
+            int offset = edit(child);
+            mSpecs[offset+CanvasGeometry.SPEC_WIDTH_SCALING_MODE] = widthScalingMode;
+            mSpecs[offset+CanvasGeometry.SPEC_HEIGHT_SCALING_MODE] = heightScalingMode;
+            mSpecs[offset+CanvasGeometry.SPEC_X_SCALING_MODE] = xScalingMode;
+            mSpecs[offset+CanvasGeometry.SPEC_Y_SCALING_MODE] = yScalingMode;
+            return this;
+        }
+
+        public Transaction setZDepth(View child, float zDepth){
+            mZDepths[edit(child)/CanvasGeometry.SPEC_STRIDE] = zDepth;
+            return this;
+        }
+
+        /**
+         * Change the design size of the canvas layout itself.
+         */
+        public Transaction setCanvasDesignSize(int designWidth, int designHeight){
+            if(mCommitted){
+                throw new IllegalStateException("The transaction was committed");
+            }
+            mDesignSizeChanged = true;
+            mDesignWidth = designWidth;
+            mDesignHeight = designHeight;
+            return this;
+        }
+
+        /**
+         * Apply every change. A transaction can only be committed once.
+         */
+        public void commit(){
+            if(mCommitted){
+                throw new IllegalStateException("The transaction was committed");
+            }
+            mCommitted = true;
+            commitTransaction(this);
+        }
     }
 
     /**
@@ -305,13 +1955,19 @@ public class CanvasLayout extends ViewGroup implements Comparator<View>{
      * @attr ref R.styleable#CanvasLayout_Layout_layout_design_y
      * @attr ref R.styleable#CanvasLayout_Layout_layout_design_x_scaling_mode
      * @attr ref R.styleable#CanvasLayout_Layout_layout_design_y_scaling_mode
+     * @attr ref R.styleable#CanvasLayout_Layout_layout_opaque
+     * @attr ref R.styleable#CanvasLayout_Layout_layout_design_text_size
+     * @attr ref R.styleable#CanvasLayout_Layout_layout_fit_text
+     * @attr ref R.styleable#CanvasLayout_Layout_layout_image_src
+     * @attr ref R.styleable#CanvasLayout_Layout_layout_static
+     * @attr ref R.styleable#CanvasLayout_Layout_layout_lazy
      */
     public static class LayoutParams extends ViewGroup.LayoutParams{
 
         /** Design in virtual window. */
-        public static final int VIRTUAL_DESIGN_MODE = 0;
+        public static final int VIRTUAL_DESIGN_MODE = CanvasGeometry.VIRTUAL_DESIGN_MODE;
         /** Design in stretch window. */
-        public static final int STRETCH_DESIGN_MODE = 1;
+        public static final int STRETCH_DESIGN_MODE = CanvasGeometry.STRETCH_DESIGN_MODE;
 
         private float mZDepth = 0.0f;
 
@@ -333,10 +1989,74 @@ public class CanvasLayout extends ViewGroup implements Comparator<View>{
 
         private int mLeft, mTop, mRight, mBottom;
 
+        //The canvas which measured this child last time, and whether the design changed since then.
+        private CanvasLayout mOwner;
+        private boolean mDirty = true;
+        //The slot of the child in the child store of the owner.
+        private int mSlot = -1;
+
+        //The nested canvas layout this child was moved out of by flattenNestedCanvases().
+        private CanvasLayout mFrame;
+
+        private boolean mOpaque = false;
+
+        //Whether the child is static, and whether it's drawn into the cached bitmap of the canvas.
+        private boolean mStatic = false;
+        private boolean mStaticCached;
+
+        private float mDesignTextSize = 0.0f;
+        private boolean mFitText = false;
+        private FitTextWatcher mFitTextWatcher;
+
+        //The image source, a drawable resource or a path, and the size it was decoded for.
+        private int mImageResource = 0;
+        private String mImagePath;
+        private boolean mImageChanged = false;
+        private int mImageWidth, mImageHeight;
+
+        //Whether the child was covered by an opaque child in the last frame.
+        private boolean mCulled;
+
+        //The child of the runtime design applied to this child, see RuntimeDesign.apply().
+        private RuntimeDesign.Child mRuntimeChild;
+        //The text colors of the view before a runtime design set one, they are back when a design drops it.
+        private ColorStateList mRuntimeTextColors;
+
+        //The layout inflated in place of the child when it becomes visible, 0 if it isn't lazy.
+        private int mLazyLayout = 0;
+
+        //The adapter item shown by this child, see setAdapter().
+        private int mItemPosition = -1;
+        private int mItemViewType;
+
         public LayoutParams() {
             super(0,0);
         }
 
+        LayoutParams(int[] specs, int offset, float zDepth) {
+            super(0,0);
+            setSpec(specs,offset,zDepth);
+        }
+
+        /**
+         * Take the design at the offset of a flat spec array of {@link CanvasGeometry}.
+         */
+        void setSpec(int[] specs, int offset, float zDepth){
+            mDesignX = specs[offset+CanvasGeometry.SPEC_DESIGN_X];
+            mDesignY = specs[offset+CanvasGeometry.SPEC_DESIGN_Y];
+            mDesignWidth = specs[offset+CanvasGeometry.SPEC_DESIGN_WIDTH];
+            mDesignHeight = specs[offset+CanvasGeometry.SPEC_DESIGN_HEIGHT];
+            mXScalingMode = specs[offset+CanvasGeometry.SPEC_X_SCALING_MODE];
+            mYScalingMode = specs[offset+CanvasGeometry.SPEC_Y_SCALING_MODE];
+            mWidthScalingMode = specs[offset+CanvasGeometry.SPEC_WIDTH_SCALING_MODE];
+            mHeightScalingMode = specs[offset+CanvasGeometry.SPEC_HEIGHT_SCALING_MODE];
+            if(mZDepth!=zDepth&&mOwner!=null){
+                mOwner.mDrawOrderDirty = true;
+            }
+            mZDepth = zDepth;
+            onDesignChanged();
+        }
+
         public LayoutParams(Context c, AttributeSet attrs) {
             super(c, attrs);
             TypedArray a = c.obtainStyledAttributes(attrs,R.styleable.CanvasLayout_Layout);
@@ -349,6 +2069,17 @@ public class CanvasLayout extends ViewGroup implements Comparator<View>{
             mHeightScalingMode = a.getInt(R.styleable.CanvasLayout_Layout_layout_design_height_scaling_mode,VIRTUAL_DESIGN_MODE);
             mXScalingMode = a.getInt(R.styleable.CanvasLayout_Layout_layout_design_x_scaling_mode,VIRTUAL_DESIGN_MODE);
             mYScalingMode = a.getInt(R.styleable.CanvasLayout_Layout_layout_design_y_scaling_mode,VIRTUAL_DESIGN_MODE);
+            mOpaque = a.getBoolean(R.styleable.CanvasLayout_Layout_layout_opaque,false);
+            mStatic = a.getBoolean(R.styleable.CanvasLayout_Layout_layout_static,false);
+            mLazyLayout = a.getResourceId(R.styleable.CanvasLayout_Layout_layout_lazy,0);
+            mDesignTextSize = a.getFloat(R.styleable.CanvasLayout_Layout_layout_design_text_size,0.0f);
+            mFitText = a.getBoolean(R.styleable.CanvasLayout_Layout_layout_fit_text,false);
+            TypedValue image = a.peekValue(R.styleable.CanvasLayout_Layout_layout_image_src);
+            if(image!=null&&image.resourceId!=0){
+                setImageResource(image.resourceId);
+            }else if(image!=null&&image.type==TypedValue.TYPE_STRING){
+                setImagePath(image.string.toString());
+            }
             a.recycle();
         }
 
@@ -358,6 +2089,7 @@ public class CanvasLayout extends ViewGroup implements Comparator<View>{
 
         public void setDesignHeight(int designHeight) {
             mDesignHeight = designHeight;
+            onDesignChanged();
         }
 
         public int getDesignWidth() {
@@ -366,6 +2098,7 @@ public class CanvasLayout extends ViewGroup implements Comparator<View>{
 
         public void setDesignWidth(int designWidth) {
             mDesignWidth = designWidth;
+            onDesignChanged();
         }
 
         public int getDesignX() {
@@ -374,6 +2107,7 @@ public class CanvasLayout extends ViewGroup implements Comparator<View>{
 
         public void setDesignX(int designX) {
             mDesignX = designX;
+            onDesignChanged();
         }
 
         public int getDesignY() {
@@ -382,6 +2116,7 @@ public class CanvasLayout extends ViewGroup implements Comparator<View>{
 
         public void setDesignY(int designY) {
             mDesignY = designY;
+            onDesignChanged();
         }
 
         public int getHeightScalingMode() {
@@ -390,6 +2125,7 @@ public class CanvasLayout extends ViewGroup implements Comparator<View>{
 
         public void setHeightScalingMode(int heightScalingMode) {
             mHeightScalingMode = heightScalingMode;
+            onDesignChanged();
         }
 
         public int getWidthScalingMode() {
@@ -398,6 +2134,7 @@ public class CanvasLayout extends ViewGroup implements Comparator<View>{
 
         public void setWidthScalingMode(int widthScalingMode) {
             mWidthScalingMode = widthScalingMode;
+            onDesignChanged();
         }
 
         public int getXScalingMode() {
@@ -406,6 +2143,7 @@ public class CanvasLayout extends ViewGroup implements Comparator<View>{
 
         public void setXScalingMode(int xScalingMode) {
             mXScalingMode = xScalingMode;
+            onDesignChanged();
         }
 
         public int getYScalingMode() {
@@ -414,58 +2152,249 @@ public class CanvasLayout extends ViewGroup implements Comparator<View>{
 
         public void setYScalingMode(int yScalingMode) {
             mYScalingMode = yScalingMode;
+            onDesignChanged();
+        }
+
+        public boolean isOpaque() {
+            return mOpaque;
+        }
+
+        /**
+         * @param opaque Whether the child covers its rect completely, as a hint for occlusion culling.
+         */
+        public void setOpaque(boolean opaque) {
+            mOpaque = opaque;
+        }
+
+        public boolean isStatic() {
+            return mStatic;
+        }
+
+        /**
+         * @param isStatic Whether the child rarely changes, so it can be drawn into a cached bitmap with the<br/>
+         *                 static children behind it. The cache is drawn again when a cached child or its<br/>
+         *                 descendant is invalidated, or its rect or visibility changes. On Android O and later<br/>
+         *                 with hardware acceleration the invalidation doesn't reach the canvas layout, so call<br/>
+         *                 {@link View#invalidate()} on the canvas layout after changing a static child. Call<br/>
+         *                 {@link CanvasLayout#invalidateStaticCache()} if it changed what it draws without<br/>
+         *                 invalidating itself.
+         */
+        public void setStatic(boolean isStatic) {
+            mStatic = isStatic;
+            if(mOwner!=null){
+                mOwner.invalidate();
+            }
+        }
+
+        public boolean isLazy() {
+            return mLazyLayout!=0;
+        }
+
+        public int getLazyLayout() {
+            return mLazyLayout;
+        }
+
+        /**
+         * @param lazyLayout The layout inflated in place of the child when it first becomes visible, or by<br/>
+         *                   {@link CanvasLayout#inflateLazyChild(View)}. 0 if the child isn't lazy.
+         */
+        public void setLazyLayout(int lazyLayout) {
+            mLazyLayout = lazyLayout;
+            if(mOwner!=null&&lazyLayout!=0){
+                mOwner.mHasLazyChildren = true;
+                mOwner.requestLayout();
+            }
+        }
+
+        public float getDesignTextSize() {
+            return mDesignTextSize;
+        }
+
+        /**
+         * @param designTextSize The text size of a TextView child in design units, 0 to leave the text size alone.
+         */
+        public void setDesignTextSize(float designTextSize) {
+            mDesignTextSize = designTextSize;
+            onDesignChanged();
+        }
+
+        public boolean isFitText() {
+            return mFitText;
+        }
+
+        /**
+         * @param fitText Whether to shrink the text size until every line of the text fits into the child.
+         */
+        public void setFitText(boolean fitText) {
+            mFitText = fitText;
+            if(!fitText){
+                removeFitTextWatcher();
+            }
+            onDesignChanged();
+        }
+
+        /**
+         * Stop fitting the text of the child when it changes, e.g. when the child is removed.
+         */
+        private void removeFitTextWatcher(){
+            if(mFitTextWatcher!=null){
+                mFitTextWatcher.mView.removeTextChangedListener(mFitTextWatcher);
+                mFitTextWatcher = null;
+            }
+        }
+
+        public boolean hasImageSource(){
+            return mImageResource!=0||mImagePath!=null;
+        }
+
+        public int getImageResource() {
+            return mImageResource;
+        }
+
+        /**
+         * @param imageResource The drawable resource decoded for the size of an ImageView child, 0 for none.
+         */
+        public void setImageResource(int imageResource) {
+            mImageResource = imageResource;
+            mImagePath = null;
+            mImageChanged = true;
+            onDesignChanged();
+        }
+
+        public String getImagePath() {
+            return mImagePath;
+        }
+
+        /**
+         * @param imagePath The image file decoded for the size of an ImageView child, or an asset path<br/>
+         *                  after "asset:". Null for none.
+         */
+        public void setImagePath(String imagePath) {
+            mImagePath = imagePath;
+            mImageResource = 0;
+            mImageChanged = true;
+            onDesignChanged();
         }
 
         public float getZDepth() {
             return mZDepth;
         }
 
+        /**
+         * Only the drawing order is updated, the child isn't measured again.
+         */
         public void setZDepth(float zDepth) {
             mZDepth = zDepth;
+            if(mOwner!=null){
+                mOwner.mDrawOrderDirty = true;
+                mOwner.invalidate();
+            }
         }
 
-        public int getWidth(float stretchXS, float virtualXS){
-            switch (mWidthScalingMode){
-                case VIRTUAL_DESIGN_MODE:
-                    return (int) (virtualXS*mDesignWidth);
-                case STRETCH_DESIGN_MODE:
-                    return (int) (stretchXS*mDesignWidth);
-                default:
-                    return (int) (virtualXS*mDesignWidth);
+        /**
+         * The spec changed, so the child is measured again, and the owner's child store takes the new spec.
+         */
+        private void onDesignChanged(){
+            mDirty = true;
+            if(mOwner!=null){
+                mOwner.writeChildSpec(this,false);
             }
         }
 
-        public int getHeight(float stretchYS, float virtualYS){
-            switch (mHeightScalingMode){
-                case VIRTUAL_DESIGN_MODE:
-                    return (int) (virtualYS*mDesignHeight);
-                case STRETCH_DESIGN_MODE:
-                    return (int) (stretchYS*mDesignHeight);
-                default:
-                    return (int) (virtualYS*mDesignHeight);
+        /**
+         * Whether the child's rect has to be measured again by the given canvas.
+         */
+        boolean needsMeasure(CanvasLayout owner){
+            return mDirty||mOwner!=owner;
+        }
+
+        void markMeasured(CanvasLayout owner){
+            if(mOwner!=owner){
+                owner.mDrawOrderDirty = true;
             }
+            mOwner = owner;
+            mDirty = false;
+        }
+
+        /**
+         * Write the design of the child into a flat spec array of {@link CanvasGeometry}.
+         */
+        void writeSpec(int[] specs, int offset){
+            specs[offset+CanvasGeometry.SPEC_DESIGN_X] = mDesignX;
+            specs[offset+CanvasGeometry.SPEC_DESIGN_Y] = mDesignY;
+            specs[offset+CanvasGeometry.SPEC_DESIGN_WIDTH] = mDesignWidth;
+            specs[offset+CanvasGeometry.SPEC_DESIGN_HEIGHT] = mDesignHeight;
+            specs[offset+CanvasGeometry.SPEC_X_SCALING_MODE] = mXScalingMode;
+            specs[offset+CanvasGeometry.SPEC_Y_SCALING_MODE] = mYScalingMode;
+            specs[offset+CanvasGeometry.SPEC_WIDTH_SCALING_MODE] = mWidthScalingMode;
+            specs[offset+CanvasGeometry.SPEC_HEIGHT_SCALING_MODE] = mHeightScalingMode;
+        }
+
+        /**
+         * Take the rect at the offset of a flat rect array of {@link CanvasGeometry}.
+         */
+        void setRect(int[] rects, int offset){
+            mLeft = rects[offset+CanvasGeometry.RECT_LEFT];
+            mTop = rects[offset+CanvasGeometry.RECT_TOP];
+            mRight = rects[offset+CanvasGeometry.RECT_RIGHT];
+            mBottom = rects[offset+CanvasGeometry.RECT_BOTTOM];
+            width = mRight - mLeft;
+            height = mBottom - mTop;
+        }
+
+        /**
+         * Write the rect of the child into a flat rect array of {@link CanvasGeometry}.
+         */
+        void writeRect(int[] rects, int offset){
+            rects[offset+CanvasGeometry.RECT_LEFT] = mLeft;
+            rects[offset+CanvasGeometry.RECT_TOP] = mTop;
+            rects[offset+CanvasGeometry.RECT_RIGHT] = mRight;
+            rects[offset+CanvasGeometry.RECT_BOTTOM] = mBottom;
+        }
+
+        boolean hasSpec(int[] specs, int offset){
+            return mDesignX==specs[offset+CanvasGeometry.SPEC_DESIGN_X]&&mDesignY==specs[offset+CanvasGeometry.SPEC_DESIGN_Y]
+                    &&mDesignWidth==specs[offset+CanvasGeometry.SPEC_DESIGN_WIDTH]&&mDesignHeight==specs[offset+CanvasGeometry.SPEC_DESIGN_HEIGHT]
+                    &&mXScalingMode==specs[offset+CanvasGeometry.SPEC_X_SCALING_MODE]&&mYScalingMode==specs[offset+CanvasGeometry.SPEC_Y_SCALING_MODE]
+                    &&mWidthScalingMode==specs[offset+CanvasGeometry.SPEC_WIDTH_SCALING_MODE]&&mHeightScalingMode==specs[offset+CanvasGeometry.SPEC_HEIGHT_SCALING_MODE];
+        }
+
+        /**
+         * @return The child of the runtime design applied to this child, or null if none was applied.
+         */
+        RuntimeDesign.Child getRuntimeChild() {
+            return mRuntimeChild;
+        }
+
+        void setRuntimeChild(RuntimeDesign.Child runtimeChild) {
+            mRuntimeChild = runtimeChild;
+        }
+
+        /**
+         * @return The text colors of the view before a runtime design set one, or null if none is set.
+         */
+        ColorStateList getRuntimeTextColors() {
+            return mRuntimeTextColors;
+        }
+
+        void setRuntimeTextColors(ColorStateList runtimeTextColors) {
+            mRuntimeTextColors = runtimeTextColors;
+        }
+
+        public int getWidth(float stretchXS, float virtualXS){
+            return CanvasGeometry.scaleSize(mWidthScalingMode,mDesignWidth,stretchXS,virtualXS);
+        }
+
+        public int getHeight(float stretchYS, float virtualYS){
+            return CanvasGeometry.scaleSize(mHeightScalingMode,mDesignHeight,stretchYS,virtualYS);
         }
 
         public int getX(float stretchXS, float virtualXS, int virtualXPadding){
-            switch (mXScalingMode){
-                case VIRTUAL_DESIGN_MODE:
-                    return (int) (virtualXS*mDesignX+virtualXPadding);
-                case STRETCH_DESIGN_MODE:
-                    return (int) (stretchXS*mDesignX);
-                default:
-                    return (int) (virtualXS*mDesignX+virtualXPadding);
-            }
+            return CanvasGeometry.scalePosition(mXScalingMode,mDesignX,stretchXS,virtualXS,virtualXPadding);
         }
 
         public int getY(float stretchYS, float virtualYS, int virtualYPadding){
-            switch (mYScalingMode){
-                case VIRTUAL_DESIGN_MODE:
-                    return (int) (virtualYS*mDesignY+virtualYPadding);
-                case STRETCH_DESIGN_MODE:
-                    return (int) (stretchYS*mDesignY);
-                default:
-                    return (int) (virtualYS*mDesignY+virtualYPadding);
-            }
+            return CanvasGeometry.scalePosition(mYScalingMode,mDesignY,stretchYS,virtualYS,virtualYPadding);
         }
     }
 }
@@ -0,0 +1,203 @@
+/**
+ * Copyright 2016 YuHao-KitPies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitpies.canvaslayout.widget;
+
+import android.view.View.MeasureSpec;
+
+/**
+ * <h1>Description:</h1>
+ * The measure and layout statistics of one canvas layout, see {@link CanvasLayout#setMetricsEnabled(boolean)}.<br/>
+ * It counts the passes, the children measured again in them, the children the measure cache skipped, how long<br/>
+ * they took, the hits of the shared layout plan, and which MeasureSpec modes were resolved. A measure pass<br/>
+ * which measured no child with the same specs as the pass before is counted as redundant, e.g. an ancestor<br/>
+ * measured twice.<br/>
+ * The counters are only changed on the UI thread.
+ */
+public final class CanvasLayoutMetrics {
+
+    /**
+     * Called after every measure and layout pass of the canvas layout, on the UI thread.
+     */
+    public interface Listener {
+
+        void onMeasurePass(CanvasLayout canvas, CanvasLayoutMetrics metrics);
+
+        void onLayoutPass(CanvasLayout canvas, CanvasLayoutMetrics metrics);
+    }
+
+    private int mMeasureCount;
+    private int mRedundantMeasureCount;
+    private int mLayoutCount;
+    private int mLastRemeasuredChildCount;
+    private long mRemeasuredChildCount;
+    private int mLastCachedChildCount;
+    private long mCachedChildCount;
+    private long mLastMeasureNanos, mMeasureNanos;
+    private long mLastLayoutNanos, mLayoutNanos;
+    private int mSharedPlanHitCount, mSharedPlanMissCount;
+    private int mLastWidthMode, mLastHeightMode;
+    //The number of measure passes of every width and height mode pair.
+    private final int[] mModeCounts = new int[9];
+
+    CanvasLayoutMetrics() {
+    }
+
+    void onMeasured(int widthMeasureSpec, int heightMeasureSpec, boolean specsChanged, int remeasuredChildCount,
+                    int cachedChildCount, long nanos){
+        mMeasureCount++;
+        if(!specsChanged&&remeasuredChildCount==0){
+            mRedundantMeasureCount++;
+        }
+        mLastRemeasuredChildCount = remeasuredChildCount;
+        mRemeasuredChildCount += remeasuredChildCount;
+        mLastCachedChildCount = cachedChildCount;
+        mCachedChildCount += cachedChildCount;
+        mLastMeasureNanos = nanos;
+        mMeasureNanos += nanos;
+        mLastWidthMode = MeasureSpec.getMode(widthMeasureSpec);
+        mLastHeightMode = MeasureSpec.getMode(heightMeasureSpec);
+        mModeCounts[modeIndex(mLastWidthMode)*3+modeIndex(mLastHeightMode)]++;
+    }
+
+    void onSharedPlan(boolean hit){
+        if(hit){
+            mSharedPlanHitCount++;
+        }else {
+            mSharedPlanMissCount++;
+        }
+    }
+
+    void onLaidOut(long nanos){
+        mLayoutCount++;
+        mLastLayoutNanos = nanos;
+        mLayoutNanos += nanos;
+    }
+
+    private static int modeIndex(int mode){
+        return mode==MeasureSpec.EXACTLY?1:mode==MeasureSpec.AT_MOST?2:0;
+    }
+
+    public int getMeasureCount() {
+        return mMeasureCount;
+    }
+
+    /**
+     * @return The number of measure passes with the same specs as the pass before, which measured no child.
+     */
+    public int getRedundantMeasureCount() {
+        return mRedundantMeasureCount;
+    }
+
+    public int getLayoutCount() {
+        return mLayoutCount;
+    }
+
+    /**
+     * @return The number of children measured in the last measure pass, the others were skipped by the measure cache.
+     */
+    public int getLastRemeasuredChildCount() {
+        return mLastRemeasuredChildCount;
+    }
+
+    public long getRemeasuredChildCount() {
+        return mRemeasuredChildCount;
+    }
+
+    /**
+     * @return The number of children the measure cache skipped in the last measure pass, their rect and design<br/>
+     * didn't change since they were measured.
+     */
+    public int getLastCachedChildCount() {
+        return mLastCachedChildCount;
+    }
+
+    /**
+     * @return The number of hits of the measure cache, the children it skipped in every measure pass.
+     */
+    public long getCachedChildCount() {
+        return mCachedChildCount;
+    }
+
+    public long getLastMeasureNanos() {
+        return mLastMeasureNanos;
+    }
+
+    public long getMeasureNanos() {
+        return mMeasureNanos;
+    }
+
+    public long getLastLayoutNanos() {
+        return mLastLayoutNanos;
+    }
+
+    public long getLayoutNanos() {
+        return mLayoutNanos;
+    }
+
+    public int getSharedPlanHitCount() {
+        return mSharedPlanHitCount;
+    }
+
+    public int getSharedPlanMissCount() {
+        return mSharedPlanMissCount;
+    }
+
+    /**
+     * @return The width MeasureSpec mode of the last measure pass.
+     */
+    public int getLastWidthMode() {
+        return mLastWidthMode;
+    }
+
+    /**
+     * @return The height MeasureSpec mode of the last measure pass.
+     */
+    public int getLastHeightMode() {
+        return mLastHeightMode;
+    }
+
+    /**
+     * @return The number of measure passes with the MeasureSpec modes, e.g. EXACTLY and AT_MOST.
+     */
+    public int getMeasureCount(int widthMode, int heightMode){
+        return mModeCounts[modeIndex(widthMode)*3+modeIndex(heightMode)];
+    }
+
+    public void reset(){
+        mMeasureCount = 0;
+        mRedundantMeasureCount = 0;
+        mLayoutCount = 0;
+        mLastRemeasuredChildCount = 0;
+        mRemeasuredChildCount = 0;
+        mLastCachedChildCount = 0;
+        mCachedChildCount = 0;
+        mLastMeasureNanos = mMeasureNanos = 0;
+        mLastLayoutNanos = mLayoutNanos = 0;
+        mSharedPlanHitCount = mSharedPlanMissCount = 0;
+        mLastWidthMode = mLastHeightMode = 0;
+        for(int i=0;i<mModeCounts.length;i++){
+            mModeCounts[i] = 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CanvasLayoutMetrics{measures="+mMeasureCount+", redundantMeasures="+mRedundantMeasureCount
+                +", layouts="+mLayoutCount+", remeasuredChildren="+mRemeasuredChildCount+", cachedChildren="+mCachedChildCount
+                +", measureNanos="+mMeasureNanos+", layoutNanos="+mLayoutNanos
+                +", sharedPlanHits="+mSharedPlanHitCount+", sharedPlanMisses="+mSharedPlanMissCount+"}";
+    }
+}
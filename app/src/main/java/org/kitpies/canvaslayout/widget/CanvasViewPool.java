@@ -0,0 +1,212 @@
+/**
+ * Copyright 2016 YuHao-KitPies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitpies.canvaslayout.widget;
+
+import android.content.Context;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+import android.util.SparseArray;
+import android.view.LayoutInflater;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * <h1>Description:</h1>
+ * A pool of layouts with canvas layouts inflated on a background thread, so an adapter doesn't inflate<br/>
+ * its new rows on the UI thread. The canvas layouts parse their children's layout params while they are<br/>
+ * inflated, from the compiled design if there is one. The pool keeps a configured number of views of<br/>
+ * every layout, it inflates a new one in the background whenever one is taken.<br/>
+ * If a layout can't be inflated off the UI thread, the pool stops inflating it and every take is a miss.
+ * <h1>How to use:</h1>
+ * <code>
+ *      mPool = new CanvasViewPool(activity);<br/>
+ *      mPool.prefill(R.layout.item_view,6);<br/>
+ *      //In getView(), without a convertView.<br/>
+ *      View view = mPool.obtain(R.layout.item_view);<br/>
+ *      if(view==null) view = View.inflate(context,R.layout.item_view,null);<br/>
+ *      //In the activity's onDestroy(), the pooled views hold the activity.<br/>
+ *      mPool.clear();<br/>
+ * </code>
+ */
+public class CanvasViewPool {
+
+    private static final String TAG = "CanvasViewPool";
+
+    private static ExecutorService sExecutor;
+
+    private final Context mContext;
+    private LayoutInflater mInflater;
+    private final SparseArray<Entry> mEntries = new SparseArray<Entry>();
+    private int mHitCount;
+    private int mMissCount;
+
+    private static final class Entry {
+        private final ArrayList<View> mViews = new ArrayList<View>();
+        private int mSize;
+        private int mPending;
+        private boolean mFailed;
+    }
+
+    /**
+     * @param context The context of the views, e.g. the activity for its theme.
+     */
+    public CanvasViewPool(Context context) {
+        mContext = context;
+    }
+
+    private static synchronized ExecutorService getExecutor(){
+        if(sExecutor==null){
+            sExecutor = BackgroundExecutors.single("CanvasViewPool");
+        }
+        return sExecutor;
+    }
+
+    /**
+     * Keep the number of views of the layout in the pool, they are inflated on a background thread from now on.
+     */
+    public void prefill(int layoutId, int size){
+        synchronized (this){
+            Entry entry = mEntries.get(layoutId);
+            if(entry==null){
+                entry = new Entry();
+                mEntries.put(layoutId,entry);
+            }
+            entry.mSize = size;
+        }
+        refill(layoutId);
+    }
+
+    /**
+     * Like {@link #prefill(int, int)}, but the inflation starts when the UI thread's message queue is idle,<br/>
+     * e.g. after the first frame. It must be called on the UI thread.
+     */
+    public void prefillWhenIdle(final int layoutId, final int size){
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                prefill(layoutId,size);
+                return false;
+            }
+        });
+    }
+
+    /**
+     * @return A view of the layout without a parent, or null if the pool has none now.
+     */
+    public View obtain(int layoutId){
+        View view = null;
+        synchronized (this){
+            Entry entry = mEntries.get(layoutId);
+            if(entry!=null&&!entry.mViews.isEmpty()){
+                view = entry.mViews.remove(entry.mViews.size()-1);
+            }
+            if(view!=null){
+                mHitCount++;
+            }else {
+                mMissCount++;
+            }
+        }
+        refill(layoutId);
+        return view;
+    }
+
+    /**
+     * Inflate the views the layout is short of on the background thread.
+     */
+    private void refill(final int layoutId){
+        int count;
+        final Entry entry;
+        synchronized (this){
+            entry = mEntries.get(layoutId);
+            if(entry==null||entry.mFailed)return;
+            count = entry.mSize-entry.mViews.size()-entry.mPending;
+            if(count<=0)return;
+            entry.mPending += count;
+        }
+        for(int i=0;i<count;i++){
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    inflate(layoutId,entry);
+                }
+            });
+        }
+    }
+
+    private void inflate(int layoutId, Entry entry){
+        LayoutInflater inflater;
+        synchronized (this){
+            //The entry is dropped if the pool was cleared.
+            if(mEntries.get(layoutId)!=entry||entry.mFailed){
+                return;
+            }
+            if(mInflater==null){
+                //A LayoutInflater isn't thread safe, the background thread has its own.
+                mInflater = LayoutInflater.from(mContext).cloneInContext(mContext);
+            }
+            inflater = mInflater;
+        }
+        View view = null;
+        try {
+            view = inflater.inflate(layoutId,null,false);
+        }catch (RuntimeException e){
+            Log.w(TAG,"Can't inflate the layout "+layoutId+" off the UI thread",e);
+        }
+        synchronized (this){
+            if(mEntries.get(layoutId)!=entry){
+                return;
+            }
+            entry.mPending--;
+            if(view==null){
+                entry.mFailed = true;
+            }else if(entry.mViews.size()<entry.mSize){
+                entry.mViews.add(view);
+            }
+        }
+    }
+
+    /**
+     * Drop the pooled views, e.g. when the activity is destroyed. The pending inflations are dropped too.
+     */
+    public synchronized void clear(){
+        mEntries.clear();
+    }
+
+    /**
+     * @return The number of views of the layout in the pool now.
+     */
+    public synchronized int getPooledCount(int layoutId){
+        Entry entry = mEntries.get(layoutId);
+        return entry!=null?entry.mViews.size():0;
+    }
+
+    /**
+     * @return The number of {@link #obtain(int)} calls which got a pooled view.
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return The number of {@link #obtain(int)} calls which got null, the caller inflated on the UI thread.
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+}
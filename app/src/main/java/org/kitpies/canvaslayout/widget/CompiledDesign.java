@@ -0,0 +1,153 @@
+/**
+ * Copyright 2016 YuHao-KitPies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitpies.canvaslayout.widget;
+
+import android.content.Context;
+
+import org.kitpies.canvaslayout.geometry.CanvasGeometry;
+
+import java.util.HashMap;
+
+/**
+ * <h1>Description:</h1>
+ * A canvas design compiled from a layout xml at build time.<br/>
+ * The children specs are kept in primitive arrays, so the canvas layout doesn't need to resolve<br/>
+ * the children's attributes when the design is inflated.<br/>
+ * <h1>How to use:</h1>
+ * Give the canvas layout a name in the xml, app:design_name="item". The compileCanvasDesigns task<br/>
+ * generates a CanvasDesigns class, call CanvasDesigns.install() before the layout is inflated.<br/>
+ * After that the inflated canvas layout takes its children specs from the compiled design. If the<br/>
+ * compiler knows how to build every child, {@link #create(Context)} builds the canvas without xml at all.<br/>
+ */
+public class CompiledDesign {
+
+    private static final HashMap<String,CompiledDesign> sDesigns = new HashMap<String,CompiledDesign>();
+
+    private final String mName;
+    private final int mDesignWidth;
+    private final int mDesignHeight;
+    private final boolean mLayoutPlanShared;
+    private final int[] mSpecs;
+    private final float[] mZDepths;
+    private final boolean[] mAttributed;
+
+    /**
+     * @param specs The flat spec array of the children, see {@link CanvasGeometry}.
+     * @param zDepths The layout_zDepth of the children.
+     */
+    public CompiledDesign(String name, int designWidth, int designHeight, boolean layoutPlanShared, int[] specs, float[] zDepths) {
+        this(name,designWidth,designHeight,layoutPlanShared,specs,zDepths,null);
+    }
+
+    /**
+     * @param attributed Whether a child has attributes which aren't compiled, e.g. layout_opaque. Its layout<br/>
+     *                   params are resolved from the xml. Null if there isn't such a child.
+     */
+    public CompiledDesign(String name, int designWidth, int designHeight, boolean layoutPlanShared, int[] specs, float[] zDepths, boolean[] attributed) {
+        if(specs.length!=zDepths.length*CanvasGeometry.SPEC_STRIDE){
+            throw new IllegalArgumentException("The specs don't match the zDepths of design "+name);
+        }
+        mName = name;
+        mDesignWidth = designWidth;
+        mDesignHeight = designHeight;
+        mLayoutPlanShared = layoutPlanShared;
+        mSpecs = specs;
+        mZDepths = zDepths;
+        mAttributed = attributed;
+    }
+
+    public static synchronized void register(CompiledDesign design){
+        sDesigns.put(design.getName(),design);
+    }
+
+    /**
+     * @return The compiled design of the name, or null if it isn't registered.
+     */
+    public static synchronized CompiledDesign find(String name){
+        return sDesigns.get(name);
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getDesignWidth() {
+        return mDesignWidth;
+    }
+
+    public int getDesignHeight() {
+        return mDesignHeight;
+    }
+
+    public int getChildCount(){
+        return mZDepths.length;
+    }
+
+    /**
+     * @return Whether the layout params of the child at the index have to be resolved from the xml.
+     */
+    public boolean needsAttributes(int index){
+        return mAttributed!=null&&mAttributed[index];
+    }
+
+    /**
+     * @return The layout params of the child at the index.
+     */
+    public CanvasLayout.LayoutParams newLayoutParams(int index){
+        return newLayoutParams(mSpecs,mZDepths,index);
+    }
+
+    public boolean isLayoutPlanShared() {
+        return mLayoutPlanShared;
+    }
+
+    /**
+     * Compute the children rects of this design for the measure specs on a background thread, so the<br/>
+     * canvas layouts of this design only look them up when they are measured with the same specs.<br/>
+     * It does nothing if the design doesn't share its layout plan, or its size isn't known until it's inflated.
+     */
+    public void prefetchLayoutPlan(int widthMeasureSpec, int heightMeasureSpec){
+        if(!mLayoutPlanShared||mDesignWidth<=0||mDesignHeight<=0)return;
+        //The specs are never changed, so they don't need to be copied.
+        LayoutPlanPrefetcher.prefetch(mDesignWidth,mDesignHeight,widthMeasureSpec,heightMeasureSpec,mSpecs,getChildCount());
+    }
+
+    /**
+     * Build the canvas layout and its children without inflating the xml.
+     * @return The canvas layout, or null if the compiler can't build every child of the design.
+     */
+    public CanvasLayout create(Context context){
+        return null;
+    }
+
+    /**
+     * @return A canvas layout of this design without children.
+     */
+    protected CanvasLayout newCanvas(Context context){
+        return newCanvas(context,mDesignWidth,mDesignHeight,mLayoutPlanShared);
+    }
+
+    protected static CanvasLayout newCanvas(Context context, int designWidth, int designHeight, boolean layoutPlanShared){
+        CanvasLayout canvas = new CanvasLayout(context);
+        canvas.setDesignSize(designWidth,designHeight);
+        canvas.setLayoutPlanShared(layoutPlanShared);
+        return canvas;
+    }
+
+    protected static CanvasLayout.LayoutParams newLayoutParams(int[] specs, float[] zDepths, int index){
+        return new CanvasLayout.LayoutParams(specs,index*CanvasGeometry.SPEC_STRIDE,zDepths[index]);
+    }
+}
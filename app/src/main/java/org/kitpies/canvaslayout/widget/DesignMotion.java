@@ -0,0 +1,69 @@
+/**
+ * Copyright 2016 YuHao-KitPies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitpies.canvaslayout.widget;
+
+import android.view.View;
+
+/**
+ * <h1>Description:</h1>
+ * The design position and layout_zDepth of a canvas layout child, as properties for a property animator.<br/>
+ * The changes go through {@link CanvasLayout#setChildDesignPosition(View, int, int)} and<br/>
+ * {@link CanvasLayout#setChildZDepth(View, float)}, so a frame of the animation costs about as much as<br/>
+ * a translation, not a layout pass.
+ * <h1>How to use:</h1>
+ * <code>
+ *      ObjectAnimator.ofInt(new DesignMotion(canvas,child),"designX",0,100).start();<br/>
+ *      ObjectAnimator.ofFloat(new DesignMotion(canvas,child),"zDepth",0,10).start();<br/>
+ * </code>
+ */
+public class DesignMotion {
+
+    private final CanvasLayout mCanvas;
+    private final View mChild;
+
+    public DesignMotion(CanvasLayout canvas, View child) {
+        mCanvas = canvas;
+        mChild = child;
+    }
+
+    private CanvasLayout.LayoutParams getLayoutParams(){
+        return (CanvasLayout.LayoutParams) mChild.getLayoutParams();
+    }
+
+    public int getDesignX() {
+        return getLayoutParams().getDesignX();
+    }
+
+    public void setDesignX(int designX) {
+        mCanvas.setChildDesignPosition(mChild,designX,getDesignY());
+    }
+
+    public int getDesignY() {
+        return getLayoutParams().getDesignY();
+    }
+
+    public void setDesignY(int designY) {
+        mCanvas.setChildDesignPosition(mChild,getDesignX(),designY);
+    }
+
+    public float getZDepth() {
+        return getLayoutParams().getZDepth();
+    }
+
+    public void setZDepth(float zDepth) {
+        mCanvas.setChildZDepth(mChild,zDepth);
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright 2016 YuHao-KitPies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitpies.canvaslayout.widget;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A streaming reader of the JSON design documents of {@link RuntimeDesign}, the values are read one token<br/>
+ * at a time and the document is never held as a whole. It works like android.util.JsonReader, which isn't<br/>
+ * there before API 11. It's lenient about the commas between values.
+ */
+final class DesignReader {
+
+    private final Reader mReader;
+    private final char[] mBuffer = new char[1024];
+    private int mPosition, mLimit;
+    //The characters read before the buffer, for the error messages.
+    private long mConsumed;
+    private final StringBuilder mToken = new StringBuilder();
+
+    DesignReader(Reader reader) {
+        mReader = reader;
+    }
+
+    /**
+     * @return The next character without consuming it, or -1 at the end of the document.
+     */
+    private int peekChar() throws IOException {
+        if(mPosition==mLimit){
+            mConsumed += mLimit;
+            mPosition = 0;
+            mLimit = Math.max(0,mReader.read(mBuffer,0,mBuffer.length));
+            if(mLimit==0){
+                return -1;
+            }
+        }
+        return mBuffer[mPosition];
+    }
+
+    private int peekNonWhitespace() throws IOException {
+        int c = peekChar();
+        while(c==' '||c=='\n'||c=='\r'||c=='\t'){
+            mPosition++;
+            c = peekChar();
+        }
+        return c;
+    }
+
+    private void expect(char expected) throws IOException {
+        if(peekNonWhitespace()!=expected){
+            throw syntaxError("Expected '"+expected+"'");
+        }
+        mPosition++;
+    }
+
+    private IOException syntaxError(String message){
+        return new IOException(message+" at character "+(mConsumed+mPosition)+" of the design");
+    }
+
+    void beginObject() throws IOException {
+        expect('{');
+    }
+
+    void endObject() throws IOException {
+        expect('}');
+    }
+
+    void beginArray() throws IOException {
+        expect('[');
+    }
+
+    void endArray() throws IOException {
+        expect(']');
+    }
+
+    /**
+     * @return Whether there is another value or name before the end of the current object or array.
+     */
+    boolean hasNext() throws IOException {
+        int c = peekNonWhitespace();
+        if(c==','){
+            mPosition++;
+            c = peekNonWhitespace();
+        }
+        return c!='}'&&c!=']'&&c!=-1;
+    }
+
+    String nextName() throws IOException {
+        String name = nextString();
+        expect(':');
+        return name;
+    }
+
+    String nextString() throws IOException {
+        expect('"');
+        mToken.setLength(0);
+        int c;
+        while((c = peekChar())!='"'){
+            if(c==-1){
+                throw syntaxError("Unterminated string");
+            }
+            mPosition++;
+            if(c=='\\'){
+                c = peekChar();
+                mPosition++;
+                switch (c){
+                    case 'n':c = '\n';break;
+                    case 't':c = '\t';break;
+                    case 'r':c = '\r';break;
+                    case 'b':c = '\b';break;
+                    case 'f':c = '\f';break;
+                    case 'u':
+                        int unicode = 0;
+                        for(int i=0;i<4;i++){
+                            int digit = Character.digit(peekChar(),16);
+                            if(digit<0){
+                                throw syntaxError("Malformed unicode escape");
+                            }
+                            mPosition++;
+                            unicode = (unicode<<4)|digit;
+                        }
+                        c = unicode;
+                        break;
+                    case -1:
+                        throw syntaxError("Unterminated string");
+                    default:
+                        //The quote, the backslash and the slash stand for themselves.
+                        break;
+                }
+            }
+            mToken.append((char) c);
+        }
+        mPosition++;
+        return mToken.toString();
+    }
+
+    /**
+     * Read a number, true, false or null.
+     */
+    private String nextLiteral() throws IOException {
+        peekNonWhitespace();
+        mToken.setLength(0);
+        int c;
+        while((c = peekChar())!=-1&&(Character.isLetterOrDigit(c)||c=='-'||c=='+'||c=='.')){
+            mToken.append((char) c);
+            mPosition++;
+        }
+        if(mToken.length()==0){
+            throw syntaxError("Expected a value");
+        }
+        return mToken.toString();
+    }
+
+    int nextInt() throws IOException {
+        String literal = nextLiteral();
+        try {
+            return Integer.parseInt(literal);
+        }catch (NumberFormatException e){
+            try {
+                return (int) Double.parseDouble(literal);
+            }catch (NumberFormatException e2){
+                throw syntaxError("Expected a number but was "+literal);
+            }
+        }
+    }
+
+    float nextFloat() throws IOException {
+        String literal = nextLiteral();
+        try {
+            return Float.parseFloat(literal);
+        }catch (NumberFormatException e){
+            throw syntaxError("Expected a number but was "+literal);
+        }
+    }
+
+    boolean nextBoolean() throws IOException {
+        String literal = nextLiteral();
+        if("true".equals(literal)){
+            return true;
+        }else if("false".equals(literal)){
+            return false;
+        }
+        throw syntaxError("Expected a boolean but was "+literal);
+    }
+
+    /**
+     * Skip the next value, with everything in it if it's an object or an array.
+     */
+    void skipValue() throws IOException {
+        int c = peekNonWhitespace();
+        if(c=='{'){
+            beginObject();
+            while(hasNext()){
+                nextName();
+                skipValue();
+            }
+            endObject();
+        }else if(c=='['){
+            beginArray();
+            while(hasNext()){
+                skipValue();
+            }
+            endArray();
+        }else if(c=='"'){
+            nextString();
+        }else {
+            nextLiteral();
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ * Copyright 2016 YuHao-KitPies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitpies.canvaslayout.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+import android.widget.ImageView;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Decodes the image sources of ImageView children for their measured size, see layout_image_src.<br/>
+ * An image is decoded with the largest power of two sample size which keeps it at least as large as<br/>
+ * the child, so no scale type loses detail. The bitmaps are kept in a memory cache keyed by the source<br/>
+ * and the sample size, which is shared by every canvas layout, so recycled rows of a list and children<br/>
+ * of close sizes reuse them.<br/>
+ * Only a cached bitmap is returned on the UI thread, the others are decoded on a background thread and set<br/>
+ * on their ImageView when they are ready, so a measure pass never decodes. {@link #load} is only called<br/>
+ * on the UI thread.
+ */
+final class ImageSourceCache {
+
+    private static final String TAG = "CanvasLayout";
+    static final String ASSET_PREFIX = "asset:";
+
+    //The number of sources whose image size is kept.
+    private static final int BOUNDS_CACHE_SIZE = 256;
+
+    private static LruCache<String,Bitmap> sBitmaps;
+    //The image size of the sources, so the sample size of a cached bitmap is known without reading the source.
+    private static LruCache<String,int[]> sBounds;
+    private static ExecutorService sExecutor;
+    private static Handler sHandler;
+
+    //The request every ImageView waits for, and the pending decodes, only used on the UI thread. The waiting views
+    //are only weakly held, a decode delivers to the views which still want it.
+    private static final WeakHashMap<ImageView,Request> sWanted = new WeakHashMap<ImageView,Request>();
+    private static final HashSet<Request> sPending = new HashSet<Request>();
+
+    /**
+     * A source decoded for a size.
+     */
+    private static final class Request {
+
+        private final int mResource;
+        private final String mPath;
+        private final int mWidth;
+        private final int mHeight;
+
+        Request(int resource, String path, int width, int height) {
+            mResource = resource;
+            mPath = path;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        String getSource(){
+            return sourceOf(mResource,mPath);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Request))return false;
+            Request request = (Request) o;
+            return mResource==request.mResource&&mWidth==request.mWidth&&mHeight==request.mHeight
+                    &&(mPath!=null?mPath.equals(request.mPath):request.mPath==null);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((mPath!=null?mPath.hashCode():mResource)*31+mWidth)*31+mHeight;
+        }
+    }
+
+    private ImageSourceCache() {
+    }
+
+    private static synchronized LruCache<String,Bitmap> getBitmaps(){
+        if(sBitmaps==null){
+            //An eighth of the heap, in bytes.
+            int maxSize = (int) Math.min(Integer.MAX_VALUE,Runtime.getRuntime().maxMemory()/8);
+            sBitmaps = new LruCache<String,Bitmap>(maxSize){
+                @Override
+                protected int sizeOf(String key, Bitmap value) {
+                    return value.getRowBytes()*value.getHeight();
+                }
+            };
+        }
+        return sBitmaps;
+    }
+
+    private static synchronized LruCache<String,int[]> getBounds(){
+        if(sBounds==null){
+            sBounds = new LruCache<String,int[]>(BOUNDS_CACHE_SIZE);
+        }
+        return sBounds;
+    }
+
+    private static synchronized ExecutorService getExecutor(){
+        if(sExecutor==null){
+            sExecutor = BackgroundExecutors.single("CanvasImageDecoder");
+            sHandler = new Handler(Looper.getMainLooper());
+        }
+        return sExecutor;
+    }
+
+    static String sourceOf(int resource, String path){
+        return path!=null?path:Integer.toString(resource);
+    }
+
+    /**
+     * @return The key of the source decoded with the sample size.
+     */
+    static String keyOf(String source, int sampleSize){
+        return source+'@'+sampleSize;
+    }
+
+    /**
+     * Find the bitmap of the source for the size. If it isn't cached it's decoded on a background thread, and<br/>
+     * set on the view when it's ready, unless another source or size was loaded for the view since.
+     * @param resource The drawable resource, used if path is null.
+     * @param path The file path, or the asset path after {@link #ASSET_PREFIX}.
+     * @return The cached bitmap, or null if it's being decoded.
+     */
+    static Bitmap load(Context context, ImageView view, int resource, String path, int width, int height){
+        Request request = new Request(resource,path,width,height);
+        String source = request.getSource();
+        int[] bounds = getBounds().get(source);
+        if(bounds!=null){
+            Bitmap bitmap = getBitmaps().get(keyOf(source,computeSampleSize(bounds[0],bounds[1],width,height)));
+            if(bitmap!=null){
+                sWanted.remove(view);
+                return bitmap;
+            }
+        }
+        sWanted.put(view,request);
+        if(!sPending.add(request)){
+            return null;
+        }
+        decodeInBackground(context.getApplicationContext(),request);
+        return null;
+    }
+
+    /**
+     * Don't set the pending bitmap on the view, e.g. its source was removed.
+     */
+    static void cancel(ImageView view){
+        sWanted.remove(view);
+    }
+
+    private static void decodeInBackground(final Context context, final Request request){
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = decode(context,request);
+                sHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliver(request,bitmap);
+                    }
+                });
+            }
+        });
+    }
+
+    private static void deliver(Request request, Bitmap bitmap){
+        if(!sPending.remove(request))return;
+        ArrayList<ImageView> views = new ArrayList<ImageView>();
+        for(Map.Entry<ImageView,Request> entry:sWanted.entrySet()){
+            if(request.equals(entry.getValue())){
+                views.add(entry.getKey());
+            }
+        }
+        for(ImageView view:views){
+            sWanted.remove(view);
+            if(bitmap!=null){
+                view.setImageBitmap(bitmap);
+            }
+        }
+    }
+
+    /**
+     * Decode the source on the background thread, or take it from the cache if it was decoded with the same sample size.
+     */
+    private static Bitmap decode(Context context, Request request){
+        String source = request.getSource();
+        LruCache<String,int[]> boundsCache = getBounds();
+        int[] bounds = boundsCache.get(source);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        //The pixels are sampled for the child, the density of the resource doesn't matter.
+        options.inScaled = false;
+        if(bounds==null){
+            options.inJustDecodeBounds = true;
+            decode(context,request.mResource,request.mPath,options);
+            if(options.outWidth<=0||options.outHeight<=0){
+                Log.w(TAG,"Can't decode the image "+source);
+                return null;
+            }
+            bounds = new int[]{options.outWidth,options.outHeight};
+            boundsCache.put(source,bounds);
+        }
+        options.inSampleSize = computeSampleSize(bounds[0],bounds[1],request.mWidth,request.mHeight);
+        String key = keyOf(source,options.inSampleSize);
+        LruCache<String,Bitmap> bitmaps = getBitmaps();
+        Bitmap bitmap = bitmaps.get(key);
+        if(bitmap!=null){
+            return bitmap;
+        }
+        options.inJustDecodeBounds = false;
+        bitmap = decode(context,request.mResource,request.mPath,options);
+        if(bitmap!=null){
+            bitmaps.put(key,bitmap);
+        }
+        return bitmap;
+    }
+    /**
+     * @return The largest power of two which keeps the image at least as large as the target size.
+     */
+    static int computeSampleSize(int width, int height, int targetWidth, int targetHeight){
+        int sampleSize = 1;
+        if(targetWidth<=0||targetHeight<=0){
+            return sampleSize;
+        }
+        while(width/(sampleSize*2)>=targetWidth&&height/(sampleSize*2)>=targetHeight){
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static Bitmap decode(Context context, int resource, String path, BitmapFactory.Options options){
+        if(path==null){
+            return BitmapFactory.decodeResource(context.getResources(),resource,options);
+        }
+        if(!path.startsWith(ASSET_PREFIX)){
+            return BitmapFactory.decodeFile(path,options);
+        }
+        InputStream in = null;
+        try {
+            in = context.getAssets().open(path.substring(ASSET_PREFIX.length()));
+            return BitmapFactory.decodeStream(in,null,options);
+        } catch (IOException e) {
+            Log.w(TAG,"Can't open the asset "+path,e);
+            return null;
+        } finally {
+            if(in!=null){
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2016 YuHao-KitPies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitpies.canvaslayout.widget;
+
+import org.kitpies.canvaslayout.geometry.LayoutPlanCache;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Computes layout plans into {@link LayoutPlanCache#getDefault()} on a background thread, see<br/>
+ * {@link CanvasLayout#prefetchLayoutPlan(int, int)} and {@link CompiledDesign#prefetchLayoutPlan(int, int)}.
+ */
+final class LayoutPlanPrefetcher {
+
+    private static ExecutorService sExecutor;
+
+    private LayoutPlanPrefetcher() {
+    }
+
+    private static synchronized ExecutorService getExecutor(){
+        if(sExecutor==null){
+            sExecutor = BackgroundExecutors.single("CanvasLayoutPlanPrefetcher");
+        }
+        return sExecutor;
+    }
+
+    /**
+     * @param specs The flat spec array of the children, it's owned by the prefetcher from now on.
+     */
+    static void prefetch(final int designWidth, final int designHeight, final int widthMeasureSpec, final int heightMeasureSpec,
+                         final int[] specs, final int count){
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                LayoutPlanCache.getDefault().precompute(designWidth,designHeight,widthMeasureSpec,heightMeasureSpec,specs,count);
+            }
+        });
+    }
+}
@@ -0,0 +1,407 @@
+/**
+ * Copyright 2016 YuHao-KitPies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitpies.canvaslayout.widget;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.text.TextUtils;
+import android.view.View;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import org.kitpies.canvaslayout.geometry.CanvasGeometry;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * <h1>Description:</h1>
+ * A canvas design read at runtime from a JSON document, e.g. one pushed by a server.<br/>
+ * The document is read in one streaming pass, the children specs are kept in a flat array like<br/>
+ * {@link CompiledDesign}'s. Every child has a stable id, so a new version of the design is applied to<br/>
+ * a live canvas layout as a diff: only the children whose spec, layout_zDepth or content changed are<br/>
+ * updated, in one layout pass. The other views are kept with their measured state.
+ * <h1>How to use:</h1>
+ * <code>
+ *      {<br/>
+ *          "design_width":1080, "design_height":600, "share_layout_plan":false,<br/>
+ *          "children":[<br/>
+ *              {"id":"title", "type":"text", "x":40, "y":40, "width":1000, "height":120,<br/>
+ *               "width_mode":"stretch", "z":1, "text":"Hello", "text_size":48, "fit_text":true},<br/>
+ *              {"id":"cover", "type":"image", "x":0, "y":200, "width":1080, "height":400, "image":"asset:cover.jpg"}<br/>
+ *          ]<br/>
+ *      }<br/>
+ *      RuntimeDesign.read(reader).apply(canvas);<br/>
+ * </code>
+ * The types are "view", "text" and "image", a {@link ViewFactory} creates the views of other types.<br/>
+ * The modes are "virtual" or "stretch", see {@link CanvasLayout.LayoutParams#VIRTUAL_DESIGN_MODE}.<br/>
+ * The children without an id in a design, e.g. the ones added by hand, are left alone by {@link #apply(CanvasLayout)}.
+ */
+public class RuntimeDesign {
+
+    /**
+     * Creates the views of the child types the runtime design doesn't know.
+     */
+    public interface ViewFactory {
+        /**
+         * @return The view of the type, or null to create one of the built-in types.
+         */
+        View createView(Context context, String type);
+    }
+
+    public static final String TYPE_VIEW = "view";
+    public static final String TYPE_TEXT = "text";
+    public static final String TYPE_IMAGE = "image";
+
+    private String mName;
+    private int mDesignWidth;
+    private int mDesignHeight;
+    private boolean mLayoutPlanShared;
+    private int[] mSpecs = new int[8*CanvasGeometry.SPEC_STRIDE];
+    private final ArrayList<Child> mChildren = new ArrayList<Child>();
+    private final HashMap<String,Child> mChildrenById = new HashMap<String,Child>();
+
+    /**
+     * The content of a child besides its spec. It's also kept by the layout params of the view it was<br/>
+     * applied to, so the next version only touches what changed.
+     */
+    static final class Child {
+
+        private String mId;
+        private final int mIndex;
+        private String mType = TYPE_VIEW;
+        private float mZDepth;
+        private boolean mOpaque;
+        private boolean mStatic;
+        private boolean mHasBackground;
+        private int mBackground;
+        private String mText;
+        private boolean mHasTextColor;
+        private int mTextColor;
+        private float mTextSize;
+        private boolean mFitText;
+        private String mImage;
+
+        Child(int index) {
+            mIndex = index;
+        }
+
+        String getId() {
+            return mId;
+        }
+    }
+
+    private RuntimeDesign() {
+    }
+
+    /**
+     * Read a design document. The reader isn't closed.
+     * @throws IOException If the document is malformed, or two children have the same id.
+     */
+    public static RuntimeDesign read(Reader in) throws IOException {
+        DesignReader reader = new DesignReader(in);
+        RuntimeDesign design = new RuntimeDesign();
+        reader.beginObject();
+        while(reader.hasNext()){
+            String name = reader.nextName();
+            if("name".equals(name)){
+                design.mName = reader.nextString();
+            }else if("design_width".equals(name)){
+                design.mDesignWidth = reader.nextInt();
+            }else if("design_height".equals(name)){
+                design.mDesignHeight = reader.nextInt();
+            }else if("share_layout_plan".equals(name)){
+                design.mLayoutPlanShared = reader.nextBoolean();
+            }else if("children".equals(name)){
+                reader.beginArray();
+                while(reader.hasNext()){
+                    design.readChild(reader);
+                }
+                reader.endArray();
+            }else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return design;
+    }
+
+    private void readChild(DesignReader reader) throws IOException {
+        int index = mChildren.size();
+        if(mSpecs.length<(index+1)*CanvasGeometry.SPEC_STRIDE){
+            mSpecs = Arrays.copyOf(mSpecs,mSpecs.length*2);
+        }
+        int offset = index*CanvasGeometry.SPEC_STRIDE;
+        Child child = new Child(index);
+        reader.beginObject();
+        while(reader.hasNext()){
+            String name = reader.nextName();
+            if("id".equals(name)){
+                child.mId = reader.nextString();
+            }else if("type".equals(name)){
+                child.mType = reader.nextString();
+            }else if("x".equals(name)){
+                mSpecs[offset+CanvasGeometry.SPEC_DESIGN_X] = reader.nextInt();
+            }else if("y".equals(name)){
+                mSpecs[offset+CanvasGeometry.SPEC_DESIGN_Y] = reader.nextInt();
+            }else if("width".equals(name)){
+                mSpecs[offset+CanvasGeometry.SPEC_DESIGN_WIDTH] = reader.nextInt();
+            }else if("height".equals(name)){
+                mSpecs[offset+CanvasGeometry.SPEC_DESIGN_HEIGHT] = reader.nextInt();
+            }else if("x_mode".equals(name)){
+                mSpecs[offset+CanvasGeometry.SPEC_X_SCALING_MODE] = readMode(reader);
+            }else if("y_mode".equals(name)){
+                mSpecs[offset+CanvasGeometry.SPEC_Y_SCALING_MODE] = readMode(reader);
+            }else if("width_mode".equals(name)){
+                mSpecs[offset+CanvasGeometry.SPEC_WIDTH_SCALING_MODE] = readMode(reader);
+            }else if("height_mode".equals(name)){
+                mSpecs[offset+CanvasGeometry.SPEC_HEIGHT_SCALING_MODE] = readMode(reader);
+            }else if("z".equals(name)){
+                child.mZDepth = reader.nextFloat();
+            }else if("opaque".equals(name)){
+                child.mOpaque = reader.nextBoolean();
+            }else if("static".equals(name)){
+                child.mStatic = reader.nextBoolean();
+            }else if("background".equals(name)){
+                child.mHasBackground = true;
+                child.mBackground = readColor(reader);
+            }else if("text".equals(name)){
+                child.mText = reader.nextString();
+            }else if("text_color".equals(name)){
+                child.mHasTextColor = true;
+                child.mTextColor = readColor(reader);
+            }else if("text_size".equals(name)){
+                child.mTextSize = reader.nextFloat();
+            }else if("fit_text".equals(name)){
+                child.mFitText = reader.nextBoolean();
+            }else if("image".equals(name)){
+                child.mImage = reader.nextString();
+            }else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if(child.mId==null){
+            throw new IOException("The child "+index+" of design "+mName+" doesn't have an id");
+        }
+        if(mChildrenById.containsKey(child.mId)){
+            throw new IOException("Two children of design "+mName+" have the id "+child.mId);
+        }
+        mChildren.add(child);
+        mChildrenById.put(child.mId,child);
+    }
+
+    private static int readMode(DesignReader reader) throws IOException {
+        String mode = reader.nextString();
+        if("virtual".equals(mode)){
+            return CanvasLayout.LayoutParams.VIRTUAL_DESIGN_MODE;
+        }else if("stretch".equals(mode)){
+            return CanvasLayout.LayoutParams.STRETCH_DESIGN_MODE;
+        }
+        throw new IOException("Unknown scaling mode "+mode);
+    }
+
+    private static int readColor(DesignReader reader) throws IOException {
+        String color = reader.nextString();
+        try {
+            return Color.parseColor(color);
+        }catch (IllegalArgumentException e){
+            throw new IOException("Unknown color "+color);
+        }
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getDesignWidth() {
+        return mDesignWidth;
+    }
+
+    public int getDesignHeight() {
+        return mDesignHeight;
+    }
+
+    public int getChildCount(){
+        return mChildren.size();
+    }
+
+    /**
+     * Build a canvas layout of this design.
+     */
+    public CanvasLayout create(Context context){
+        return create(context,null);
+    }
+
+    public CanvasLayout create(Context context, ViewFactory factory){
+        CanvasLayout canvas = new CanvasLayout(context);
+        apply(canvas,factory);
+        return canvas;
+    }
+
+    public void apply(CanvasLayout canvas){
+        apply(canvas,null);
+    }
+
+    /**
+     * Make the canvas layout show this design. The children of the ids which aren't in this design are<br/>
+     * removed, the new ones are created, and the others keep their views. Their spec and layout_zDepth<br/>
+     * change in one transaction, see {@link CanvasLayout#beginTransaction()}, and their content only if it<br/>
+     * changed since the design applied before. The views follow the order of the design, which is their<br/>
+     * drawing order among the same layout_zDepth.
+     */
+    public void apply(CanvasLayout canvas, ViewFactory factory){
+        HashMap<String,View> live = new HashMap<String,View>();
+        CanvasLayout.LayoutParams lP;
+        for(int i=canvas.getChildCount()-1;i>=0;i--){
+            View view = canvas.getChildAt(i);
+            lP = getRuntimeLayoutParams(view);
+            if(lP==null)continue;
+            Child child = mChildrenById.get(lP.getRuntimeChild().getId());
+            if(child==null||!child.mType.equals(lP.getRuntimeChild().mType)){
+                canvas.removeViewAt(i);
+            }else {
+                live.put(child.getId(),view);
+            }
+        }
+        canvas.setLayoutPlanShared(mLayoutPlanShared);
+        CanvasLayout.Transaction transaction = canvas.beginTransaction();
+        if(canvas.getDesignWidth()!=mDesignWidth||canvas.getDesignHeight()!=mDesignHeight){
+            transaction.setCanvasDesignSize(mDesignWidth,mDesignHeight);
+        }
+        View previous = null;
+        for(Child child:mChildren){
+            int offset = child.mIndex*CanvasGeometry.SPEC_STRIDE;
+            View view = live.get(child.getId());
+            if(view==null){
+                view = newView(canvas.getContext(),child,factory);
+                lP = new CanvasLayout.LayoutParams(mSpecs,offset,child.mZDepth);
+                applyContent(view,lP,child,null);
+                //The new views keep the order of the design among the views kept.
+                canvas.addView(view,previous==null?0:canvas.indexOfChild(previous)+1,lP);
+            }else {
+                lP = (CanvasLayout.LayoutParams) view.getLayoutParams();
+                if(previous!=null){
+                    int previousIndex = canvas.indexOfChild(previous);
+                    if(canvas.indexOfChild(view)<previousIndex){
+                        //Right after the previous one, which moves back by one when the view is taken out before it.
+                        canvas.moveChild(view,previousIndex);
+                    }
+                }
+                if(!lP.hasSpec(mSpecs,offset)){
+                    transaction.setDesignPosition(view,mSpecs[offset+CanvasGeometry.SPEC_DESIGN_X],mSpecs[offset+CanvasGeometry.SPEC_DESIGN_Y])
+                            .setDesignSize(view,mSpecs[offset+CanvasGeometry.SPEC_DESIGN_WIDTH],mSpecs[offset+CanvasGeometry.SPEC_DESIGN_HEIGHT])
+                            .setScalingModes(view,mSpecs[offset+CanvasGeometry.SPEC_WIDTH_SCALING_MODE],mSpecs[offset+CanvasGeometry.SPEC_HEIGHT_SCALING_MODE],
+                                    mSpecs[offset+CanvasGeometry.SPEC_X_SCALING_MODE],mSpecs[offset+CanvasGeometry.SPEC_Y_SCALING_MODE]);
+                }
+                if(lP.getZDepth()!=child.mZDepth){
+                    transaction.setZDepth(view,child.mZDepth);
+                }
+                if(applyContent(view,lP,child,lP.getRuntimeChild())){
+                    view.requestLayout();
+                }
+            }
+            previous = view;
+        }
+        transaction.commit();
+    }
+
+    /**
+     * @return The view of the child id applied by a runtime design, or null if there isn't one.
+     */
+    public static View findChildView(CanvasLayout canvas, String id){
+        for(int i=0;i<canvas.getChildCount();i++){
+            View view = canvas.getChildAt(i);
+            CanvasLayout.LayoutParams lP = getRuntimeLayoutParams(view);
+            if(lP!=null&&lP.getRuntimeChild().getId().equals(id)){
+                return view;
+            }
+        }
+        return null;
+    }
+
+    private static CanvasLayout.LayoutParams getRuntimeLayoutParams(View view){
+        Object obj = view.getLayoutParams();
+        if(obj instanceof CanvasLayout.LayoutParams&&((CanvasLayout.LayoutParams) obj).getRuntimeChild()!=null){
+            return (CanvasLayout.LayoutParams) obj;
+        }
+        return null;
+    }
+
+    private static View newView(Context context, Child child, ViewFactory factory){
+        if(factory!=null){
+            View view = factory.createView(context,child.mType);
+            if(view!=null){
+                return view;
+            }
+        }
+        if(TYPE_VIEW.equals(child.mType)){
+            return new View(context);
+        }else if(TYPE_TEXT.equals(child.mType)){
+            return new TextView(context);
+        }else if(TYPE_IMAGE.equals(child.mType)){
+            return new ImageView(context);
+        }
+        throw new IllegalArgumentException("Unknown type "+child.mType+" of child "+child.getId());
+    }
+
+    /**
+     * Apply the content of the child which changed since the old one was applied.
+     * @param old The child applied to the view before, null for a new view.
+     * @return Whether the child has to be measured again.
+     */
+    private static boolean applyContent(View view, CanvasLayout.LayoutParams lP, Child child, Child old){
+        boolean changed = false;
+        lP.setRuntimeChild(child);
+        if(lP.isOpaque()!=child.mOpaque){
+            lP.setOpaque(child.mOpaque);
+        }
+        if(lP.isStatic()!=child.mStatic){
+            lP.setStatic(child.mStatic);
+        }
+        if(old==null?child.mHasBackground:(old.mHasBackground!=child.mHasBackground||old.mBackground!=child.mBackground)){
+            view.setBackgroundColor(child.mHasBackground?child.mBackground:Color.TRANSPARENT);
+        }
+        if(view instanceof TextView){
+            TextView textView = (TextView) view;
+            if(old==null||!TextUtils.equals(old.mText,child.mText)){
+                textView.setText(child.mText);
+            }
+            if(child.mHasTextColor&&(old==null||!old.mHasTextColor||old.mTextColor!=child.mTextColor)){
+                if(lP.getRuntimeTextColors()==null){
+                    lP.setRuntimeTextColors(textView.getTextColors());
+                }
+                textView.setTextColor(child.mTextColor);
+            }else if(!child.mHasTextColor&&lP.getRuntimeTextColors()!=null){
+                textView.setTextColor(lP.getRuntimeTextColors());
+                lP.setRuntimeTextColors(null);
+            }
+            if(lP.getDesignTextSize()!=child.mTextSize||lP.isFitText()!=child.mFitText){
+                lP.setDesignTextSize(child.mTextSize);
+                lP.setFitText(child.mFitText);
+                changed = true;
+            }
+        }
+        if(view instanceof ImageView&&!TextUtils.equals(lP.getImagePath(),child.mImage)){
+            lP.setImagePath(child.mImage);
+            changed = true;
+        }
+        return changed;
+    }
+}
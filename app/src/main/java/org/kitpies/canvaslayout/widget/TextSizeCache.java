@@ -0,0 +1,193 @@
+/**
+ * Copyright 2016 YuHao-KitPies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitpies.canvaslayout.widget;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.os.Build;
+import android.text.TextPaint;
+import android.widget.TextView;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded LRU cache of the text sizes fitted into the boxes of TextView children, see layout_fit_text.<br/>
+ * A size is keyed by the text, the scaled text size, the box, the typeface and the max lines, so rebinding or<br/>
+ * measuring again at the same scale never runs the fitting again. Looking up a size doesn't allocate.<br/>
+ * The text is wrapped at the width of the box like a TextView wraps it, at the spaces and the line breaks.<br/>
+ * It's only used on the UI thread.
+ */
+final class TextSizeCache {
+
+    static final int MAX_SIZE = 256;
+    //The fitting stops when the size is known to this precision, in pixels.
+    private static final float PRECISION = 0.5f;
+
+    private static final LinkedHashMap<Key,Float> sSizes = new LinkedHashMap<Key,Float>(16,0.75f,true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Float> eldest) {
+            return size()>MAX_SIZE;
+        }
+    };
+    private static final Key sProbe = new Key();
+    private static TextPaint sPaint;
+
+    private TextSizeCache() {
+    }
+
+    /**
+     * @param textSize The scaled text size, it's the largest size the text may get.
+     * @param width The width of the box, without the paddings.
+     * @param height The height of the box, without the paddings.
+     * @return The largest size not over textSize which fits the wrapped text into the box.
+     */
+    static float fit(TextView view, float textSize, int width, int height){
+        CharSequence text = view.getText();
+        Typeface typeface = view.getTypeface();
+        int maxLines = Build.VERSION.SDK_INT>=16?view.getMaxLines():-1;
+        sProbe.set(text,textSize,width,height,typeface,maxLines);
+        Float size = sSizes.get(sProbe);
+        sProbe.mText = null;
+        if(size!=null){
+            return size;
+        }
+        if(sPaint==null){
+            sPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        }
+        sPaint.set(view.getPaint());
+        String string = text.toString();
+        float fitted = fit(sPaint,string,textSize,width,height,maxLines);
+        Key key = new Key();
+        key.set(string,textSize,width,height,typeface,maxLines);
+        sSizes.put(key,fitted);
+        return fitted;
+    }
+
+    /**
+     * @param paint The paint of the text, its text size is changed.
+     * @param maxLines The max lines of the TextView, 0 or less if there is none.
+     * @return The largest size not over textSize which fits the wrapped text into the box.
+     */
+    static float fit(Paint paint, String text, float textSize, int width, int height, int maxLines){
+        if(fits(paint,text,textSize,width,height,maxLines)){
+            return textSize;
+        }
+        float low = 0, high = textSize;
+        while(high-low>PRECISION){
+            float middle = (low+high)/2;
+            if(fits(paint,text,middle,width,height,maxLines)){
+                low = middle;
+            }else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static boolean fits(Paint paint, String text, float textSize, int width, int height, int maxLines){
+        paint.setTextSize(textSize);
+        int lines = countLines(paint,text,width);
+        if(lines<0||(maxLines>0&&lines>maxLines))return false;
+        Paint.FontMetrics metrics = paint.getFontMetrics();
+        return lines*(metrics.descent-metrics.ascent)<=height;
+    }
+
+    /**
+     * Wrap the text at the width like a TextView: every line takes as many words as fit, or a word at least.
+     * @return The number of lines, or -1 if a word is wider than the width, a TextView would break it.
+     */
+    static int countLines(Paint paint, String text, int width){
+        int length = text.length();
+        int lines = 0;
+        int paragraph = 0;
+        int paragraphEnd, lineStart, wordStart, wordEnd;
+        while(paragraph<=length){
+            paragraphEnd = text.indexOf('\n',paragraph);
+            if(paragraphEnd<0)paragraphEnd = length;
+            lines++;
+            lineStart = paragraph;
+            wordStart = paragraph;
+            while(wordStart<paragraphEnd){
+                wordEnd = text.indexOf(' ',wordStart);
+                if(wordEnd<0||wordEnd>paragraphEnd)wordEnd = paragraphEnd;
+                if(paint.measureText(text,wordStart,wordEnd)>width)return -1;
+                //The spaces at the end of a line aren't measured.
+                if(paint.measureText(text,lineStart,wordEnd)>width){
+                    lines++;
+                    lineStart = wordStart;
+                }
+                wordStart = wordEnd+1;
+            }
+            paragraph = paragraphEnd+1;
+        }
+        return lines;
+    }
+
+    static void clear(){
+        sSizes.clear();
+    }
+
+    private static final class Key {
+
+        private CharSequence mText;
+        private float mTextSize;
+        private int mWidth, mHeight;
+        private Typeface mTypeface;
+        private int mMaxLines;
+        private int mHash;
+
+        void set(CharSequence text, float textSize, int width, int height, Typeface typeface, int maxLines){
+            mText = text;
+            mTextSize = textSize;
+            mWidth = width;
+            mHeight = height;
+            mTypeface = typeface;
+            mMaxLines = maxLines;
+            //The hash of the characters, so a String and another CharSequence of the same text are equal.
+            int hash = 0;
+            for(int i=0;i<text.length();i++){
+                hash = 31*hash+text.charAt(i);
+            }
+            hash = 31*hash+Float.floatToIntBits(textSize);
+            hash = 31*hash+width;
+            hash = 31*hash+height;
+            hash = 31*hash+(typeface!=null?typeface.hashCode():0);
+            hash = 31*hash+maxLines;
+            mHash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this==o)return true;
+            if(!(o instanceof Key))return false;
+            Key key = (Key) o;
+            if(mHash!=key.mHash||mTextSize!=key.mTextSize||mWidth!=key.mWidth||mHeight!=key.mHeight
+                    ||mTypeface!=key.mTypeface||mMaxLines!=key.mMaxLines||mText.length()!=key.mText.length()){
+                return false;
+            }
+            for(int i=0;i<mText.length();i++){
+                if(mText.charAt(i)!=key.mText.charAt(i))return false;
+            }
+            return true;
+        }
+    }
+}
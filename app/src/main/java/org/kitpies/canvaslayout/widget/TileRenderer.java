@@ -0,0 +1,493 @@
+/**
+ * Copyright 2016 YuHao-KitPies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitpies.canvaslayout.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Picture;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+import android.view.View;
+
+import org.kitpies.canvaslayout.geometry.TileGrid;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Draws a canvas layout from tiles, see {@link CanvasLayout#setTiledRendering(boolean)}.<br/>
+ * Every child is recorded into a Picture on the UI thread when it's drawn for the first time or changed.<br/>
+ * The tiles are rendered from the pictures of the children they touch, in the drawing order, on a worker<br/>
+ * thread. A changed child only marks the tiles it touches, they are drawn as they were until they are<br/>
+ * rendered again. A tile which isn't rendered yet is drawn from a coarser level if one is cached.<br/>
+ * <br/>
+ * The tiles of every tiled canvas layout are kept in one LRU cache, so the memory budget is for all of them<br/>
+ * together, and the canvases on screen take the room of the ones which aren't drawn. It's an eighth of the<br/>
+ * heap by default, like the budget of the decoded images of {@link ImageSourceCache}, which is separate.<br/>
+ * So the cached bitmaps take a quarter of the heap at most, besides the bitmaps of the static children,<br/>
+ * which are the size of their canvas layout. The cache is only used on the UI thread.
+ */
+final class TileRenderer {
+
+    private static final String TAG = "CanvasLayout";
+    static final int TILE_SIZE = 256;
+    static final int MIN_LEVEL = -4;
+    static final int MAX_LEVEL = 4;
+    //The coarser levels looked at for a tile which isn't rendered yet.
+    private static final int FALLBACK_LEVELS = 3;
+    //The bytes of a rendered tile.
+    private static final int TILE_BYTES = TILE_SIZE*TILE_SIZE*4;
+
+    private static ExecutorService sExecutor;
+    //The tiles of every renderer, and their budget in bytes, 0 for the default.
+    private static LruCache<TileKey,Bitmap> sTiles;
+    private static int sBudget = 0;
+
+    private final CanvasLayout mCanvas;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    //Reused to look up the tiles of this renderer, and the bytes of its cached tiles.
+    private final TileKey mLookupKey = new TileKey(this,0);
+    private int mCachedSize;
+    //The cached tiles whose children changed, and the tiles being rendered.
+    private final HashSet<Long> mStaleTiles = new HashSet<Long>();
+    private final HashSet<Long> mPendingTiles = new HashSet<Long>();
+    //The levels which have cached or pending tiles, the tiles a changed child touches are looked for at them.
+    private int mMinCachedLevel = Integer.MAX_VALUE;
+    private int mMaxCachedLevel = Integer.MIN_VALUE;
+    //Bumped when the renderer is released, the tiles rendered before are dropped.
+    private int mGeneration;
+
+    private final HashMap<View,Snapshot> mSnapshots = new HashMap<View,Snapshot>();
+    private Snapshot[] mOrdered = new Snapshot[0];
+    private int mOrderedCount;
+    private int mFrame;
+
+    private final int[] mRange = new int[4];
+    private final Rect mClip = new Rect();
+    private final Rect mVisible = new Rect();
+    private final Rect mSrc = new Rect();
+    private final RectF mDst = new RectF();
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /**
+     * The picture of a child and the rect it was recorded at.
+     */
+    private static final class Snapshot {
+        private Picture mPicture;
+        private int mLeft, mTop, mRight, mBottom;
+        private boolean mDirty = true;
+        private int mFrame;
+    }
+
+    /**
+     * A tile of a renderer in the shared cache.
+     */
+    private static final class TileKey {
+        private final TileRenderer mRenderer;
+        private long mKey;
+
+        TileKey(TileRenderer renderer, long key) {
+            mRenderer = renderer;
+            mKey = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof TileKey))return false;
+            TileKey tileKey = (TileKey) o;
+            return mRenderer==tileKey.mRenderer&&mKey==tileKey.mKey;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(mRenderer)*31+(int) (mKey^(mKey>>>32));
+        }
+    }
+
+    /**
+     * The pictures a tile is rendered from, taken on the UI thread.
+     */
+    private static final class TileJob {
+        private final long mKey;
+        private final int mGeneration;
+        private final Picture[] mPictures;
+        private final int[] mOrigins;
+
+        TileJob(long key, int generation, int count) {
+            mKey = key;
+            mGeneration = generation;
+            mPictures = new Picture[count];
+            mOrigins = new int[count*2];
+        }
+    }
+
+    TileRenderer(CanvasLayout canvas) {
+        mCanvas = canvas;
+    }
+
+    private static LruCache<TileKey,Bitmap> getTiles(){
+        if(sTiles==null){
+            //The size is kept within the budget by trimming, so the budget can change.
+            sTiles = new LruCache<TileKey,Bitmap>(Integer.MAX_VALUE){
+                @Override
+                protected int sizeOf(TileKey key, Bitmap value) {
+                    return sizeOfTile(value);
+                }
+
+                @Override
+                protected void entryRemoved(boolean evicted, TileKey key, Bitmap oldValue, Bitmap newValue) {
+                    key.mRenderer.onTileRemoved(key.mKey,oldValue,newValue);
+                }
+            };
+        }
+        return sTiles;
+    }
+
+    private static int sizeOfTile(Bitmap bitmap){
+        return bitmap.getRowBytes()*bitmap.getHeight();
+    }
+
+    /**
+     * @return The memory of the tiles cached for every tiled canvas layout together, in bytes.
+     */
+    static int getBudget(){
+        return sBudget>0?sBudget:(int) Math.min(Integer.MAX_VALUE,Runtime.getRuntime().maxMemory()/8);
+    }
+
+    /**
+     * @param budget The memory of the tiles cached for every tiled canvas layout together, in bytes. 0 for an eighth of the heap.
+     */
+    static void setBudget(int budget){
+        sBudget = budget;
+        if(sTiles!=null){
+            sTiles.trimToSize(getBudget());
+        }
+    }
+
+    private Bitmap getTile(long key){
+        mLookupKey.mKey = key;
+        return getTiles().get(mLookupKey);
+    }
+
+    private void putTile(long key, Bitmap bitmap){
+        mCachedSize += sizeOfTile(bitmap);
+        LruCache<TileKey,Bitmap> tiles = getTiles();
+        tiles.put(new TileKey(this,key),bitmap);
+        tiles.trimToSize(getBudget());
+    }
+
+    private void onTileRemoved(long key, Bitmap oldValue, Bitmap newValue){
+        mCachedSize -= sizeOfTile(oldValue);
+        if(newValue==null){
+            mStaleTiles.remove(key);
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor(){
+        if(sExecutor==null){
+            sExecutor = BackgroundExecutors.single("CanvasTileRenderer");
+        }
+        return sExecutor;
+    }
+
+    /**
+     * @return The number of bytes of the cached tiles.
+     */
+    int getCachedSize(){
+        return mCachedSize;
+    }
+
+    /**
+     * Mark the child as changed.
+     * @return Whether the child was recorded.
+     */
+    boolean invalidateChild(View child){
+        Snapshot snapshot = mSnapshots.get(child);
+        if(snapshot==null)return false;
+        snapshot.mDirty = true;
+        return true;
+    }
+
+    /**
+     * Record every child again, and render every tile again.
+     */
+    void invalidateAll(){
+        for(Snapshot snapshot:mSnapshots.values()){
+            snapshot.mDirty = true;
+        }
+    }
+
+    /**
+     * Drop the tiles and the pictures, e.g. when the canvas is detached. The tiles being rendered are dropped when they are done.
+     */
+    void release(){
+        mGeneration++;
+        if(mCachedSize>0){
+            LruCache<TileKey,Bitmap> tiles = getTiles();
+            for(TileKey key:tiles.snapshot().keySet()){
+                if(key.mRenderer==this){
+                    tiles.remove(key);
+                }
+            }
+        }
+        mStaleTiles.clear();
+        mPendingTiles.clear();
+        mSnapshots.clear();
+        mMinCachedLevel = Integer.MAX_VALUE;
+        mMaxCachedLevel = Integer.MIN_VALUE;
+        mOrderedCount = 0;
+    }
+
+    /**
+     * Draw the tiles of the part of the canvas which is on screen, and start rendering the missing and stale ones.<br/>
+     * Under hardware acceleration the clip is the whole canvas layout, so it's cut to the visible rect, e.g. the<br/>
+     * viewport of a scrolling parent. No more tiles are requested than the cache keeps, or they would evict each other.
+     * @param scale The scale the canvas layout is shown at.
+     */
+    void draw(Canvas canvas, float scale){
+        updateSnapshots();
+        if(!canvas.getClipBounds(mClip)||!mCanvas.getLocalVisibleRect(mVisible))return;
+        //The visible rect is in the coordinates of the view, the drawing is scrolled.
+        mVisible.offset(mCanvas.getScrollX(),mCanvas.getScrollY());
+        if(!mClip.intersect(mVisible))return;
+        int level = TileGrid.zoomLevel(scale,MIN_LEVEL,MAX_LEVEL);
+        if(!TileGrid.range(mClip.left,mClip.top,mClip.right,mClip.bottom,level,TILE_SIZE,mRange))return;
+        int firstColumn = mRange[0], firstRow = mRange[1], lastColumn = mRange[2], lastRow = mRange[3];
+        //The tiles on screen which are cached and the pending ones take their room in the cache.
+        int requests = Math.max(1,getBudget()/TILE_BYTES)-mPendingTiles.size();
+        for(int row=firstRow;row<=lastRow;row++){
+            for(int column=firstColumn;column<=lastColumn;column++){
+                if(getTile(TileGrid.key(level,column,row))!=null){
+                    requests--;
+                }
+            }
+        }
+        for(int row=firstRow;row<=lastRow;row++){
+            for(int column=firstColumn;column<=lastColumn;column++){
+                long key = TileGrid.key(level,column,row);
+                Bitmap bitmap = getTile(key);
+                boolean stale = bitmap!=null&&mStaleTiles.contains(key);
+                //A stale tile is replaced by its new one, so it doesn't take more room.
+                if((bitmap==null||stale)&&!mPendingTiles.contains(key)&&(stale||requests>0)){
+                    requestTile(key,level,column,row);
+                    if(!stale){
+                        requests--;
+                    }
+                }
+                if(bitmap!=null){
+                    setTileRect(mDst,level,column,row);
+                    canvas.drawBitmap(bitmap,null,mDst,mPaint);
+                }else {
+                    drawFallback(canvas,level,column,row);
+                }
+            }
+        }
+    }
+
+    private static void setTileRect(RectF rect, int level, int column, int row){
+        rect.set(TileGrid.tileStart(column,level,TILE_SIZE),TileGrid.tileStart(row,level,TILE_SIZE),
+                TileGrid.tileStart(column+1,level,TILE_SIZE),TileGrid.tileStart(row+1,level,TILE_SIZE));
+    }
+
+    /**
+     * Draw the part of a cached coarser tile which covers the tile.
+     */
+    private void drawFallback(Canvas canvas, int level, int column, int row){
+        for(int i=1;i<=FALLBACK_LEVELS&&level-i>=MIN_LEVEL;i++){
+            int coarseLevel = level-i;
+            int coarseColumn = column>>i;
+            int coarseRow = row>>i;
+            Bitmap bitmap = getTile(TileGrid.key(coarseLevel,coarseColumn,coarseRow));
+            if(bitmap==null)continue;
+            //The tile is a 2^i-th of the coarse tile in both directions.
+            int part = TILE_SIZE>>i;
+            int left = (column-(coarseColumn<<i))*part;
+            int top = (row-(coarseRow<<i))*part;
+            mSrc.set(left,top,left+part,top+part);
+            setTileRect(mDst,level,column,row);
+            canvas.drawBitmap(bitmap,mSrc,mDst,mPaint);
+            return;
+        }
+    }
+
+    /**
+     * Record the children which changed, in the drawing order, and mark the tiles they touch as stale.
+     */
+    private void updateSnapshots(){
+        int count = mCanvas.getChildCount();
+        if(mOrdered.length<count){
+            mOrdered = new Snapshot[count];
+        }
+        mFrame++;
+        mOrderedCount = 0;
+        View view;
+        Snapshot snapshot;
+        for(int i=0;i<count;i++){
+            view = mCanvas.getChildAt(mCanvas.getChildDrawingOrder(count,i));
+            if(view.getVisibility()!=View.VISIBLE)continue;
+            snapshot = mSnapshots.get(view);
+            if(snapshot==null){
+                snapshot = new Snapshot();
+                mSnapshots.put(view,snapshot);
+            }else if(snapshot.mLeft!=view.getLeft()||snapshot.mTop!=view.getTop()
+                    ||snapshot.mRight!=view.getRight()||snapshot.mBottom!=view.getBottom()){
+                invalidateTiles(snapshot.mLeft,snapshot.mTop,snapshot.mRight,snapshot.mBottom);
+                snapshot.mDirty = true;
+            }
+            //A child invalidated while the invalidation doesn't pass through the canvas stays dirty, it isn't drawn by itself.
+            if(snapshot.mDirty||Build.VERSION.SDK_INT>=Build.VERSION_CODES.HONEYCOMB&&view.isDirty()){
+                snapshot.mLeft = view.getLeft();
+                snapshot.mTop = view.getTop();
+                snapshot.mRight = view.getRight();
+                snapshot.mBottom = view.getBottom();
+                snapshot.mPicture = record(view);
+                snapshot.mDirty = false;
+                invalidateTiles(snapshot.mLeft,snapshot.mTop,snapshot.mRight,snapshot.mBottom);
+            }
+            snapshot.mFrame = mFrame;
+            mOrdered[mOrderedCount++] = snapshot;
+        }
+        for(int i=mOrderedCount;i<count;i++){
+            mOrdered[i] = null;
+        }
+        if(mSnapshots.size()>mOrderedCount){
+            //The children which were removed or hidden.
+            Iterator<Snapshot> iterator = mSnapshots.values().iterator();
+            while(iterator.hasNext()){
+                snapshot = iterator.next();
+                if(snapshot.mFrame!=mFrame){
+                    invalidateTiles(snapshot.mLeft,snapshot.mTop,snapshot.mRight,snapshot.mBottom);
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private static Picture record(View view){
+        Picture picture = new Picture();
+        Canvas canvas = picture.beginRecording(Math.max(1,view.getWidth()),Math.max(1,view.getHeight()));
+        view.draw(canvas);
+        picture.endRecording();
+        return picture;
+    }
+
+    /**
+     * Mark the cached and pending tiles of every level which touch the rect as stale.
+     */
+    private void invalidateTiles(int left, int top, int right, int bottom){
+        for(int level=mMinCachedLevel;level<=mMaxCachedLevel;level++){
+            if(!TileGrid.range(left,top,right,bottom,level,TILE_SIZE,mRange))continue;
+            for(int row=mRange[1];row<=mRange[3];row++){
+                for(int column=mRange[0];column<=mRange[2];column++){
+                    long key = TileGrid.key(level,column,row);
+                    if(mPendingTiles.contains(key)||getTile(key)!=null){
+                        mStaleTiles.add(key);
+                    }
+                }
+            }
+        }
+    }
+
+    private void requestTile(long key, int level, int column, int row){
+        float tileLeft = TileGrid.tileStart(column,level,TILE_SIZE);
+        float tileTop = TileGrid.tileStart(row,level,TILE_SIZE);
+        float tileRight = TileGrid.tileStart(column+1,level,TILE_SIZE);
+        float tileBottom = TileGrid.tileStart(row+1,level,TILE_SIZE);
+        //Count the children the tile touches first, so the job's arrays are the only allocation.
+        int count = 0;
+        Snapshot snapshot;
+        for(int i=0;i<mOrderedCount;i++){
+            snapshot = mOrdered[i];
+            if(snapshot.mLeft<tileRight&&snapshot.mRight>tileLeft&&snapshot.mTop<tileBottom&&snapshot.mBottom>tileTop){
+                count++;
+            }
+        }
+        final TileJob job = new TileJob(key,mGeneration,count);
+        count = 0;
+        for(int i=0;i<mOrderedCount;i++){
+            snapshot = mOrdered[i];
+            if(snapshot.mLeft<tileRight&&snapshot.mRight>tileLeft&&snapshot.mTop<tileBottom&&snapshot.mBottom>tileTop){
+                job.mPictures[count] = snapshot.mPicture;
+                job.mOrigins[count*2] = snapshot.mLeft;
+                job.mOrigins[count*2+1] = snapshot.mTop;
+                count++;
+            }
+        }
+        mStaleTiles.remove(key);
+        mPendingTiles.add(key);
+        //A child changed while the tile is rendered marks it stale, so its level is looked at from now on.
+        mMinCachedLevel = Math.min(mMinCachedLevel,level);
+        mMaxCachedLevel = Math.max(mMaxCachedLevel,level);
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = render(job);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onTileRendered(job,bitmap);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Render a tile on the worker thread. The pictures aren't changed after they are recorded.
+     */
+    private static Bitmap render(TileJob job){
+        int level = TileGrid.levelOf(job.mKey);
+        float scale = TileGrid.levelScale(level);
+        Bitmap bitmap;
+        try {
+            bitmap = Bitmap.createBitmap(TILE_SIZE,TILE_SIZE,Bitmap.Config.ARGB_8888);
+        }catch (OutOfMemoryError e){
+            Log.w(TAG,"Can't allocate a tile",e);
+            return null;
+        }
+        Canvas canvas = new Canvas(bitmap);
+        canvas.scale(scale,scale);
+        canvas.translate(-TileGrid.tileStart(TileGrid.columnOf(job.mKey),level,TILE_SIZE),
+                -TileGrid.tileStart(TileGrid.rowOf(job.mKey),level,TILE_SIZE));
+        for(int i=0;i<job.mPictures.length;i++){
+            canvas.save();
+            canvas.translate(job.mOrigins[i*2],job.mOrigins[i*2+1]);
+            job.mPictures[i].draw(canvas);
+            canvas.restore();
+        }
+        return bitmap;
+    }
+
+    private void onTileRendered(TileJob job, Bitmap bitmap){
+        if(job.mGeneration!=mGeneration)return;
+        mPendingTiles.remove(job.mKey);
+        if(bitmap==null){
+            //Make room for the tiles on screen.
+            getTiles().trimToSize(getBudget()/2);
+            return;
+        }
+        putTile(job.mKey,bitmap);
+        mCanvas.invalidate();
+    }
+}
@@ -0,0 +1,72 @@
+package org.kitpies.canvaslayout.adapter;
+
+import android.view.View.MeasureSpec;
+import android.widget.ListView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.kitpies.canvaslayout.AdapterActivity;
+import org.kitpies.canvaslayout.BuildConfig;
+import org.kitpies.canvaslayout.R;
+import org.kitpies.canvaslayout.geometry.LayoutPlanCache;
+import org.kitpies.canvaslayout.widget.CanvasViewPool;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ActivityController;
+
+import static org.junit.Assert.*;
+
+/**
+ * The adapter prefetches the plan of its rows for the measured list, the rows find it when they are measured.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class TestAdapterTest {
+
+    private static void layout(ListView list){
+        list.measure(MeasureSpec.makeMeasureSpec(480,MeasureSpec.EXACTLY),MeasureSpec.makeMeasureSpec(800,MeasureSpec.EXACTLY));
+        list.layout(0,0,480,800);
+    }
+
+    @Test
+    public void pooledRows_areDroppedWithTheActivity() throws Exception {
+        ActivityController<AdapterActivity> controller = Robolectric.buildActivity(AdapterActivity.class).create();
+        CanvasViewPool pool = controller.get().getTestAdapter().getViewPool();
+        long timeout = System.currentTimeMillis()+5000;
+        while(pool.getPooledCount(R.layout.item_view)==0&&System.currentTimeMillis()<timeout){
+            Thread.sleep(10);
+        }
+        assertTrue(pool.getPooledCount(R.layout.item_view)>0);
+
+        controller.destroy();
+        assertEquals(0,pool.getPooledCount(R.layout.item_view));
+        assertNull(pool.obtain(R.layout.item_view));
+    }
+
+    @Test
+    public void prefetchedItemPlan_isAHitForARealRow() throws Exception {
+        ListView list = new ListView(RuntimeEnvironment.application);
+        list.setPadding(12,0,12,0);
+        layout(list);
+        TestAdapter adapter = new TestAdapter(RuntimeEnvironment.application);
+        LayoutPlanCache cache = LayoutPlanCache.getDefault();
+        cache.clear();
+
+        //The first row prefetches the plan, it's waited for before any row is measured.
+        adapter.getView(0,null,list);
+        long timeout = System.currentTimeMillis()+5000;
+        while(cache.size()==0&&System.currentTimeMillis()<timeout){
+            Thread.sleep(10);
+        }
+        assertEquals(1,cache.size());
+
+        list.setAdapter(adapter);
+        layout(list);
+        assertTrue(list.getChildCount()>0);
+        assertEquals(0,cache.getMissCount());
+        assertTrue(cache.getHitCount()>0);
+        assertEquals(1,cache.size());
+    }
+}
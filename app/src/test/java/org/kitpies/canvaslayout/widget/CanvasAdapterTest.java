@@ -0,0 +1,122 @@
+package org.kitpies.canvaslayout.widget;
+
+import android.app.Activity;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.kitpies.canvaslayout.BuildConfig;
+import org.kitpies.canvaslayout.geometry.CanvasGeometry;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+
+import static org.junit.Assert.*;
+
+/**
+ * A virtualized canvas layout keeps its item rects until the items or the scaling change, and only binds<br/>
+ * the items inside its visible area.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class CanvasAdapterTest {
+
+    //A column of 100 rows of 10 items, 10x10 each, the canvas shows 10 rows.
+    private static final int ITEM_COUNT = 1000;
+
+    private static class GridAdapter extends CanvasAdapter {
+
+        int mDesignReadCount;
+
+        @Override
+        public int getCount() {
+            return ITEM_COUNT;
+        }
+
+        @Override
+        public void getItemDesign(int position, CanvasLayout.LayoutParams params) {
+            mDesignReadCount++;
+            params.setDesignX(position%10*10);
+            params.setDesignY(position/10*10);
+            params.setDesignWidth(10);
+            params.setDesignHeight(10);
+        }
+
+        @Override
+        public View onCreateView(CanvasLayout parent, int viewType) {
+            return new View(parent.getContext());
+        }
+
+        @Override
+        public void onBindView(View view, int position) {
+        }
+    }
+
+    private static void pass(CanvasLayout canvas, int size){
+        int spec = MeasureSpec.makeMeasureSpec(size,MeasureSpec.EXACTLY);
+        canvas.measure(spec,spec);
+        canvas.layout(0,0,size,size);
+    }
+
+    private static void assertBoundItems(CanvasLayout canvas, int first, int last){
+        assertEquals(last-first+1,canvas.getChildCount());
+        for(int i=0;i<canvas.getChildCount();i++){
+            int position = ReflectionHelpers.getField(canvas.getChildAt(i).getLayoutParams(),"mItemPosition");
+            assertTrue(position>=first&&position<=last);
+        }
+    }
+
+    @Test
+    public void itemRects_areKeptUntilTheItemsOrTheScalingChange() throws Exception {
+        Activity activity = Robolectric.setupActivity(Activity.class);
+        CanvasLayout canvas = new CanvasLayout(activity);
+        canvas.setDesignSize(100,100);
+        GridAdapter adapter = new GridAdapter();
+        canvas.setAdapter(adapter);
+        activity.setContentView(canvas,new ViewGroup.LayoutParams(100,100));
+        pass(canvas,100);
+        assertEquals(ITEM_COUNT,adapter.mDesignReadCount);
+        assertBoundItems(canvas,0,99);
+
+        //A rect which is only computed again if the scaling changes.
+        int[] rects = ReflectionHelpers.getField(canvas,"mItemRects");
+        int offset = (ITEM_COUNT-1)*CanvasGeometry.RECT_STRIDE+CanvasGeometry.RECT_RIGHT;
+        rects[offset] = -1;
+        canvas.requestLayout();
+        pass(canvas,100);
+        assertEquals(ITEM_COUNT,adapter.mDesignReadCount);
+        assertEquals(-1,rects[offset]);
+
+        pass(canvas,200);
+        assertEquals(ITEM_COUNT,adapter.mDesignReadCount);
+        assertEquals(200,rects[offset]);
+
+        adapter.notifyDataSetChanged();
+        pass(canvas,100);
+        assertEquals(2*ITEM_COUNT,adapter.mDesignReadCount);
+        assertEquals(100,rects[offset]);
+    }
+
+    @Test
+    public void scrolled_bindsTheItemsTheIndexFinds() throws Exception {
+        Activity activity = Robolectric.setupActivity(Activity.class);
+        CanvasLayout canvas = new CanvasLayout(activity);
+        canvas.setDesignSize(100,100);
+        canvas.setAdapter(new GridAdapter());
+        activity.setContentView(canvas,new ViewGroup.LayoutParams(100,100));
+        pass(canvas,100);
+        assertBoundItems(canvas,0,99);
+
+        canvas.scrollTo(0,500);
+        //It updates the visible items like a scroll change of the window.
+        canvas.setViewportMargin(0);
+        assertBoundItems(canvas,500,599);
+
+        canvas.scrollTo(0,0);
+        canvas.setViewportMargin(0);
+        assertBoundItems(canvas,0,99);
+    }
+}
@@ -0,0 +1,106 @@
+package org.kitpies.canvaslayout.widget;
+
+import android.view.View;
+import android.view.View.MeasureSpec;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.kitpies.canvaslayout.BuildConfig;
+import org.kitpies.canvaslayout.geometry.LayoutPlanCache;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+/**
+ * Tests that CanvasLayout.onMeasure and onLayout don't allocate once the canvas reached a steady state.<br/>
+ * The canvas is forced to measure and lay out on every pass, but nothing changed for its children.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class CanvasLayoutAllocationTest {
+
+    private static final int CHILD_COUNT = 200;
+    private static final int WARM_UP_PASSES = 2000;
+    private static final int PASSES = 1000;
+
+    private com.sun.management.ThreadMXBean mThreads;
+
+    @Before
+    public void setUp() throws Exception {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        mThreads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(mThreads.isThreadAllocatedMemorySupported());
+        mThreads.setThreadAllocatedMemoryEnabled(true);
+        LayoutPlanCache.getDefault().clear();
+    }
+
+    private static CanvasLayout newCanvas(){
+        CanvasLayout canvas = new CanvasLayout(RuntimeEnvironment.application);
+        canvas.setDesignSize(1000,1000);
+        for(int i=0;i<CHILD_COUNT;i++){
+            CanvasLayout.LayoutParams lP = new CanvasLayout.LayoutParams();
+            lP.setDesignX((i*37)%950);
+            lP.setDesignY((i*53)%950);
+            lP.setDesignWidth(50);
+            lP.setDesignHeight(50);
+            lP.setZDepth(i%7);
+            if(i%3==0){
+                lP.setWidthScalingMode(CanvasLayout.LayoutParams.STRETCH_DESIGN_MODE);
+            }
+            canvas.addView(new View(RuntimeEnvironment.application),lP);
+        }
+        return canvas;
+    }
+
+    private static void passes(CanvasLayout canvas, int count){
+        int widthMeasureSpec = MeasureSpec.makeMeasureSpec(480,MeasureSpec.EXACTLY);
+        int heightMeasureSpec = MeasureSpec.makeMeasureSpec(800,MeasureSpec.AT_MOST);
+        for(int i=0;i<count;i++){
+            //Without it, View.measure() takes the measured size from its own cache and onMeasure isn't called.
+            canvas.forceLayout();
+            canvas.measure(widthMeasureSpec,heightMeasureSpec);
+            canvas.layout(0,0,canvas.getMeasuredWidth(),canvas.getMeasuredHeight());
+        }
+    }
+
+    /**
+     * @return The bytes allocated by the passes, without the bytes allocated by reading the counter.
+     */
+    private long allocatedBy(CanvasLayout canvas, int count){
+        long thread = Thread.currentThread().getId();
+        //Reading the counter allocates the same few bytes every time once it was read, they are measured first.
+        mThreads.getThreadAllocatedBytes(thread);
+        long before = mThreads.getThreadAllocatedBytes(thread);
+        long reading = mThreads.getThreadAllocatedBytes(thread)-before;
+        before = mThreads.getThreadAllocatedBytes(thread);
+        passes(canvas,count);
+        return mThreads.getThreadAllocatedBytes(thread)-before-reading;
+    }
+
+    private void assertSteadyPassesAllocateNothing(CanvasLayout canvas){
+        passes(canvas,WARM_UP_PASSES);
+        long allocated = allocatedBy(canvas,PASSES);
+        assertEquals("bytes allocated by "+PASSES+" passes",0,allocated);
+    }
+
+    @Test
+    public void steadyPass_allocatesNothing() throws Exception {
+        assertSteadyPassesAllocateNothing(newCanvas());
+    }
+
+    @Test
+    public void steadyPass_withSharedPlanAndTouchIndex_allocatesNothing() throws Exception {
+        CanvasLayout canvas = newCanvas();
+        canvas.setLayoutPlanShared(true);
+        canvas.setTouchIndexEnabled(true);
+        assertSteadyPassesAllocateNothing(canvas);
+    }
+}
@@ -0,0 +1,338 @@
+package org.kitpies.canvaslayout.widget;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.kitpies.canvaslayout.BuildConfig;
+import org.kitpies.canvaslayout.R;
+import org.kitpies.canvaslayout.geometry.LayoutPlanCache;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pass-count budgets of the canvas layout: a child is measured once per change of its spec or of the canvas
+ * scaling, never again for a pass which changed nothing, and a depth change doesn't measure anything.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class CanvasLayoutPassTest {
+
+    private Context mContext;
+
+    private static class CountingView extends View {
+
+        int mMeasureCount;
+        int mLayoutCount;
+
+        CountingView(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            mMeasureCount++;
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        }
+
+        @Override
+        protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+            mLayoutCount++;
+            super.onLayout(changed, left, top, right, bottom);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mContext = RuntimeEnvironment.application;
+        LayoutPlanCache.getDefault().clear();
+    }
+
+    private static void pass(View root, int widthMeasureSpec, int heightMeasureSpec){
+        root.measure(widthMeasureSpec,heightMeasureSpec);
+        root.layout(0,0,root.getMeasuredWidth(),root.getMeasuredHeight());
+    }
+
+    private static int exactly(int size){
+        return MeasureSpec.makeMeasureSpec(size,MeasureSpec.EXACTLY);
+    }
+
+    private CanvasLayout newCanvas(int childCount, List<CountingView> children){
+        CanvasLayout canvas = new CanvasLayout(mContext);
+        canvas.setDesignSize(1000,1000);
+        for(int i=0;i<childCount;i++){
+            CountingView child = new CountingView(mContext);
+            CanvasLayout.LayoutParams lP = new CanvasLayout.LayoutParams();
+            lP.setDesignX((i*37)%950);
+            lP.setDesignY((i*53)%950);
+            lP.setDesignWidth(50);
+            lP.setDesignHeight(50);
+            lP.setZDepth(i%7);
+            canvas.addView(child,lP);
+            children.add(child);
+        }
+        return canvas;
+    }
+
+    private static void collectCanvases(View view, List<CanvasLayout> canvases){
+        if(view instanceof CanvasLayout){
+            canvases.add((CanvasLayout) view);
+        }
+        if(view instanceof ViewGroup){
+            ViewGroup group = (ViewGroup) view;
+            for(int i=0;i<group.getChildCount();i++){
+                collectCanvases(group.getChildAt(i),canvases);
+            }
+        }
+    }
+
+    private static void assertCounts(List<CountingView> children, int measureCount, int layoutCount){
+        for(int i=0;i<children.size();i++){
+            assertEquals("measures of child "+i,measureCount,children.get(i).mMeasureCount);
+            assertEquals("layouts of child "+i,layoutCount,children.get(i).mLayoutCount);
+        }
+    }
+
+    @Test
+    public void largeCanvas_measuresEveryChildOncePerSpecChange() throws Exception {
+        List<CountingView> children = new ArrayList<CountingView>();
+        CanvasLayout canvas = newCanvas(500,children);
+        canvas.setMetricsEnabled(true);
+
+        pass(canvas,exactly(500),exactly(500));
+        assertCounts(children,1,1);
+
+        //The canvas is measured again, but nothing changed for the children.
+        canvas.forceLayout();
+        pass(canvas,exactly(500),exactly(500));
+        assertCounts(children,1,1);
+        assertEquals(1,canvas.getMetrics().getRedundantMeasureCount());
+        assertEquals(500,canvas.getMetrics().getLastCachedChildCount());
+
+        pass(canvas,exactly(800),exactly(600));
+        assertCounts(children,2,2);
+        assertEquals(500,canvas.getMetrics().getLastRemeasuredChildCount());
+        assertEquals(0,canvas.getMetrics().getLastCachedChildCount());
+        assertEquals(500,canvas.getMetrics().getCachedChildCount());
+    }
+
+    @Test
+    public void oneChildChanged_measuresOnlyThatChild() throws Exception {
+        List<CountingView> children = new ArrayList<CountingView>();
+        CanvasLayout canvas = newCanvas(100,children);
+        pass(canvas,exactly(500),exactly(500));
+
+        CountingView changed = children.get(42);
+        ((CanvasLayout.LayoutParams) changed.getLayoutParams()).setDesignWidth(80);
+        changed.requestLayout();
+        pass(canvas,exactly(500),exactly(500));
+
+        assertEquals(2,changed.mMeasureCount);
+        int measured = 0;
+        for(CountingView child:children){
+            measured += child.mMeasureCount;
+        }
+        assertEquals(101,measured);
+    }
+
+    @Test
+    public void depthAndPositionChanges_measureNothing() throws Exception {
+        List<CountingView> children = new ArrayList<CountingView>();
+        CanvasLayout canvas = newCanvas(100,children);
+        pass(canvas,exactly(500),exactly(500));
+
+        canvas.setChildZDepth(children.get(3),100);
+        canvas.setChildDesignPosition(children.get(4),10,10);
+
+        assertFalse(canvas.isLayoutRequested());
+        assertCounts(children,1,1);
+        assertEquals(5,children.get(4).getLeft());
+        assertEquals(3,canvas.getChildDrawingOrder(100,99));
+    }
+
+    @Test
+    public void layoutParamsDepthChange_measuresNothing() throws Exception {
+        List<CountingView> children = new ArrayList<CountingView>();
+        CanvasLayout canvas = newCanvas(10,children);
+        canvas.setMetricsEnabled(true);
+        pass(canvas,exactly(500),exactly(500));
+
+        ((CanvasLayout.LayoutParams) children.get(2).getLayoutParams()).setZDepth(100);
+        canvas.requestLayout();
+        pass(canvas,exactly(500),exactly(500));
+
+        assertCounts(children,1,1);
+        assertEquals(0,canvas.getMetrics().getLastRemeasuredChildCount());
+        assertEquals(2,canvas.getChildDrawingOrder(10,9));
+    }
+
+    @Test
+    public void imageSource_isDecodedOutsideTheMeasurePass() throws Exception {
+        CanvasLayout canvas = new CanvasLayout(mContext);
+        canvas.setDesignSize(1000,1000);
+        ImageView image = new ImageView(mContext);
+        CanvasLayout.LayoutParams lP = new CanvasLayout.LayoutParams();
+        lP.setDesignWidth(100);
+        lP.setDesignHeight(100);
+        lP.setImageResource(R.mipmap.ic_launcher);
+        canvas.addView(image,lP);
+
+        pass(canvas,exactly(500),exactly(500));
+        assertNull(image.getDrawable());
+        long timeout = System.currentTimeMillis()+5000;
+        while(image.getDrawable()==null&&System.currentTimeMillis()<timeout){
+            Thread.sleep(10);
+            Robolectric.flushForegroundThreadScheduler();
+        }
+        assertNotNull(image.getDrawable());
+
+        //Another child of the same size takes the cached bitmap in the measure pass.
+        ImageView other = new ImageView(mContext);
+        CanvasLayout.LayoutParams otherLP = new CanvasLayout.LayoutParams();
+        otherLP.setDesignWidth(100);
+        otherLP.setDesignHeight(100);
+        otherLP.setImageResource(R.mipmap.ic_launcher);
+        canvas.addView(other,otherLP);
+        pass(canvas,exactly(500),exactly(500));
+        assertNotNull(other.getDrawable());
+    }
+
+    @Test
+    public void transaction_measuresTheEditedChildrenInOnePass() throws Exception {
+        List<CountingView> children = new ArrayList<CountingView>();
+        CanvasLayout canvas = newCanvas(100,children);
+        canvas.setMetricsEnabled(true);
+        pass(canvas,exactly(500),exactly(500));
+
+        CanvasLayout.Transaction transaction = canvas.beginTransaction();
+        for(int i=0;i<10;i++){
+            transaction.setDesignSize(children.get(i),60,60).setDesignPosition(children.get(i),i*10,i*10);
+        }
+        transaction.commit();
+        pass(canvas,exactly(500),exactly(500));
+
+        assertEquals(2,canvas.getMetrics().getMeasureCount());
+        assertEquals(10,canvas.getMetrics().getLastRemeasuredChildCount());
+    }
+
+    @Test
+    public void nestedCanvases_flattened_measureEveryChildOncePerSpecChange() throws Exception {
+        List<CountingView> children = new ArrayList<CountingView>();
+        CanvasLayout outer = new CanvasLayout(mContext);
+        outer.setDesignSize(1000,1000);
+        for(int i=0;i<10;i++){
+            CanvasLayout nested = newCanvas(50,children);
+            CanvasLayout.LayoutParams lP = new CanvasLayout.LayoutParams();
+            lP.setDesignX(i*100);
+            lP.setDesignWidth(100);
+            lP.setDesignHeight(100);
+            outer.addView(nested,lP);
+        }
+        outer.setMetricsEnabled(true);
+        pass(outer,exactly(1000),exactly(1000));
+        assertCounts(children,1,1);
+
+        //The former children get the outer canvas as their owner, so they and their frames are measured once by it.
+        outer.flattenNestedCanvases();
+        pass(outer,exactly(1000),exactly(1000));
+        assertEquals(510,outer.getMetrics().getLastRemeasuredChildCount());
+        int[] measured = new int[children.size()];
+        for(int i=0;i<children.size();i++){
+            measured[i] = children.get(i).mMeasureCount;
+            assertTrue(measured[i]<=2);
+        }
+
+        outer.forceLayout();
+        pass(outer,exactly(1000),exactly(1000));
+        assertEquals(0,outer.getMetrics().getLastRemeasuredChildCount());
+        for(int i=0;i<children.size();i++){
+            assertEquals(measured[i],children.get(i).mMeasureCount);
+        }
+    }
+
+    @Test
+    public void lazyChild_isInflatedInPlaceWithoutAnotherPass() throws Exception {
+        List<CountingView> children = new ArrayList<CountingView>();
+        CanvasLayout canvas = newCanvas(10,children);
+        CountingView placeholder = children.get(5);
+        CanvasLayout.LayoutParams lP = (CanvasLayout.LayoutParams) placeholder.getLayoutParams();
+        lP.setLazyLayout(R.layout.item_view);
+        pass(canvas,exactly(500),exactly(500));
+
+        View view = canvas.inflateLazyChild(placeholder);
+        assertSame(view,canvas.getChildAt(5));
+        assertSame(lP,view.getLayoutParams());
+        assertFalse(lP.isLazy());
+        assertFalse(canvas.isLayoutRequested());
+        assertEquals(lP.width,view.getMeasuredWidth());
+        assertEquals(lP.getX(0.5f,0.5f,0),view.getLeft());
+    }
+
+    @Test
+    public void itemView_secondPassMeasuresNoChild() throws Exception {
+        View item = LayoutInflater.from(mContext).inflate(R.layout.item_view,null);
+        List<CanvasLayout> canvases = new ArrayList<CanvasLayout>();
+        collectCanvases(item,canvases);
+        assertEquals(1,canvases.size());
+        CanvasLayout canvas = canvases.get(0);
+        canvas.setMetricsEnabled(true);
+        int unspecified = MeasureSpec.makeMeasureSpec(0,MeasureSpec.UNSPECIFIED);
+
+        pass(item,exactly(480),unspecified);
+        assertEquals(canvas.getChildCount(),canvas.getMetrics().getRemeasuredChildCount());
+        int lookups = canvas.getMetrics().getSharedPlanHitCount()+canvas.getMetrics().getSharedPlanMissCount();
+
+        canvas.requestLayout();
+        pass(item,exactly(480),unspecified);
+        assertEquals(canvas.getChildCount(),canvas.getMetrics().getRemeasuredChildCount());
+        assertTrue(canvas.getMetrics().getRedundantMeasureCount()>=1);
+        //The canvas holds the plan already, it isn't looked up again.
+        assertEquals(lookups,canvas.getMetrics().getSharedPlanHitCount()+canvas.getMetrics().getSharedPlanMissCount());
+
+        //Another row of the same design takes the shared plan.
+        View row = LayoutInflater.from(mContext).inflate(R.layout.item_view,null);
+        pass(row,exactly(480),unspecified);
+        assertTrue(LayoutPlanCache.getDefault().getHitCount()>=1);
+    }
+
+    @Test
+    public void mixtureDesign_relayoutWithoutChangesMeasuresNoChild() throws Exception {
+        View root = LayoutInflater.from(mContext).inflate(R.layout.activity_mixture_design,null);
+        List<CanvasLayout> canvases = new ArrayList<CanvasLayout>();
+        collectCanvases(root,canvases);
+        assertFalse(canvases.isEmpty());
+        for(CanvasLayout canvas:canvases){
+            canvas.setMetricsEnabled(true);
+        }
+
+        pass(root,exactly(1080),exactly(1920));
+        long[] measured = new long[canvases.size()];
+        for(int i=0;i<canvases.size();i++){
+            CanvasLayoutMetrics metrics = canvases.get(i).getMetrics();
+            measured[i] = metrics.getRemeasuredChildCount();
+            //Ancestors may measure a canvas more than once, but each spec change measures a child once at most.
+            assertTrue(measured[i]<=(long) canvases.get(i).getChildCount()*(metrics.getMeasureCount()-metrics.getRedundantMeasureCount()));
+        }
+
+        for(CanvasLayout canvas:canvases){
+            canvas.requestLayout();
+        }
+        pass(root,exactly(1080),exactly(1920));
+        for(int i=0;i<canvases.size();i++){
+            assertEquals("children measured again in canvas "+i,measured[i],canvases.get(i).getMetrics().getRemeasuredChildCount());
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package org.kitpies.canvaslayout.widget;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.kitpies.canvaslayout.BuildConfig;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the cached bitmap of the static children: a mostly static card is drawn to a software canvas,<br/>
+ * the static children are drawn again only when their geometry, the scaling or their content changes.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class CanvasLayoutStaticCacheTest {
+
+    private static final int STATIC_COUNT = 8;
+
+    private static class DrawnView extends View {
+
+        int mDrawCount;
+        //The cost of drawing the child, as units of work done by onDraw.
+        private final int mWork;
+        private double mSink;
+
+        DrawnView(Context context, int work) {
+            super(context);
+            mWork = work;
+        }
+
+        @Override
+        protected void onDraw(Canvas canvas) {
+            mDrawCount++;
+            for(int i=0;i<mWork;i++){
+                mSink += Math.sqrt(i+mSink);
+            }
+        }
+    }
+
+    /**
+     * A card: static decorations at the back, a dynamic badge in front of them.
+     */
+    private static class Card {
+
+        final CanvasLayout mCanvas;
+        final DrawnView[] mStatics = new DrawnView[STATIC_COUNT];
+        final DrawnView mBadge;
+
+        Card(Context context, int work) {
+            mCanvas = new CanvasLayout(context);
+            mCanvas.setDesignSize(100,100);
+            for(int i=0;i<STATIC_COUNT;i++){
+                mStatics[i] = addChild(i*10,i*10,20,i,work);
+                ((CanvasLayout.LayoutParams) mStatics[i].getLayoutParams()).setStatic(true);
+            }
+            mBadge = addChild(70,0,30,STATIC_COUNT,work);
+        }
+
+        private DrawnView addChild(int designX, int designY, int designSize, float zDepth, int work){
+            DrawnView child = new DrawnView(mCanvas.getContext(),work);
+            CanvasLayout.LayoutParams lP = new CanvasLayout.LayoutParams();
+            lP.setDesignX(designX);
+            lP.setDesignY(designY);
+            lP.setDesignWidth(designSize);
+            lP.setDesignHeight(designSize);
+            lP.setZDepth(zDepth);
+            mCanvas.addView(child,lP);
+            return child;
+        }
+
+        void pass(int size){
+            mCanvas.measure(MeasureSpec.makeMeasureSpec(size,MeasureSpec.EXACTLY),MeasureSpec.makeMeasureSpec(size,MeasureSpec.EXACTLY));
+            mCanvas.layout(0,0,mCanvas.getMeasuredWidth(),mCanvas.getMeasuredHeight());
+        }
+
+        void draw(){
+            Bitmap screen = Bitmap.createBitmap(mCanvas.getWidth(),mCanvas.getHeight(),Bitmap.Config.ARGB_8888);
+            mCanvas.draw(new Canvas(screen));
+        }
+
+        void assertStaticDrawCount(int drawCount){
+            for(int i=0;i<STATIC_COUNT;i++){
+                assertEquals("draws of static child "+i,drawCount,mStatics[i].mDrawCount);
+            }
+        }
+    }
+
+    private static boolean isStaticCached(View child){
+        return ReflectionHelpers.<Boolean>getField(child.getLayoutParams(),"mStaticCached");
+    }
+
+    @Test
+    public void staticChildren_areDrawnOnce_dynamicChildEveryFrame() throws Exception {
+        Card card = new Card(RuntimeEnvironment.application,0);
+        card.pass(200);
+        for(int i=0;i<3;i++){
+            card.draw();
+        }
+        card.assertStaticDrawCount(1);
+        assertEquals(3,card.mBadge.mDrawCount);
+        assertTrue(isStaticCached(card.mStatics[0]));
+        assertFalse(isStaticCached(card.mBadge));
+    }
+
+    @Test
+    public void staticChildInFrontOfADynamicOne_isNeverCached() throws Exception {
+        Card card = new Card(RuntimeEnvironment.application,0);
+        //The last static child is moved in front of the badge, only the children behind the badge stay in the cache.
+        DrawnView front = card.mStatics[STATIC_COUNT-1];
+        card.mCanvas.setChildZDepth(front,STATIC_COUNT+1);
+        card.pass(200);
+        card.draw();
+        card.draw();
+        assertEquals(2,front.mDrawCount);
+        assertFalse(isStaticCached(front));
+        assertEquals(1,card.mStatics[0].mDrawCount);
+
+        //A child which stops being static leaves the cache, and the cache is drawn again without it.
+        DrawnView dynamic = card.mStatics[STATIC_COUNT-2];
+        ((CanvasLayout.LayoutParams) dynamic.getLayoutParams()).setStatic(false);
+        card.draw();
+        card.draw();
+        assertFalse(isStaticCached(dynamic));
+        assertEquals(3,dynamic.mDrawCount);
+        assertEquals(2,card.mStatics[0].mDrawCount);
+    }
+
+    @Test
+    public void staticChildGeometryChanged_rebuildsTheCache() throws Exception {
+        Card card = new Card(RuntimeEnvironment.application,0);
+        card.pass(200);
+        card.draw();
+
+        //Moved without a layout pass.
+        card.mCanvas.setChildDesignPosition(card.mStatics[3],15,15);
+        card.draw();
+        card.assertStaticDrawCount(2);
+
+        //Resized with a layout pass.
+        ((CanvasLayout.LayoutParams) card.mStatics[5].getLayoutParams()).setDesignWidth(40);
+        card.mCanvas.requestLayout();
+        card.pass(200);
+        card.draw();
+        card.assertStaticDrawCount(3);
+
+        card.mStatics[6].setVisibility(View.INVISIBLE);
+        card.draw();
+        assertEquals(4,card.mStatics[0].mDrawCount);
+        assertEquals(3,card.mStatics[6].mDrawCount);
+
+        //Nothing changed since.
+        card.draw();
+        assertEquals(4,card.mStatics[0].mDrawCount);
+    }
+
+    @Test
+    public void scaleChanged_rebuildsTheCache() throws Exception {
+        Card card = new Card(RuntimeEnvironment.application,0);
+        card.pass(200);
+        card.draw();
+        card.pass(300);
+        card.draw();
+        card.assertStaticDrawCount(2);
+        Bitmap bitmap = ReflectionHelpers.getField(card.mCanvas,"mStaticBitmap");
+        assertEquals(300,bitmap.getWidth());
+    }
+
+    @Test
+    public void staticChildInvalidated_rebuildsTheCache() throws Exception {
+        Activity activity = Robolectric.setupActivity(Activity.class);
+        Card card = new Card(activity,0);
+        //A layout pass of the window measures the card with the same size.
+        activity.setContentView(card.mCanvas,new ViewGroup.LayoutParams(200,200));
+        assertTrue(card.mCanvas.isAttachedToWindow());
+        card.pass(200);
+        card.draw();
+
+        //The invalidation of a static child passes through the canvas.
+        card.mStatics[2].invalidate();
+        card.draw();
+        card.assertStaticDrawCount(2);
+
+        //The dynamic child is drawn every frame anyway, its invalidation doesn't touch the cache.
+        card.mBadge.invalidate();
+        card.draw();
+        card.assertStaticDrawCount(2);
+        assertEquals(3,card.mBadge.mDrawCount);
+
+        card.mCanvas.invalidateStaticCache();
+        card.draw();
+        card.assertStaticDrawCount(3);
+    }
+
+    @Test
+    public void dynamicChildAtAStaticChildsLocation_invalidated_keepsTheCache() throws Exception {
+        Activity activity = Robolectric.setupActivity(Activity.class);
+        Card card = new Card(activity,0);
+        //At the left and top of the third static child, in front of it.
+        DrawnView overlay = card.addChild(20,20,10,STATIC_COUNT,0);
+        activity.setContentView(card.mCanvas,new ViewGroup.LayoutParams(200,200));
+        card.pass(200);
+        card.draw();
+
+        overlay.invalidate();
+        card.draw();
+        card.assertStaticDrawCount(1);
+        assertEquals(2,overlay.mDrawCount);
+
+        card.mStatics[2].invalidate();
+        card.draw();
+        card.assertStaticDrawCount(2);
+    }
+
+    private static long fastestFrame(Card card, int frames){
+        long fastest = Long.MAX_VALUE;
+        long start;
+        for(int i=0;i<frames;i++){
+            start = System.nanoTime();
+            card.draw();
+            fastest = Math.min(fastest,System.nanoTime()-start);
+        }
+        return fastest;
+    }
+
+    @Test
+    public void cachedFrame_drawsFasterThanDrawingEveryChild() throws Exception {
+        Card card = new Card(RuntimeEnvironment.application,20000);
+        card.pass(200);
+        card.draw();
+        long cached = fastestFrame(card,20);
+        card.assertStaticDrawCount(1);
+
+        for(DrawnView child:card.mStatics){
+            ((CanvasLayout.LayoutParams) child.getLayoutParams()).setStatic(false);
+        }
+        card.draw();
+        long uncached = fastestFrame(card,20);
+        card.assertStaticDrawCount(22);
+
+        //Only the badge is drawn from nine equally expensive children, so a cached frame costs a fraction.
+        assertTrue("cached frame "+cached+"ns, uncached frame "+uncached+"ns",cached*3<uncached);
+    }
+}
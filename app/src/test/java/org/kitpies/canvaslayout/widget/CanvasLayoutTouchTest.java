@@ -0,0 +1,327 @@
+package org.kitpies.canvaslayout.widget;
+
+import android.os.SystemClock;
+import android.view.InputDevice;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.kitpies.canvaslayout.BuildConfig;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * The touch dispatch of the canvas layout follows layout_zDepth. The view group dispatches the touches,<br/>
+ * the spatial index only orders the children under the point first. The children are never moved.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class CanvasLayoutTouchTest {
+
+    private static class TouchedView extends View {
+
+        int mDownCount;
+        int mPointerDownCount;
+        int mPointerUpCount;
+        int mUpCount;
+        //The pointers of the last event the view got.
+        int mPointerCount;
+        float mX, mY;
+
+        TouchedView() {
+            super(RuntimeEnvironment.application);
+        }
+
+        @Override
+        public boolean onTouchEvent(MotionEvent event) {
+            switch(event.getActionMasked()){
+                case MotionEvent.ACTION_DOWN:
+                    mDownCount++;
+                    break;
+                case MotionEvent.ACTION_POINTER_DOWN:
+                    mPointerDownCount++;
+                    break;
+                case MotionEvent.ACTION_POINTER_UP:
+                    mPointerUpCount++;
+                    break;
+                case MotionEvent.ACTION_UP:
+                    mUpCount++;
+                    break;
+            }
+            mPointerCount = event.getPointerCount();
+            mX = event.getX();
+            mY = event.getY();
+            return true;
+        }
+    }
+
+    private static class HoveredView extends View {
+
+        final StringBuilder mActions = new StringBuilder();
+
+        HoveredView() {
+            super(RuntimeEnvironment.application);
+        }
+
+        @Override
+        public boolean onHoverEvent(MotionEvent event) {
+            switch(event.getActionMasked()){
+                case MotionEvent.ACTION_HOVER_ENTER:
+                    mActions.append("enter ");
+                    break;
+                case MotionEvent.ACTION_HOVER_MOVE:
+                    mActions.append("move ");
+                    break;
+                case MotionEvent.ACTION_HOVER_EXIT:
+                    mActions.append("exit ");
+                    break;
+            }
+            return true;
+        }
+    }
+
+    private static <T extends View> T addChild(CanvasLayout canvas, T child, int designX, float zDepth){
+        CanvasLayout.LayoutParams lP = new CanvasLayout.LayoutParams();
+        lP.setDesignX(designX);
+        lP.setDesignWidth(60);
+        lP.setDesignHeight(60);
+        lP.setZDepth(zDepth);
+        canvas.addView(child,lP);
+        return child;
+    }
+
+    private static TouchedView addChild(CanvasLayout canvas, int designX, float zDepth){
+        return addChild(canvas,new TouchedView(),designX,zDepth);
+    }
+
+    private static void layout(CanvasLayout canvas){
+        canvas.measure(MeasureSpec.makeMeasureSpec(100,MeasureSpec.EXACTLY),MeasureSpec.makeMeasureSpec(100,MeasureSpec.EXACTLY));
+        canvas.layout(0,0,100,100);
+    }
+
+    private static void hover(CanvasLayout canvas, int action, float x, float y){
+        long time = SystemClock.uptimeMillis();
+        MotionEvent event = MotionEvent.obtain(time,time,action,x,y,0);
+        event.setSource(InputDevice.SOURCE_MOUSE);
+        canvas.dispatchGenericMotionEvent(event);
+        event.recycle();
+    }
+
+    private static void down(CanvasLayout canvas, float x, float y){
+        long time = SystemClock.uptimeMillis();
+        MotionEvent down = MotionEvent.obtain(time,time,MotionEvent.ACTION_DOWN,x,y,0);
+        canvas.dispatchTouchEvent(down);
+        down.recycle();
+    }
+
+    /**
+     * Dispatch an event of the pointers, their ids are their indexes.
+     * @param coords The x and y of every pointer.
+     */
+    private static void touch(ViewGroup group, int action, float... coords){
+        int count = coords.length/2;
+        MotionEvent.PointerProperties[] properties = new MotionEvent.PointerProperties[count];
+        MotionEvent.PointerCoords[] pointerCoords = new MotionEvent.PointerCoords[count];
+        for(int i=0;i<count;i++){
+            properties[i] = new MotionEvent.PointerProperties();
+            properties[i].id = i;
+            properties[i].toolType = MotionEvent.TOOL_TYPE_FINGER;
+            pointerCoords[i] = new MotionEvent.PointerCoords();
+            pointerCoords[i].x = coords[i*2];
+            pointerCoords[i].y = coords[i*2+1];
+        }
+        long time = SystemClock.uptimeMillis();
+        MotionEvent event = MotionEvent.obtain(time,time,action,count,properties,pointerCoords,0,0,1,1,0,0,InputDevice.SOURCE_TOUCHSCREEN,0);
+        group.dispatchTouchEvent(event);
+        event.recycle();
+    }
+
+    private static int pointerAction(int action, int pointerIndex){
+        return action|(pointerIndex<<MotionEvent.ACTION_POINTER_INDEX_SHIFT);
+    }
+
+    /**
+     * Two fingers, the first one on the front child only, the second one on the back child only.<br/>
+     * Each child gets a gesture of its own finger.
+     */
+    private static void assertTwoFingersSplit(CanvasLayout canvas, TouchedView front, TouchedView back){
+        touch(canvas,MotionEvent.ACTION_DOWN,20,30);
+        touch(canvas,pointerAction(MotionEvent.ACTION_POINTER_DOWN,1),20,30,90,30);
+        assertEquals(1,front.mDownCount);
+        assertEquals(1,back.mDownCount);
+        //The second finger isn't given to the child of the first one.
+        assertEquals(0,front.mPointerDownCount);
+        assertEquals(1,back.mPointerCount);
+
+        touch(canvas,MotionEvent.ACTION_MOVE,25,35,85,25);
+        assertEquals(1,front.mPointerCount);
+        assertEquals(25,front.mX,0.01f);
+        assertEquals(1,back.mPointerCount);
+        //In the coordinate of the back child, which starts at 40.
+        assertEquals(45,back.mX,0.01f);
+        assertEquals(25,back.mY,0.01f);
+
+        touch(canvas,pointerAction(MotionEvent.ACTION_POINTER_UP,1),25,35,85,25);
+        assertEquals(1,back.mUpCount);
+        assertEquals(0,front.mPointerUpCount);
+        touch(canvas,MotionEvent.ACTION_UP,25,35);
+        assertEquals(1,front.mUpCount);
+        assertEquals(1,back.mUpCount);
+    }
+
+    @Test
+    public void overlappedChild_doesNotStealTheTouch() throws Exception {
+        CanvasLayout canvas = new CanvasLayout(RuntimeEnvironment.application);
+        canvas.setDesignSize(100,100);
+        //The first child is in front, although the second one is later in the hierarchy.
+        TouchedView front = addChild(canvas,0,10);
+        TouchedView back = addChild(canvas,40,0);
+        canvas.measure(MeasureSpec.makeMeasureSpec(100,MeasureSpec.EXACTLY),MeasureSpec.makeMeasureSpec(100,MeasureSpec.EXACTLY));
+        canvas.layout(0,0,100,100);
+
+        down(canvas,50,30);
+        //The children keep their hierarchy order, the view group tests them in the drawing order.
+        assertSame(front,canvas.getChildAt(0));
+        assertEquals(0,canvas.getChildDrawingOrder(2,1));
+        assertEquals(1,front.mDownCount);
+        assertEquals(0,back.mDownCount);
+
+        down(canvas,90,30);
+        assertEquals(1,back.mDownCount);
+
+        canvas.setChildZDepth(back,20);
+        down(canvas,50,30);
+        assertEquals(1,front.mDownCount);
+        assertEquals(2,back.mDownCount);
+    }
+
+    @Test
+    public void indexedTouch_afterADepthChange_followsTheNewDepth() throws Exception {
+        CanvasLayout canvas = new CanvasLayout(RuntimeEnvironment.application);
+        canvas.setDesignSize(100,100);
+        canvas.setTouchIndexEnabled(true);
+        TouchedView front = addChild(canvas,0,10);
+        TouchedView back = addChild(canvas,40,0);
+        canvas.measure(MeasureSpec.makeMeasureSpec(100,MeasureSpec.EXACTLY),MeasureSpec.makeMeasureSpec(100,MeasureSpec.EXACTLY));
+        canvas.layout(0,0,100,100);
+        down(canvas,50,30);
+        assertEquals(1,front.mDownCount);
+
+        //Touched before the next frame sorts the drawing order.
+        canvas.setChildZDepth(back,20);
+        down(canvas,50,30);
+        assertEquals(1,back.mDownCount);
+
+        ((CanvasLayout.LayoutParams) front.getLayoutParams()).setZDepth(30);
+        down(canvas,50,30);
+        assertEquals(2,front.mDownCount);
+        assertEquals(1,back.mDownCount);
+    }
+
+    @Test
+    public void indexedTouch_onATranslatedChild_goesToIt() throws Exception {
+        CanvasLayout canvas = new CanvasLayout(RuntimeEnvironment.application);
+        canvas.setDesignSize(100,100);
+        canvas.setTouchIndexEnabled(true);
+        TouchedView front = addChild(canvas,0,10);
+        TouchedView back = addChild(canvas,40,0);
+        layout(canvas);
+
+        //The index only knows the laid out rect, which isn't under the point.
+        front.setTranslationX(40);
+        down(canvas,90,30);
+        assertEquals(1,front.mDownCount);
+        assertEquals(0,back.mDownCount);
+    }
+
+    @Test
+    public void twoFingers_areSplitBetweenTheChildren() throws Exception {
+        CanvasLayout canvas = new CanvasLayout(RuntimeEnvironment.application);
+        canvas.setDesignSize(100,100);
+        TouchedView front = addChild(canvas,0,10);
+        TouchedView back = addChild(canvas,40,0);
+        canvas.measure(MeasureSpec.makeMeasureSpec(100,MeasureSpec.EXACTLY),MeasureSpec.makeMeasureSpec(100,MeasureSpec.EXACTLY));
+        canvas.layout(0,0,100,100);
+
+        assertTwoFingersSplit(canvas,front,back);
+    }
+
+    @Test
+    public void twoFingers_indexed_areSplitBetweenTheChildren() throws Exception {
+        CanvasLayout canvas = new CanvasLayout(RuntimeEnvironment.application);
+        canvas.setDesignSize(100,100);
+        canvas.setTouchIndexEnabled(true);
+        TouchedView front = addChild(canvas,0,10);
+        TouchedView back = addChild(canvas,40,0);
+        layout(canvas);
+
+        assertTwoFingersSplit(canvas,front,back);
+        //The index only ordered the children for the view group, they weren't moved into the drawing order.
+        assertSame(front,canvas.getChildAt(0));
+        assertEquals(0,canvas.getChildDrawingOrder(2,1));
+    }
+
+    @Test
+    public void secondFinger_indexed_onTheSameChildOrNoChild_goesToTheFirstFingersChild() throws Exception {
+        CanvasLayout canvas = new CanvasLayout(RuntimeEnvironment.application);
+        canvas.setDesignSize(100,100);
+        canvas.setTouchIndexEnabled(true);
+        TouchedView front = addChild(canvas,0,10);
+        TouchedView back = addChild(canvas,40,0);
+        layout(canvas);
+
+        touch(canvas,MotionEvent.ACTION_DOWN,20,30);
+        //On the overlapped area, the front child has the first finger already.
+        touch(canvas,pointerAction(MotionEvent.ACTION_POINTER_DOWN,1),20,30,50,30);
+        assertEquals(1,front.mPointerDownCount);
+        assertEquals(2,front.mPointerCount);
+        assertEquals(0,back.mDownCount);
+
+        //Below every child.
+        touch(canvas,pointerAction(MotionEvent.ACTION_POINTER_DOWN,2),20,30,50,30,50,90);
+        assertEquals(2,front.mPointerDownCount);
+        assertEquals(3,front.mPointerCount);
+        assertEquals(0,back.mDownCount);
+
+        touch(canvas,pointerAction(MotionEvent.ACTION_POINTER_UP,2),20,30,50,30,50,90);
+        touch(canvas,pointerAction(MotionEvent.ACTION_POINTER_UP,1),20,30,50,30);
+        touch(canvas,MotionEvent.ACTION_UP,20,30);
+        assertEquals(2,front.mPointerUpCount);
+        assertEquals(1,front.mUpCount);
+        assertEquals(0,back.mUpCount);
+    }
+
+    @Test
+    public void hover_indexed_followsTheDrawingOrder() throws Exception {
+        CanvasLayout canvas = new CanvasLayout(RuntimeEnvironment.application);
+        canvas.setDesignSize(100,100);
+        canvas.setTouchIndexEnabled(true);
+        HoveredView front = addChild(canvas,new HoveredView(),0,10);
+        HoveredView back = addChild(canvas,new HoveredView(),40,0);
+        layout(canvas);
+
+        hover(canvas,MotionEvent.ACTION_HOVER_ENTER,50,30);
+        hover(canvas,MotionEvent.ACTION_HOVER_MOVE,55,30);
+        assertEquals("enter move ",front.mActions.toString());
+        assertEquals("",back.mActions.toString());
+
+        hover(canvas,MotionEvent.ACTION_HOVER_MOVE,90,30);
+        assertEquals("enter move exit ",front.mActions.toString());
+        assertEquals("enter move ",back.mActions.toString());
+
+        //The back child is brought to the front before the next frame.
+        canvas.setChildZDepth(back,20);
+        hover(canvas,MotionEvent.ACTION_HOVER_MOVE,50,30);
+        assertEquals("enter move exit ",front.mActions.toString());
+        assertEquals("enter move move ",back.mActions.toString());
+
+        hover(canvas,MotionEvent.ACTION_HOVER_EXIT,50,30);
+        assertEquals("enter move move exit ",back.mActions.toString());
+    }
+}
@@ -0,0 +1,98 @@
+package org.kitpies.canvaslayout.widget;
+
+import android.content.Context;
+import android.graphics.drawable.ColorDrawable;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.kitpies.canvaslayout.BuildConfig;
+import org.kitpies.canvaslayout.R;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * The children of a compiled design take their layout params from it, the other children parse their attributes.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class CompiledDesignTest {
+
+    //The spec of every child of item_view.xml: design x, y, width, height and z depth.
+    private static final int[][] ITEM_SPECS = {
+            {0,0,50,50,0}, {30,30,50,50,15}, {70,0,30,30,25}, {0,55,45,45,45}, {55,55,35,35,2}};
+
+    private static void assertItemSpecs(CanvasLayout canvas){
+        assertEquals(100,canvas.getDesignWidth());
+        assertEquals(100,canvas.getDesignHeight());
+        assertTrue(canvas.isLayoutPlanShared());
+        assertEquals(ITEM_SPECS.length,canvas.getChildCount());
+        for(int i=0;i<ITEM_SPECS.length;i++){
+            assertItemSpec(i,(CanvasLayout.LayoutParams) canvas.getChildAt(i).getLayoutParams());
+        }
+    }
+
+    private static void assertItemSpec(int index, CanvasLayout.LayoutParams lP){
+        int[] spec = ITEM_SPECS[index];
+        assertEquals(spec[0],lP.getDesignX());
+        assertEquals(spec[1],lP.getDesignY());
+        assertEquals(spec[2],lP.getDesignWidth());
+        assertEquals(spec[3],lP.getDesignHeight());
+        assertEquals(spec[4],lP.getZDepth(),0.0f);
+    }
+
+    @Test
+    public void compiledDesign_hasTheValuesOfTheXml() throws Exception {
+        CompiledDesign design = CompiledDesign.find("item");
+        assertNotNull(design);
+        assertEquals(100,design.getDesignWidth());
+        assertEquals(100,design.getDesignHeight());
+        assertTrue(design.isLayoutPlanShared());
+        assertEquals(ITEM_SPECS.length,design.getChildCount());
+        for(int i=0;i<ITEM_SPECS.length;i++){
+            assertFalse(design.needsAttributes(i));
+            assertItemSpec(i,design.newLayoutParams(i));
+        }
+
+        //The inflated canvas layout takes them from the design.
+        ViewGroup item = (ViewGroup) LayoutInflater.from(RuntimeEnvironment.application).inflate(R.layout.item_view,null);
+        assertItemSpecs((CanvasLayout) item.getChildAt(0));
+    }
+
+    @Test
+    public void create_buildsTheCanvasOfTheXml() throws Exception {
+        CanvasLayout canvas = CompiledDesign.find("item").create(RuntimeEnvironment.application);
+        assertNotNull(canvas);
+        assertItemSpecs(canvas);
+        assertEquals(0x669999dd,((ColorDrawable) canvas.getBackground()).getColor());
+        for(int i=0;i<canvas.getChildCount();i++){
+            assertTrue(canvas.getChildAt(i) instanceof ImageView);
+        }
+    }
+
+    @Test
+    public void layoutInflatedLater_doesNotTakeTheSpecOfADesignChild() throws Exception {
+        Context context = RuntimeEnvironment.application;
+        ViewGroup item = (ViewGroup) LayoutInflater.from(context).inflate(R.layout.item_view,null);
+        CanvasLayout canvas = (CanvasLayout) item.getChildAt(0);
+        assertNotNull(CompiledDesign.find("item"));
+        //The compiled layout params don't have the xml's layout_width.
+        for(int i=0;i<canvas.getChildCount();i++){
+            assertEquals(0,canvas.getChildAt(i).getLayoutParams().width);
+        }
+
+        canvas.removeViewAt(0);
+        LayoutInflater.from(context).inflate(R.layout.item_view,canvas,true);
+        View added = canvas.getChildAt(canvas.getChildCount()-1);
+        CanvasLayout.LayoutParams lP = (CanvasLayout.LayoutParams) added.getLayoutParams();
+        assertEquals(ViewGroup.LayoutParams.MATCH_PARENT,lP.width);
+        assertEquals(0,lP.getDesignWidth());
+        assertEquals(0.0f,lP.getZDepth(),0.0f);
+    }
+}
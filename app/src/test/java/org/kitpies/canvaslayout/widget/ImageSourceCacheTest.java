@@ -0,0 +1,60 @@
+package org.kitpies.canvaslayout.widget;
+
+import android.content.Context;
+import android.widget.ImageView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.kitpies.canvaslayout.BuildConfig;
+import org.kitpies.canvaslayout.R;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.lang.ref.WeakReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * A pending decode is delivered to every view still waiting for it, and doesn't keep the waiting views alive.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class ImageSourceCacheTest {
+
+    @Test
+    public void viewsWaitingForTheSameDecode_allGetTheBitmap() throws Exception {
+        Context context = RuntimeEnvironment.application;
+        ImageView first = new ImageView(context);
+        ImageView second = new ImageView(context);
+        assertNull(ImageSourceCache.load(context,first,R.mipmap.ic_launcher,null,31,31));
+        assertNull(ImageSourceCache.load(context,second,R.mipmap.ic_launcher,null,31,31));
+
+        long timeout = System.currentTimeMillis()+5000;
+        while((first.getDrawable()==null||second.getDrawable()==null)&&System.currentTimeMillis()<timeout){
+            Thread.sleep(10);
+            Robolectric.flushForegroundThreadScheduler();
+        }
+        assertNotNull(first.getDrawable());
+        assertNotNull(second.getDrawable());
+    }
+
+    @Test
+    public void pendingDecode_doesNotHoldTheWaitingView() throws Exception {
+        Context context = RuntimeEnvironment.application;
+        ImageView view = new ImageView(context);
+        //The decode isn't delivered until the UI thread's scheduler runs.
+        assertNull(ImageSourceCache.load(context,view,R.mipmap.ic_launcher,null,33,33));
+        WeakReference<ImageView> reference = new WeakReference<ImageView>(view);
+        view = null;
+
+        long timeout = System.currentTimeMillis()+5000;
+        while(reference.get()!=null&&System.currentTimeMillis()<timeout){
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(reference.get());
+        Robolectric.flushForegroundThreadScheduler();
+    }
+}
@@ -0,0 +1,108 @@
+package org.kitpies.canvaslayout.widget;
+
+import android.content.res.ColorStateList;
+import android.graphics.Color;
+import android.view.View;
+import android.widget.TextView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.kitpies.canvaslayout.BuildConfig;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for reading runtime designs and applying a new version of a design to a live canvas layout.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class RuntimeDesignTest {
+
+    private static RuntimeDesign read(String json) throws IOException {
+        return RuntimeDesign.read(new StringReader(json.replace('\'','"')));
+    }
+
+    @Test
+    public void read_takesEveryChildAndSkipsUnknownValues() throws Exception {
+        RuntimeDesign design = read("{'name':'banner','design_width':1080,'design_height':600,'version':{'n':[1,2]},"
+                +"'children':[{'id':'a','x':10,'y':20,'width':30,'height':40,'width_mode':'stretch','z':2.5},"
+                +"{'id':'b','type':'text','text':'Say \\u0048i \\'there\\'','text_size':48}]}");
+        assertEquals("banner",design.getName());
+        assertEquals(1080,design.getDesignWidth());
+        assertEquals(2,design.getChildCount());
+
+        CanvasLayout canvas = design.create(RuntimeEnvironment.application);
+        CanvasLayout.LayoutParams lP = (CanvasLayout.LayoutParams) canvas.getChildAt(0).getLayoutParams();
+        assertEquals(30,lP.getDesignWidth());
+        assertEquals(CanvasLayout.LayoutParams.STRETCH_DESIGN_MODE,lP.getWidthScalingMode());
+        assertEquals(2.5f,lP.getZDepth(),0.0f);
+        TextView text = (TextView) RuntimeDesign.findChildView(canvas,"b");
+        assertEquals("Say Hi \"there\"",text.getText().toString());
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsDuplicateIds() throws Exception {
+        read("{'children':[{'id':'a'},{'id':'a'}]}");
+    }
+
+    @Test
+    public void apply_keepsTheViewsOfTheUnchangedChildren() throws Exception {
+        CanvasLayout canvas = read("{'design_width':100,'design_height':100,'children':["
+                +"{'id':'a','width':10,'height':10},{'id':'b','type':'text','text':'b','x':50,'width':10,'height':10},"
+                +"{'id':'c','width':10,'height':10}]}").create(RuntimeEnvironment.application);
+        View manual = new View(RuntimeEnvironment.application);
+        canvas.addView(manual,new CanvasLayout.LayoutParams());
+        View a = RuntimeDesign.findChildView(canvas,"a");
+        View b = RuntimeDesign.findChildView(canvas,"b");
+
+        read("{'design_width':100,'design_height':100,'children':["
+                +"{'id':'a','width':10,'height':10},{'id':'d','x':20,'width':10,'height':10},"
+                +"{'id':'b','type':'text','text':'b','x':60,'width':10,'height':10,'z':1}]}").apply(canvas);
+
+        assertSame(a,RuntimeDesign.findChildView(canvas,"a"));
+        assertSame(b,RuntimeDesign.findChildView(canvas,"b"));
+        assertNull(RuntimeDesign.findChildView(canvas,"c"));
+        assertEquals(1,canvas.indexOfChild(RuntimeDesign.findChildView(canvas,"d")));
+        assertSame(manual,canvas.getChildAt(3));
+        CanvasLayout.LayoutParams lP = (CanvasLayout.LayoutParams) b.getLayoutParams();
+        assertEquals(60,lP.getDesignX());
+        assertEquals(1.0f,lP.getZDepth(),0.0f);
+    }
+
+    @Test
+    public void apply_movesTheKeptViewsToTheNewOrder() throws Exception {
+        CanvasLayout canvas = read("{'design_width':100,'design_height':100,'children':["
+                +"{'id':'a','width':10,'height':10},{'id':'b','width':10,'height':10},{'id':'c','width':10,'height':10}]}")
+                .create(RuntimeEnvironment.application);
+        View a = RuntimeDesign.findChildView(canvas,"a");
+        View b = RuntimeDesign.findChildView(canvas,"b");
+        View c = RuntimeDesign.findChildView(canvas,"c");
+
+        read("{'design_width':100,'design_height':100,'children':["
+                +"{'id':'c','width':10,'height':10},{'id':'a','width':10,'height':10},{'id':'b','width':10,'height':10}]}").apply(canvas);
+
+        assertSame(c,canvas.getChildAt(0));
+        assertSame(a,canvas.getChildAt(1));
+        assertSame(b,canvas.getChildAt(2));
+    }
+
+    @Test
+    public void apply_restoresTheTextColorWhenItIsDropped() throws Exception {
+        CanvasLayout canvas = read("{'children':[{'id':'t','type':'text','text':'t'}]}").create(RuntimeEnvironment.application);
+        TextView text = (TextView) RuntimeDesign.findChildView(canvas,"t");
+        ColorStateList colors = text.getTextColors();
+
+        read("{'children':[{'id':'t','type':'text','text':'t','text_color':'#ff0000'}]}").apply(canvas);
+        assertEquals(Color.RED,text.getCurrentTextColor());
+
+        read("{'children':[{'id':'t','type':'text','text':'t'}]}").apply(canvas);
+        assertSame(text,RuntimeDesign.findChildView(canvas,"t"));
+        assertSame(colors,text.getTextColors());
+    }
+}
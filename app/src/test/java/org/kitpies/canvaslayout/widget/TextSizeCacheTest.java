@@ -0,0 +1,153 @@
+package org.kitpies.canvaslayout.widget;
+
+import android.text.TextPaint;
+import android.text.TextWatcher;
+import android.view.View.MeasureSpec;
+import android.widget.TextView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.kitpies.canvaslayout.BuildConfig;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the fitting of layout_fit_text, the text is wrapped at the width of the box before it's fitted.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class TextSizeCacheTest {
+
+    /**
+     * A paint whose characters are half as wide as the text size, and whose lines are as high as the text size.<br/>
+     * The test framework measures every character as one pixel whatever the size.
+     */
+    private static class MonospacedPaint extends TextPaint {
+
+        @Override
+        public float measureText(String text, int start, int end) {
+            return (end-start)*getTextSize()/2;
+        }
+
+        @Override
+        public FontMetrics getFontMetrics() {
+            FontMetrics metrics = new FontMetrics();
+            getFontMetrics(metrics);
+            return metrics;
+        }
+
+        @Override
+        public float getFontMetrics(FontMetrics metrics) {
+            if(metrics!=null){
+                metrics.ascent = -getTextSize()*0.8f;
+                metrics.descent = getTextSize()*0.2f;
+            }
+            return getTextSize();
+        }
+    }
+
+    @Test
+    public void countLines_wrapsAtSpacesAndLineBreaks() throws Exception {
+        TextPaint paint = new MonospacedPaint();
+        paint.setTextSize(20);
+        //Every character is 10 wide.
+        assertEquals(1,TextSizeCache.countLines(paint,"",40));
+        assertEquals(1,TextSizeCache.countLines(paint,"ab c",40));
+        assertEquals(2,TextSizeCache.countLines(paint,"ab cd",40));
+        assertEquals(3,TextSizeCache.countLines(paint,"ab cd\nef",40));
+        assertEquals(2,TextSizeCache.countLines(paint,"ab\n",40));
+        assertEquals(-1,TextSizeCache.countLines(paint,"abcde",40));
+    }
+
+    @Test
+    public void wrappedLabel_keepsItsSizeIfItsLinesFit() throws Exception {
+        //110 wide on one line, but every word fits on a line of its own: 4 lines 80 high.
+        assertEquals(20,TextSizeCache.fit(new MonospacedPaint(),"ab cd ef gh",20,40,100,0),0.0f);
+    }
+
+    @Test
+    public void wrappedLabel_shrinksUntilItsLinesFit() throws Exception {
+        //4 lines are too high, two words a line fit at 16: 2 lines 32 high.
+        float fitted = TextSizeCache.fit(new MonospacedPaint(),"ab cd ef gh",20,40,50,0);
+        assertTrue("fitted "+fitted,fitted>15.5f&&fitted<=16);
+    }
+
+    @Test
+    public void singleLineLabel_shrinksUntilItFitsTheWidth() throws Exception {
+        //The whole text is 5.5 text sizes wide.
+        float fitted = TextSizeCache.fit(new MonospacedPaint(),"ab cd ef gh",20,40,100,1);
+        assertTrue("fitted "+fitted,fitted>40/5.5f-0.5f&&fitted<=40/5.5f);
+    }
+
+    @Test
+    public void wordWiderThanTheBox_shrinksUntilItFits() throws Exception {
+        float fitted = TextSizeCache.fit(new MonospacedPaint(),"abcdefghij",20,40,100,0);
+        assertTrue("fitted "+fitted,fitted>7.5f&&fitted<=8);
+    }
+
+    private static class WatchedTextView extends TextView {
+
+        int mWatcherCount;
+
+        WatchedTextView() {
+            super(RuntimeEnvironment.application);
+        }
+
+        @Override
+        public void addTextChangedListener(TextWatcher watcher) {
+            mWatcherCount++;
+            super.addTextChangedListener(watcher);
+        }
+
+        @Override
+        public void removeTextChangedListener(TextWatcher watcher) {
+            mWatcherCount--;
+            super.removeTextChangedListener(watcher);
+        }
+    }
+
+    private static void measure(CanvasLayout canvas){
+        canvas.measure(MeasureSpec.makeMeasureSpec(100,MeasureSpec.EXACTLY),MeasureSpec.makeMeasureSpec(100,MeasureSpec.EXACTLY));
+    }
+
+    @Test
+    public void fitTextWatcher_isRemovedWithTheFitOrTheChild() throws Exception {
+        CanvasLayout canvas = new CanvasLayout(RuntimeEnvironment.application);
+        canvas.setDesignSize(100,100);
+        WatchedTextView label = new WatchedTextView();
+        CanvasLayout.LayoutParams lP = new CanvasLayout.LayoutParams();
+        lP.setDesignWidth(100);
+        lP.setDesignHeight(20);
+        lP.setDesignTextSize(10);
+        lP.setFitText(true);
+        canvas.addView(label,lP);
+        measure(canvas);
+        assertEquals(1,label.mWatcherCount);
+
+        lP.setFitText(false);
+        assertEquals(0,label.mWatcherCount);
+        lP.setFitText(true);
+        canvas.requestLayout();
+        measure(canvas);
+        assertEquals(1,label.mWatcherCount);
+
+        //Replaced layout params take the fitting with them.
+        CanvasLayout.LayoutParams replaced = new CanvasLayout.LayoutParams();
+        replaced.setDesignWidth(100);
+        replaced.setDesignHeight(20);
+        label.setLayoutParams(replaced);
+        measure(canvas);
+        assertEquals(0,label.mWatcherCount);
+
+        replaced.setDesignTextSize(10);
+        replaced.setFitText(true);
+        canvas.requestLayout();
+        measure(canvas);
+        assertEquals(1,label.mWatcherCount);
+        canvas.removeView(label);
+        assertEquals(0,label.mWatcherCount);
+    }
+}
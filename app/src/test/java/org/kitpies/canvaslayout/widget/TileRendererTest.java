@@ -0,0 +1,168 @@
+package org.kitpies.canvaslayout.widget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.view.View;
+import android.view.View.MeasureSpec;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.kitpies.canvaslayout.BuildConfig;
+import org.kitpies.canvaslayout.geometry.TileGrid;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Tests for the tiles of the tiled rendering, they are rendered again whenever a child they show changes.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class TileRendererTest {
+
+    /**
+     * A canvas clipped to a rect, the test framework's canvas has no clip. The tiles aren't drawn on it,<br/>
+     * only the tiles requested are looked at.
+     */
+    private static class ClippedCanvas extends Canvas {
+
+        private final Rect mClip;
+
+        ClippedCanvas(Rect clip) {
+            mClip = clip;
+        }
+
+        @Override
+        public boolean getClipBounds(Rect bounds) {
+            bounds.set(mClip);
+            return true;
+        }
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+        }
+    }
+
+    private static void waitForPendingTiles(HashSet<Long> pending) throws Exception {
+        long timeout = System.currentTimeMillis()+5000;
+        while(!pending.isEmpty()&&System.currentTimeMillis()<timeout){
+            Thread.sleep(10);
+            Robolectric.flushForegroundThreadScheduler();
+        }
+        assertTrue(pending.isEmpty());
+    }
+
+    /**
+     * @return A tiled canvas of one tile, with one child.
+     */
+    private static CanvasLayout newTiledCanvas(){
+        CanvasLayout canvas = new CanvasLayout(RuntimeEnvironment.application);
+        canvas.setDesignSize(256,256);
+        View child = new View(RuntimeEnvironment.application);
+        CanvasLayout.LayoutParams lP = new CanvasLayout.LayoutParams();
+        lP.setDesignWidth(100);
+        lP.setDesignHeight(100);
+        canvas.addView(child,lP);
+        canvas.setTiledRendering(true);
+        canvas.measure(MeasureSpec.makeMeasureSpec(256,MeasureSpec.EXACTLY),MeasureSpec.makeMeasureSpec(256,MeasureSpec.EXACTLY));
+        canvas.layout(0,0,256,256);
+        shadowOf(canvas).setGlobalVisibleRect(new Rect(0,0,256,256));
+        return canvas;
+    }
+
+    private static void renderFirstTile(TileRenderer renderer) throws Exception {
+        renderer.draw(new ClippedCanvas(new Rect(0,0,256,256)),1.0f);
+        waitForPendingTiles(ReflectionHelpers.<HashSet<Long>>getField(renderer,"mPendingTiles"));
+    }
+
+    @Test
+    public void childChangedWhileItsTileIsPending_rendersTheTileAgain() throws Exception {
+        CanvasLayout canvas = newTiledCanvas();
+        View child = canvas.getChildAt(0);
+        TileRenderer renderer = ReflectionHelpers.getField(canvas,"mTileRenderer");
+        HashSet<Long> pending = ReflectionHelpers.getField(renderer,"mPendingTiles");
+        Canvas screen = new ClippedCanvas(new Rect(0,0,256,256));
+        long key = TileGrid.key(0,0,0);
+
+        //The first tile is rendered, nothing is cached yet.
+        renderer.draw(screen,1.0f);
+        assertTrue(pending.contains(key));
+        child.setBackgroundColor(Color.RED);
+        canvas.invalidateTiles();
+        renderer.draw(screen,1.0f);
+        waitForPendingTiles(pending);
+
+        //It was rendered from the old picture, so the next frame renders it again.
+        renderer.draw(screen,1.0f);
+        assertTrue(pending.contains(key));
+        waitForPendingTiles(pending);
+        renderer.draw(screen,1.0f);
+        assertTrue(pending.isEmpty());
+    }
+
+    @Test
+    public void translucentChild_isDrawnWithoutTheTiles() throws Exception {
+        CanvasLayout canvas = newTiledCanvas();
+        View child = canvas.getChildAt(0);
+        TileRenderer renderer = ReflectionHelpers.getField(canvas,"mTileRenderer");
+        HashSet<Long> pending = ReflectionHelpers.getField(renderer,"mPendingTiles");
+        Canvas screen = new ClippedCanvas(new Rect(0,0,256,256));
+
+        child.setAlpha(0.5f);
+        canvas.draw(screen);
+        assertTrue(pending.isEmpty());
+
+        //Back to the tiles, the child is recorded again.
+        child.setAlpha(1.0f);
+        canvas.draw(screen);
+        assertTrue(pending.contains(TileGrid.key(0,0,0)));
+        waitForPendingTiles(pending);
+    }
+
+    @Test
+    public void renderScale_isTheLargerScaleOfTheAncestors() throws Exception {
+        CanvasLayout canvas = newTiledCanvas();
+        CanvasLayout parent = new CanvasLayout(RuntimeEnvironment.application);
+        parent.addView(canvas,new CanvasLayout.LayoutParams());
+        canvas.setScaleX(2.0f);
+        parent.setScaleY(3.0f);
+        assertEquals(6.0f,ReflectionHelpers.<Float>callInstanceMethod(canvas,"getRenderScale"),0.001f);
+    }
+
+    @Test
+    public void tiledCanvases_shareOneBudget() throws Exception {
+        TileRenderer first = ReflectionHelpers.getField(newTiledCanvas(),"mTileRenderer");
+        TileRenderer second = ReflectionHelpers.getField(newTiledCanvas(),"mTileRenderer");
+        int tileBytes = TileRenderer.TILE_SIZE*TileRenderer.TILE_SIZE*4;
+        //Room for a tile and a half, for both canvases together.
+        CanvasLayout.setTileCacheBudget(tileBytes*3/2);
+        try {
+            renderFirstTile(first);
+            assertEquals(tileBytes,first.getCachedSize());
+
+            //The tile of the second canvas takes the room of the first one's.
+            renderFirstTile(second);
+            assertEquals(0,first.getCachedSize());
+            assertEquals(tileBytes,second.getCachedSize());
+
+            //Releasing a renderer only removes its own tiles.
+            first.release();
+            assertEquals(tileBytes,second.getCachedSize());
+            second.release();
+            assertEquals(0,second.getCachedSize());
+        }finally {
+            CanvasLayout.setTileCacheBudget(0);
+        }
+    }
+}
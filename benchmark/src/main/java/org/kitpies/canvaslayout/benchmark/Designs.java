@@ -0,0 +1,86 @@
+package org.kitpies.canvaslayout.benchmark;
+
+import org.kitpies.canvaslayout.geometry.CanvasGeometry;
+
+import java.util.Random;
+
+/**
+ * Synthetic canvas designs for the benchmarks. The same seed always gives the same design.
+ */
+final class Designs {
+
+    static final int DESIGN_WIDTH = 1080;
+    static final int DESIGN_HEIGHT = 1920;
+
+    private Designs(){
+    }
+
+    /**
+     * @param scalingMix "virtual", "stretch" or "mixed".
+     * @return A flat spec array of count children.
+     */
+    static int[] specs(int count, String scalingMix, long seed){
+        Random random = new Random(seed);
+        int[] specs = new int[count*CanvasGeometry.SPEC_STRIDE];
+        for(int i=0;i<count;i++){
+            int offset = i*CanvasGeometry.SPEC_STRIDE;
+            int width = 10+random.nextInt(DESIGN_WIDTH/4);
+            int height = 10+random.nextInt(DESIGN_HEIGHT/4);
+            specs[offset+CanvasGeometry.SPEC_DESIGN_X] = random.nextInt(DESIGN_WIDTH-width);
+            specs[offset+CanvasGeometry.SPEC_DESIGN_Y] = random.nextInt(DESIGN_HEIGHT-height);
+            specs[offset+CanvasGeometry.SPEC_DESIGN_WIDTH] = width;
+            specs[offset+CanvasGeometry.SPEC_DESIGN_HEIGHT] = height;
+            for(int m=CanvasGeometry.SPEC_X_SCALING_MODE;m<=CanvasGeometry.SPEC_HEIGHT_SCALING_MODE;m++){
+                specs[offset+m] = scalingMode(scalingMix,random);
+            }
+        }
+        return specs;
+    }
+
+    private static int scalingMode(String scalingMix, Random random){
+        if("virtual".equals(scalingMix)){
+            return CanvasGeometry.VIRTUAL_DESIGN_MODE;
+        }else if("stretch".equals(scalingMix)){
+            return CanvasGeometry.STRETCH_DESIGN_MODE;
+        }else if("mixed".equals(scalingMix)){
+            return random.nextBoolean()?CanvasGeometry.VIRTUAL_DESIGN_MODE:CanvasGeometry.STRETCH_DESIGN_MODE;
+        }
+        throw new IllegalArgumentException("Unknown scaling mix: "+scalingMix);
+    }
+
+    /**
+     * @param distribution "flat" (every depth is 0), "sorted", "reversed", "random" or "layered" (a few distinct depths).
+     * @return The zDepth of count children.
+     */
+    static float[] depths(int count, String distribution, long seed){
+        Random random = new Random(seed);
+        float[] depths = new float[count];
+        for(int i=0;i<count;i++){
+            if("flat".equals(distribution)){
+                depths[i] = 0;
+            }else if("sorted".equals(distribution)){
+                depths[i] = i;
+            }else if("reversed".equals(distribution)){
+                depths[i] = count-i;
+            }else if("random".equals(distribution)){
+                depths[i] = random.nextFloat()*100;
+            }else if("layered".equals(distribution)){
+                depths[i] = random.nextInt(4)*10;
+            }else {
+                throw new IllegalArgumentException("Unknown depth distribution: "+distribution);
+            }
+        }
+        return depths;
+    }
+
+    static int mode(String name){
+        if("EXACTLY".equals(name)){
+            return CanvasGeometry.EXACTLY;
+        }else if("AT_MOST".equals(name)){
+            return CanvasGeometry.AT_MOST;
+        }else if("UNSPECIFIED".equals(name)){
+            return CanvasGeometry.UNSPECIFIED;
+        }
+        throw new IllegalArgumentException("Unknown measure mode: "+name);
+    }
+}
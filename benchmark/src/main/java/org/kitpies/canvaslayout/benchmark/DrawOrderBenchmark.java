@@ -0,0 +1,51 @@
+package org.kitpies.canvaslayout.benchmark;
+
+import org.kitpies.canvaslayout.geometry.DrawOrder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The zDepth sort of the canvas layout's layout pass.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DrawOrderBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int childCount;
+
+    @Param({"flat", "sorted", "reversed", "random", "layered"})
+    public String depthDistribution;
+
+    private float[] mDepths;
+    private int[] mScratch;
+    private int[] mOrder;
+
+    @Setup
+    public void setUp(){
+        mDepths = Designs.depths(childCount,depthDistribution,42);
+        mScratch = new int[childCount];
+        mOrder = new int[childCount];
+    }
+
+    @Benchmark
+    public int sort(){
+        DrawOrder.sortByDepth(mDepths,childCount,mScratch,mOrder);
+        return mOrder[childCount-1];
+    }
+}
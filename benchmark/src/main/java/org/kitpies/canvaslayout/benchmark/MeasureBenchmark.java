@@ -0,0 +1,60 @@
+package org.kitpies.canvaslayout.benchmark;
+
+import org.kitpies.canvaslayout.geometry.CanvasGeometry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The measure pass of the canvas layout, for every combination of the width and height measure modes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeasureBenchmark {
+
+    @Param({"EXACTLY", "AT_MOST", "UNSPECIFIED"})
+    public String widthMode;
+
+    @Param({"EXACTLY", "AT_MOST", "UNSPECIFIED"})
+    public String heightMode;
+
+    @Param({"10", "100", "1000"})
+    public int childCount;
+
+    @Param({"virtual", "stretch", "mixed"})
+    public String scalingMix;
+
+    private final CanvasGeometry mGeometry = new CanvasGeometry();
+    private int[] mSpecs;
+    private int[] mRects;
+    private int mWidthMode, mHeightMode;
+
+    @Setup
+    public void setUp(){
+        mGeometry.setDesignSize(Designs.DESIGN_WIDTH,Designs.DESIGN_HEIGHT);
+        mSpecs = Designs.specs(childCount,scalingMix,42);
+        mRects = new int[childCount*CanvasGeometry.RECT_STRIDE];
+        mWidthMode = Designs.mode(widthMode);
+        mHeightMode = Designs.mode(heightMode);
+    }
+
+    @Benchmark
+    public int measure(){
+        mGeometry.measure(mWidthMode,720,mHeightMode,1280,mSpecs,childCount,mRects);
+        return mGeometry.getMeasuredWidth()+mGeometry.getMeasuredHeight();
+    }
+}
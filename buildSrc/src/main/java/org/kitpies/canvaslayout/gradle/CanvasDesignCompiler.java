@@ -0,0 +1,585 @@
+package org.kitpies.canvaslayout.gradle;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * Compile the named canvas layout designs of the layout xml files into a java class of primitive arrays.<br/>
+ * A canvas layout is compiled if it has app:design_name. If every child of a design is a View, ImageView,<br/>
+ * TextView, Button or CanvasLayout with literal attributes the compiler understands, a factory which<br/>
+ * builds the views without xml is generated too.
+ */
+public class CanvasDesignCompiler {
+
+    static final String NS_ANDROID = "http://schemas.android.com/apk/res/android";
+    static final String NS_APP = "http://schemas.android.com/apk/res-auto";
+    static final String NS_TOOLS = "http://schemas.android.com/tools";
+
+    static final String CANVAS_LAYOUT = "org.kitpies.canvaslayout.widget.CanvasLayout";
+
+    //The order of a spec, the same as CanvasGeometry's.
+    private static final String[] SPEC_ATTRS = {
+            "layout_design_x", "layout_design_y", "layout_design_width", "layout_design_height",
+            "layout_design_x_scaling_mode", "layout_design_y_scaling_mode",
+            "layout_design_width_scaling_mode", "layout_design_height_scaling_mode"};
+
+    //A float the compiler writes as a java literal.
+    private static final Pattern DECIMAL = Pattern.compile("[-+]?(\\d+\\.?\\d*|\\.\\d+)([eE][-+]?\\d+)?");
+
+    /**
+     * @return Whether the attribute is compiled into the spec, the others need the xml to be resolved.
+     */
+    static boolean isSpecAttribute(String name){
+        return "layout_zDepth".equals(name)||Arrays.asList(SPEC_ATTRS).contains(name);
+    }
+
+    /**
+     * @return Whether the child has canvas layout params attributes which aren't compiled into the spec.
+     */
+    static boolean hasExtraLayoutAttributes(Element child){
+        NamedNodeMap attributes = child.getAttributes();
+        for(int i=0;i<attributes.getLength();i++){
+            Attr attr = (Attr) attributes.item(i);
+            if(NS_APP.equals(attr.getNamespaceURI())&&attr.getLocalName().startsWith("layout_")
+                    &&!isSpecAttribute(attr.getLocalName())){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final Map<String,String> WIDGETS = new HashMap<String,String>();
+
+    static {
+        WIDGETS.put("View","android.view.View");
+        WIDGETS.put("ImageView","android.widget.ImageView");
+        WIDGETS.put("TextView","android.widget.TextView");
+        WIDGETS.put("Button","android.widget.Button");
+        WIDGETS.put(CANVAS_LAYOUT,CANVAS_LAYOUT);
+    }
+
+    private final String mPackageName;
+    private final List<Design> mDesigns = new ArrayList<Design>();
+
+    public CanvasDesignCompiler(String packageName) {
+        mPackageName = packageName;
+    }
+
+    /**
+     * Find the named designs of every layout directory of the resource directory, the default one and the<br/>
+     * ones with qualifiers, e.g. layout-land or layout-sw600dp.
+     */
+    public void addResDir(File resDir) throws Exception {
+        File[] dirs = resDir.listFiles();
+        if(dirs==null)return;
+        //The default directory comes first.
+        Arrays.sort(dirs);
+        for(File dir:dirs){
+            if(dir.isDirectory()&&(dir.getName().equals("layout")||dir.getName().startsWith("layout-"))){
+                addLayoutDir(dir);
+            }
+        }
+    }
+
+    /**
+     * Find the named designs of every layout xml in the directory.
+     */
+    public void addLayoutDir(File layoutDir) throws Exception {
+        File[] files = layoutDir.listFiles();
+        if(files==null)return;
+        Arrays.sort(files);
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        for(File file:files){
+            if(!file.getName().endsWith(".xml"))continue;
+            Document document = builder.parse(file);
+            addDesigns(file,document.getDocumentElement());
+        }
+    }
+
+    private void addDesigns(File file, Element element){
+        if(CANVAS_LAYOUT.equals(element.getTagName())&&element.hasAttributeNS(NS_APP,"design_name")){
+            String name = element.getAttributeNS(NS_APP,"design_name");
+            Design added = new Design(name,file,element);
+            String compiled;
+            try {
+                compiled = added.compile();
+            }catch (IllegalArgumentException e){
+                throw new IllegalStateException("Design "+name+" of "+file+" has "+e.getMessage());
+            }
+            for(Design design:mDesigns){
+                if(design.mName.equals(name)){
+                    //A layout copied into a qualifier directory may keep its design if it's the same.
+                    if(design.compile().equals(compiled)){
+                        added = null;
+                        break;
+                    }
+                    //Designs are registered by name, only one of them could be used whatever the configuration.
+                    throw new IllegalStateException("Design "+name+" of "+file+" is already declared differently in "
+                            +design.mFile+", give every variant its own design_name");
+                }
+                if(constantName(design.mName).equals(constantName(name))){
+                    throw new IllegalStateException("Designs "+name+" of "+file+" and "+design.mName+" of "+design.mFile
+                            +" have the same constant "+constantName(name));
+                }
+            }
+            if(added!=null){
+                mDesigns.add(added);
+            }
+        }
+        for(Element child:children(element)){
+            addDesigns(file,child);
+        }
+    }
+
+    /**
+     * @return The java source of the compiled designs.
+     */
+    public String generate(){
+        StringBuilder out = new StringBuilder();
+        out.append("package ").append(mPackageName).append(";\n\n");
+        out.append("import android.content.Context;\n\n");
+        out.append("import org.kitpies.canvaslayout.widget.CanvasLayout;\n");
+        out.append("import org.kitpies.canvaslayout.widget.CompiledDesign;\n\n");
+        out.append("/**\n * Canvas designs compiled from the layout xml files by the compileCanvasDesigns task. Don't edit it.\n */\n");
+        out.append("public final class CanvasDesigns {\n\n");
+        for(Design design:mDesigns){
+            out.append("    /** The design in ").append(design.getPath()).append(". */\n");
+            out.append("    public static final String ").append(constantName(design.mName)).append(" = ").append(javaString(design.mName)).append(";\n\n");
+        }
+        out.append("    private CanvasDesigns(){\n    }\n\n");
+        out.append("    /**\n     * Register every compiled design, call it before the layouts are inflated.\n     */\n");
+        out.append("    public static void install(){\n");
+        for(int i=0;i<mDesigns.size();i++){
+            out.append("        CompiledDesign.register(new Design").append(i).append("());\n");
+        }
+        out.append("    }\n");
+        for(int i=0;i<mDesigns.size();i++){
+            out.append("\n");
+            mDesigns.get(i).generate(out,"Design"+i);
+        }
+        out.append("}\n");
+        return out.toString();
+    }
+
+    public int getDesignCount(){
+        return mDesigns.size();
+    }
+
+    static List<Element> children(Element element){
+        List<Element> children = new ArrayList<Element>();
+        NodeList nodes = element.getChildNodes();
+        for(int i=0;i<nodes.getLength();i++){
+            Node node = nodes.item(i);
+            if(node instanceof Element){
+                children.add((Element) node);
+            }
+        }
+        return children;
+    }
+
+    /**
+     * @return The children that become views of the canvas, requestFocus and tag aren't views.
+     */
+    static List<Element> viewChildren(Element element){
+        List<Element> children = children(element);
+        List<Element> views = new ArrayList<Element>();
+        for(Element child:children){
+            String tag = child.getTagName();
+            if(!"requestFocus".equals(tag)&&!"tag".equals(tag)){
+                views.add(child);
+            }
+        }
+        return views;
+    }
+
+    static String constantName(String name){
+        return name.replaceAll("[^A-Za-z0-9]","_").toUpperCase(Locale.US);
+    }
+
+    /**
+     * @return The literal value of the attribute, or null if it's a reference, e.g. @integer/x, or can't be parsed.
+     * @throws IllegalArgumentException If the attribute is a float which isn't a finite decimal number.
+     */
+    private static Number literal(Element element, String attr){
+        String value = element.getAttributeNS(NS_APP,attr).trim();
+        if(attr.endsWith("_scaling_mode")){
+            if("virtual_design_mode".equals(value))return 0;
+            if("stretch_design_mode".equals(value))return 1;
+        }
+        try {
+            if(!"layout_zDepth".equals(attr))return Integer.parseInt(value);
+            float zDepth = Float.parseFloat(value);
+            //Float.parseFloat also takes NaN, Infinity, hex and suffixed floats, none of them is a valid depth or
+            //can be written as a java literal.
+            if(Float.isNaN(zDepth)||Float.isInfinite(zDepth)||!DECIMAL.matcher(value).matches()){
+                throw new IllegalArgumentException(attr+"=\""+value+"\" which isn't a finite decimal number");
+            }
+            return zDepth;
+        }catch (NumberFormatException e){
+            return null;
+        }
+    }
+
+    /**
+     * @return Whether the attribute is missing or has a value the compiler can parse.
+     */
+    static boolean isLiteral(Element element, String attr){
+        if(!element.hasAttributeNS(NS_APP,attr))return true;
+        if("share_layout_plan".equals(attr)){
+            String value = element.getAttributeNS(NS_APP,attr).trim();
+            return "true".equals(value)||"false".equals(value);
+        }
+        return literal(element,attr)!=null;
+    }
+
+    /**
+     * @return The value of the attribute, the default if it's missing or isn't a literal. Such a value is resolved<br/>
+     * from the xml, see {@link #isLiteral(Element, String)}.
+     */
+    static int parseInt(Element element, String attr, int defaultValue){
+        if(!element.hasAttributeNS(NS_APP,attr))return defaultValue;
+        Number value = literal(element,attr);
+        return value!=null?value.intValue():defaultValue;
+    }
+
+    static float parseFloat(Element element, String attr){
+        if(!element.hasAttributeNS(NS_APP,attr))return 0;
+        Number value = literal(element,attr);
+        return value!=null?value.floatValue():0;
+    }
+
+    static boolean parseBoolean(Element element, String attr){
+        return element.hasAttributeNS(NS_APP,attr)&&"true".equals(element.getAttributeNS(NS_APP,attr).trim());
+    }
+
+    /**
+     * @return Whether the child's layout params have to be resolved from the xml, its spec isn't all literals<br/>
+     * or it has attributes which aren't compiled into the spec.
+     */
+    static boolean needsAttributes(Element child){
+        if(hasExtraLayoutAttributes(child))return true;
+        for(String attr:SPEC_ATTRS){
+            if(!isLiteral(child,attr))return true;
+        }
+        return !isLiteral(child,"layout_zDepth");
+    }
+
+    /**
+     * @return The color as a java int literal, or null if it isn't a color literal.
+     */
+    static String colorLiteral(String value){
+        if(!value.startsWith("#"))return null;
+        String hex = value.substring(1);
+        if(!hex.matches("[0-9a-fA-F]+"))return null;
+        if(hex.length()==3||hex.length()==4){
+            StringBuilder builder = new StringBuilder();
+            for(char c:hex.toCharArray()){
+                builder.append(c).append(c);
+            }
+            hex = builder.toString();
+        }
+        if(hex.length()==6){
+            hex = "ff"+hex;
+        }
+        if(hex.length()!=8)return null;
+        return "0x"+hex.toLowerCase(Locale.US);
+    }
+
+    /**
+     * @return The text as a java string literal, or null if it isn't a plain literal.
+     */
+    static String stringLiteral(String value){
+        if(value.startsWith("@")||value.startsWith("?")||value.indexOf('\\')>=0)return null;
+        return javaString(value);
+    }
+
+    /**
+     * @return The value as a java string literal.
+     */
+    static String javaString(String value){
+        StringBuilder builder = new StringBuilder("\"");
+        for(char c:value.toCharArray()){
+            if(c=='"'){
+                builder.append("\\\"");
+            }else if(c=='\\'){
+                builder.append("\\\\");
+            }else if(c=='\n'){
+                builder.append("\\n");
+            }else if(c=='\r'){
+                builder.append("\\r");
+            }else if(c=='\t'){
+                builder.append("\\t");
+            }else if(c<0x20){
+                //A unicode escape of a line break would end the literal, the escapes are translated before parsing.
+                builder.append(String.format(Locale.US,"\\%03o",(int) c));
+            }else if(c>0x7e){
+                builder.append(String.format(Locale.US,"\\u%04x",(int) c));
+            }else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    /**
+     * @return The id as a java expression, or null if it isn't an id.
+     */
+    String idReference(String value){
+        if(value.startsWith("@+id/")){
+            return mPackageName+".R.id."+value.substring(5);
+        }else if(value.startsWith("@id/")){
+            return mPackageName+".R.id."+value.substring(4);
+        }else if(value.startsWith("@android:id/")){
+            return "android.R.id."+value.substring(12);
+        }
+        return null;
+    }
+
+    static String visibility(String value){
+        if("visible".equals(value))return "android.view.View.VISIBLE";
+        if("invisible".equals(value))return "android.view.View.INVISIBLE";
+        if("gone".equals(value))return "android.view.View.GONE";
+        return null;
+    }
+
+    private class Design {
+
+        private final String mName;
+        private final File mFile;
+        private final Element mElement;
+        //The nested canvas layouts of the factory, they need their own specs.
+        private final List<Element> mCanvases = new ArrayList<Element>();
+        private int mVariableCount;
+
+        Design(String name, File file, Element element) {
+            mName = name;
+            mFile = file;
+            mElement = element;
+        }
+
+        /**
+         * @return The path of the layout xml in the resource directory, e.g. layout-land/item.xml.
+         */
+        String getPath(){
+            return mFile.getParentFile().getName()+"/"+mFile.getName();
+        }
+
+        /**
+         * @return The compiled design, with a fixed class name so designs can be compared.
+         */
+        String compile(){
+            StringBuilder out = new StringBuilder();
+            generate(out,"Design");
+            return out.toString();
+        }
+
+        void generate(StringBuilder out, String className){
+            boolean buildable = isBuildable(mElement);
+            mCanvases.clear();
+            out.append("    private static final class ").append(className).append(" extends CompiledDesign {\n\n");
+            if(buildable){
+                collectCanvases(mElement);
+                for(int i=0;i<mCanvases.size();i++){
+                    out.append("        private static final int[] SPECS_").append(i+1).append(" = ");
+                    appendSpecs(out,mCanvases.get(i));
+                    out.append(";\n");
+                    out.append("        private static final float[] Z_DEPTHS_").append(i+1).append(" = ");
+                    appendZDepths(out,mCanvases.get(i));
+                    out.append(";\n\n");
+                }
+            }
+            out.append("        ").append(className).append("(){\n");
+            out.append("            super(").append(javaString(mName)).append(",")
+                    .append(parseInt(mElement,"design_width",0)).append(",")
+                    .append(parseInt(mElement,"design_height",0)).append(",")
+                    .append(parseBoolean(mElement,"share_layout_plan")).append(",\n                    ");
+            appendSpecs(out,mElement);
+            out.append(",\n                    ");
+            appendZDepths(out,mElement);
+            appendAttributed(out,mElement);
+            out.append(");\n");
+            out.append("        }\n");
+            if(buildable){
+                out.append("\n        @Override\n");
+                out.append("        public CanvasLayout create(Context context){\n");
+                mVariableCount = 0;
+                String canvas = nextVariable();
+                out.append("            CanvasLayout ").append(canvas).append(" = newCanvas(context);\n");
+                appendAttributes(out,canvas,mElement);
+                appendChildren(out,canvas,mElement,null);
+                out.append("            return ").append(canvas).append(";\n");
+                out.append("        }\n");
+            }
+            out.append("    }\n");
+        }
+
+        private String nextVariable(){
+            return "view"+(mVariableCount++);
+        }
+
+        private void collectCanvases(Element canvas){
+            for(Element child:viewChildren(canvas)){
+                if(CANVAS_LAYOUT.equals(child.getTagName())){
+                    mCanvases.add(child);
+                    collectCanvases(child);
+                }
+            }
+        }
+
+        private void appendSpecs(StringBuilder out, Element canvas){
+            out.append("new int[]{");
+            boolean first = true;
+            for(Element child:viewChildren(canvas)){
+                for(String attr:SPEC_ATTRS){
+                    if(!first)out.append(",");
+                    out.append(parseInt(child,attr,0));
+                    first = false;
+                }
+            }
+            out.append("}");
+        }
+
+        private void appendZDepths(StringBuilder out, Element canvas){
+            out.append("new float[]{");
+            boolean first = true;
+            for(Element child:viewChildren(canvas)){
+                if(!first)out.append(",");
+                out.append(parseFloat(child,"layout_zDepth")).append("f");
+                first = false;
+            }
+            out.append("}");
+        }
+
+        /**
+         * Append which children need their attributes to be resolved, if there are any. An include may add any<br/>
+         * number of views, so it and every child after it have no known position in the inflated canvas.
+         */
+        private void appendAttributed(StringBuilder out, Element canvas){
+            List<Element> children = viewChildren(canvas);
+            boolean[] attributed = new boolean[children.size()];
+            boolean included = false;
+            boolean any = false;
+            for(int i=0;i<children.size();i++){
+                included |= "include".equals(children.get(i).getTagName());
+                attributed[i] = included||needsAttributes(children.get(i));
+                any |= attributed[i];
+            }
+            if(!any)return;
+            out.append(",\n                    new boolean[]{");
+            for(int i=0;i<attributed.length;i++){
+                if(i>0)out.append(",");
+                out.append(attributed[i]);
+            }
+            out.append("}");
+        }
+
+        /**
+         * @param specsName The name of the nested canvas specs, or null for the design itself.
+         */
+        private void appendChildren(StringBuilder out, String canvas, Element element, String specsName){
+            List<Element> children = viewChildren(element);
+            for(int i=0;i<children.size();i++){
+                Element child = children.get(i);
+                String type = WIDGETS.get(child.getTagName());
+                String view = nextVariable();
+                if(CANVAS_LAYOUT.equals(type)){
+                    out.append("            CanvasLayout ").append(view).append(" = newCanvas(context,")
+                            .append(parseInt(child,"design_width",0)).append(",")
+                            .append(parseInt(child,"design_height",0)).append(",")
+                            .append(parseBoolean(child,"share_layout_plan")).append(");\n");
+                }else {
+                    out.append("            ").append(type).append(" ").append(view).append(" = new ").append(type).append("(context);\n");
+                }
+                appendAttributes(out,view,child);
+                if(CANVAS_LAYOUT.equals(type)){
+                    int index = mCanvases.indexOf(child)+1;
+                    appendChildren(out,view,child,"SPECS_"+index+",Z_DEPTHS_"+index);
+                }
+                out.append("            ").append(canvas).append(".addView(").append(view).append(",newLayoutParams(")
+                        .append(specsName!=null?specsName+",":"").append(i).append("));\n");
+            }
+        }
+
+        private void appendAttributes(StringBuilder out, String view, Element element){
+            NamedNodeMap attributes = element.getAttributes();
+            for(int i=0;i<attributes.getLength();i++){
+                Attr attr = (Attr) attributes.item(i);
+                if(!NS_ANDROID.equals(attr.getNamespaceURI()))continue;
+                String name = attr.getLocalName();
+                String value = attr.getValue().trim();
+                if("id".equals(name)){
+                    out.append("            ").append(view).append(".setId(").append(idReference(value)).append(");\n");
+                }else if("background".equals(name)){
+                    out.append("            ").append(view).append(".setBackgroundColor(").append(colorLiteral(value)).append(");\n");
+                }else if("text".equals(name)){
+                    out.append("            ").append(view).append(".setText(").append(stringLiteral(value)).append(");\n");
+                }else if("textColor".equals(name)){
+                    out.append("            ").append(view).append(".setTextColor(").append(colorLiteral(value)).append(");\n");
+                }else if("visibility".equals(name)){
+                    out.append("            ").append(view).append(".setVisibility(").append(visibility(value)).append(");\n");
+                }
+            }
+        }
+
+        /**
+         * @return Whether the factory can build the element and every descendant.
+         */
+        private boolean isBuildable(Element element){
+            String type = WIDGETS.get(element.getTagName());
+            if(type==null)return false;
+            boolean text = "android.widget.TextView".equals(type)||"android.widget.Button".equals(type);
+            boolean canvas = CANVAS_LAYOUT.equals(type);
+            NamedNodeMap attributes = element.getAttributes();
+            for(int i=0;i<attributes.getLength();i++){
+                Attr attr = (Attr) attributes.item(i);
+                String ns = attr.getNamespaceURI();
+                String name = attr.getLocalName()!=null?attr.getLocalName():attr.getName();
+                String value = attr.getValue().trim();
+                if(NS_TOOLS.equals(ns)||"http://www.w3.org/2000/xmlns/".equals(ns)){
+                    continue;
+                }else if(NS_ANDROID.equals(ns)){
+                    if(name.startsWith("layout_"))continue;
+                    if("id".equals(name)&&idReference(value)!=null)continue;
+                    if("background".equals(name)&&colorLiteral(value)!=null)continue;
+                    if("visibility".equals(name)&&visibility(value)!=null)continue;
+                    if(text&&"text".equals(name)&&stringLiteral(value)!=null)continue;
+                    if(text&&"textColor".equals(name)&&colorLiteral(value)!=null)continue;
+                    return false;
+                }else if(NS_APP.equals(ns)){
+                    if(isSpecAttribute(name)&&isLiteral(element,name))continue;
+                    if(canvas&&("design_width".equals(name)||"design_height".equals(name)
+                            ||"share_layout_plan".equals(name))&&isLiteral(element,name))continue;
+                    if(canvas&&"design_name".equals(name))continue;
+                    return false;
+                }else {
+                    //e.g. style, it needs the xml to be resolved.
+                    return false;
+                }
+            }
+            List<Element> children = viewChildren(element);
+            if(!canvas&&!children(element).isEmpty())return false;
+            for(Element child:children){
+                if(!isBuildable(child))return false;
+            }
+            return true;
+        }
+    }
+}
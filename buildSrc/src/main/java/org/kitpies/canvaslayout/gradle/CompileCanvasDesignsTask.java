@@ -0,0 +1,79 @@
+package org.kitpies.canvaslayout.gradle;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Generate the CanvasDesigns class from the named canvas layout designs of the layout directories of a<br/>
+ * resource directory, with or without qualifiers.
+ */
+public class CompileCanvasDesignsTask extends DefaultTask {
+
+    private File mResDir;
+    private File mOutputDir;
+    private String mPackageName;
+
+    @InputDirectory
+    public File getResDir() {
+        return mResDir;
+    }
+
+    public void setResDir(File resDir) {
+        mResDir = resDir;
+    }
+
+    @OutputDirectory
+    public File getOutputDir() {
+        return mOutputDir;
+    }
+
+    public void setOutputDir(File outputDir) {
+        mOutputDir = outputDir;
+    }
+
+    @Input
+    public String getPackageName() {
+        return mPackageName;
+    }
+
+    public void setPackageName(String packageName) {
+        mPackageName = packageName;
+    }
+
+    @TaskAction
+    public void compile() {
+        CanvasDesignCompiler compiler = new CanvasDesignCompiler(mPackageName);
+        String source;
+        try {
+            compiler.addResDir(mResDir);
+            source = compiler.generate();
+        }catch (Exception e){
+            throw new GradleException("Can't compile the canvas designs: "+e.getMessage(),e);
+        }
+        File dir = new File(mOutputDir,mPackageName.replace('.',File.separatorChar));
+        if(!dir.isDirectory()&&!dir.mkdirs()){
+            throw new GradleException("Can't create "+dir);
+        }
+        File file = new File(dir,"CanvasDesigns.java");
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file),"UTF-8");
+            try {
+                writer.write(source);
+            }finally {
+                writer.close();
+            }
+        }catch (Exception e){
+            throw new GradleException("Can't write "+file,e);
+        }
+        getLogger().info("Compiled "+compiler.getDesignCount()+" canvas designs into "+file);
+    }
+}
@@ -0,0 +1,369 @@
+/**
+ * Copyright 2016 YuHao-KitPies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitpies.canvaslayout.geometry;
+
+/**
+ * <h1>Description:</h1>
+ * The scaling and padding math of the canvas layout, without any dependency on android.<br/>
+ * It can be run in a plain jvm, and off the ui thread.<br/>
+ * <h1>How to use:</h1>
+ * Call {@link #setDesignSize(int, int)} and {@link #resolve(int, int, int, int)} to find out the<br/>
+ * stretch window and the virtual window. Then call {@link #computeRects(int[], int, int[])} to<br/>
+ * fill the children rects, and {@link #getMeasuredWidth(int)}/{@link #getMeasuredHeight(int)} to get<br/>
+ * the size of the canvas.<br/>
+ * <br/>
+ * A child is described by {@link #SPEC_STRIDE} ints in a flat spec array, and its rect is written as<br/>
+ * {@link #RECT_STRIDE} ints (left, top, right, bottom) in a flat rect array. Nothing is allocated.<br/>
+ */
+public final class CanvasGeometry {
+
+    //The measure modes. They have the same values as android.view.View.MeasureSpec.
+    private static final int MODE_SHIFT = 30;
+    private static final int MODE_MASK = 0x3 << MODE_SHIFT;
+    public static final int UNSPECIFIED = 0;
+    public static final int EXACTLY = 1 << MODE_SHIFT;
+    public static final int AT_MOST = 2 << MODE_SHIFT;
+
+    /** Design in virtual window. */
+    public static final int VIRTUAL_DESIGN_MODE = 0;
+    /** Design in stretch window. */
+    public static final int STRETCH_DESIGN_MODE = 1;
+
+    //The layout of a child spec.
+    public static final int SPEC_DESIGN_X = 0;
+    public static final int SPEC_DESIGN_Y = 1;
+    public static final int SPEC_DESIGN_WIDTH = 2;
+    public static final int SPEC_DESIGN_HEIGHT = 3;
+    public static final int SPEC_X_SCALING_MODE = 4;
+    public static final int SPEC_Y_SCALING_MODE = 5;
+    public static final int SPEC_WIDTH_SCALING_MODE = 6;
+    public static final int SPEC_HEIGHT_SCALING_MODE = 7;
+    public static final int SPEC_STRIDE = 8;
+
+    //The layout of a child rect.
+    public static final int RECT_LEFT = 0;
+    public static final int RECT_TOP = 1;
+    public static final int RECT_RIGHT = 2;
+    public static final int RECT_BOTTOM = 3;
+    public static final int RECT_STRIDE = 4;
+
+    //The canvas size follows the children when it's resolved to this value.
+    private static final int FROM_CONTENT = -1;
+
+    private int mDesignWidth = 0;
+    private int mDesignHeight = 0;
+
+    private float mStretchXS, mStretchYS;
+    private float mVirtualXS, mVirtualYS;
+    private int mVirtualXPadding, mVirtualYPadding;
+
+    private int mResolvedWidth, mResolvedHeight;
+    private int mMaxWidth, mMaxHeight;
+
+    private int mContentRight, mContentBottom;
+
+    public void setDesignSize(int designWidth, int designHeight){
+        mDesignWidth = designWidth;
+        mDesignHeight = designHeight;
+    }
+
+    public int getDesignWidth() {
+        return mDesignWidth;
+    }
+
+    public int getDesignHeight() {
+        return mDesignHeight;
+    }
+
+    /**
+     * @return The mode of a measure spec, the same as MeasureSpec.getMode().
+     */
+    public static int getMode(int measureSpec){
+        return measureSpec & MODE_MASK;
+    }
+
+    /**
+     * @return The size of a measure spec, the same as MeasureSpec.getSize().
+     */
+    public static int getSize(int measureSpec){
+        return measureSpec & ~MODE_MASK;
+    }
+
+    /**
+     * Find out the stretch window and the virtual window for the given measure modes and sizes.
+     */
+    public void resolve(int widthMode, int widthSize, int heightMode, int heightSize){
+        int pWidth = widthSize;
+        int pHeight = heightSize;
+        int dWidth = mDesignWidth;
+        int dHeight = mDesignHeight;
+        float stretchXS = 0, stretchYS = 0;
+        float virtualXS = 0, virtualYS = 0;
+        int virtualXPadding = 0, virtualYPadding = 0;
+        int width = 0, height = 0;
+        int maxWidth = Integer.MAX_VALUE, maxHeight = Integer.MAX_VALUE;
+        boolean verify = false;
+        //To handle different measure type.
+        if(widthMode==EXACTLY){
+            if(heightMode==EXACTLY){
+                stretchXS = dWidth!=0?pWidth/(float)dWidth:0;
+                stretchYS = dHeight!=0?pHeight/(float)dHeight:0;
+                virtualXS = virtualYS = Math.min(stretchXS,stretchYS);
+                virtualXPadding = (int) ((pWidth-virtualXS*dWidth)/2);
+                virtualYPadding = (int) ((pHeight-virtualYS*dHeight)/2);
+                verify = true;
+                width = pWidth;
+                height = pHeight;
+            }else if(heightMode==AT_MOST){
+                stretchXS = dWidth!=0?pWidth/(float)dWidth:0;
+                int tempH = (dHeight!=0&&dWidth!=0)?(int)(pWidth/(float)dWidth*dHeight):0;
+                stretchYS = dHeight!=0?Math.min(tempH,pHeight)/(float)dHeight:0;
+                virtualXS = virtualYS = Math.min(stretchXS,stretchYS);
+                virtualXPadding = (int) ((pWidth-virtualXS*dWidth)/2);
+                virtualYPadding = tempH!=0?(int) ((Math.min(tempH,pHeight)-virtualYS*dHeight)/2):0;
+                verify = true;
+                width = pWidth;
+                height = tempH!=0?Math.min(pHeight,tempH):FROM_CONTENT;
+                maxHeight = pHeight;
+            }else if(heightMode==UNSPECIFIED){
+                stretchXS = dWidth!=0?pWidth/(float)dWidth:0;
+                stretchYS = stretchXS;
+                virtualXS = virtualYS = stretchXS;
+                virtualXPadding = (int) ((pWidth-virtualXS*dWidth)/2);
+                virtualYPadding = 0;
+                width = pWidth;
+                int tempH = (dHeight!=0&&dWidth!=0)?(int)(pWidth/(float)dWidth*dHeight):0;
+                height = tempH!=0?tempH:FROM_CONTENT;
+            }
+        }else if(widthMode==AT_MOST){
+            if(heightMode==EXACTLY){
+                stretchYS = dHeight!=0?pHeight/(float)dHeight:0;
+                int tempW = (dHeight!=0&&dWidth!=0)?(int)(pHeight/(float)dHeight*dWidth):0;
+                stretchXS = dWidth!=0?Math.min(tempW,pWidth)/(float)dWidth:0;
+                virtualXS = virtualYS = Math.min(stretchXS,stretchYS);
+                virtualXPadding = tempW!=0?(int) ((Math.min(tempW,pWidth)-virtualXS*dWidth)/2):0;
+                virtualYPadding = (int) ((pHeight-virtualYS*dHeight)/2);
+                verify = true;
+                height = pHeight;
+                width = tempW!=0?Math.min(pWidth,tempW):FROM_CONTENT;
+                maxWidth = pWidth;
+            }else if(heightMode==AT_MOST){
+                stretchXS = dWidth!=0?Math.min(pWidth,dWidth)/(float)dWidth:0;
+                stretchYS = dHeight!=0?Math.min(pHeight,dHeight)/(float)dHeight:0;
+                virtualXS = virtualYS = Math.min(stretchXS,stretchYS);
+                virtualXPadding = (int) ((Math.min(pWidth,dWidth)-virtualXS*dWidth)/2);
+                virtualYPadding = (int) ((Math.min(pHeight,dHeight)-virtualYS*dHeight)/2);
+                verify = true;
+                width = Math.min(pWidth,dWidth);
+                height = Math.min(pHeight,dHeight);
+            }else if(heightMode==UNSPECIFIED){
+                stretchXS = dWidth!=0?Math.min(pWidth,dWidth)/(float)dWidth:0;
+                int tempH = (dHeight!=0&&dWidth!=0)?(int)(Math.min(pWidth,dWidth)/(float)dWidth*dHeight):0;
+                stretchYS = stretchXS;
+                virtualXS = virtualYS = stretchXS;
+                virtualXPadding = 0;
+                virtualYPadding = 0;
+                width = Math.min(pWidth,dWidth);
+                height = tempH;
+            }
+        }else if(widthMode==UNSPECIFIED){
+            if(heightMode==EXACTLY){
+                stretchYS = dHeight!=0?pHeight/(float)dHeight:0;
+                stretchXS = stretchYS;
+                virtualXS = virtualYS = stretchYS;
+                virtualXPadding = 0;
+                virtualYPadding = (int) ((pHeight-virtualYS*dHeight)/2);
+                height = pHeight;
+                int tempW = (dHeight!=0&&dWidth!=0)?(int)(pHeight/(float)dHeight*dWidth):0;
+                width = tempW!=0?Math.min(pWidth,tempW):FROM_CONTENT;
+                maxWidth = pWidth;
+            }else if(heightMode==AT_MOST){
+                stretchYS = dHeight!=0?Math.min(pHeight,dHeight)/(float)dHeight:0;
+                int tempW = (dHeight!=0&&dWidth!=0)?(int)(pHeight/(float)dHeight*dWidth):0;
+                stretchXS = stretchYS;
+                virtualXS = virtualYS = stretchYS;
+                virtualXPadding = 0;
+                virtualYPadding = 0;
+                width = tempW;
+                height = Math.min(pHeight,dHeight);
+            }else if(heightMode==UNSPECIFIED){
+                stretchXS = stretchYS = 1;
+                virtualXS = virtualYS = 1;
+                virtualXPadding = virtualYPadding = 0;
+                width = dWidth;
+                height = dHeight;
+            }
+        }
+        //verify scaling
+        if(verify){
+            if(stretchXS==0&&stretchYS!=0)stretchYS=0;
+            if(stretchXS!=0&&stretchYS==0)stretchXS=0;
+        }
+        mStretchXS = stretchXS;
+        mStretchYS = stretchYS;
+        mVirtualXS = virtualXS;
+        mVirtualYS = virtualYS;
+        mVirtualXPadding = virtualXPadding;
+        mVirtualYPadding = virtualYPadding;
+        mResolvedWidth = width;
+        mResolvedHeight = height;
+        mMaxWidth = maxWidth;
+        mMaxHeight = maxHeight;
+    }
+
+    /**
+     * Compute the rect of one child.
+     * @param specs The flat spec array.
+     * @param specOffset The offset of the child spec in the spec array.
+     * @param rects The flat rect array to write in.
+     * @param rectOffset The offset of the child rect in the rect array.
+     */
+    public void computeRect(int[] specs, int specOffset, int[] rects, int rectOffset){
+        int width = scaleSize(specs[specOffset+SPEC_WIDTH_SCALING_MODE],specs[specOffset+SPEC_DESIGN_WIDTH],mStretchXS,mVirtualXS);
+        int height = scaleSize(specs[specOffset+SPEC_HEIGHT_SCALING_MODE],specs[specOffset+SPEC_DESIGN_HEIGHT],mStretchYS,mVirtualYS);
+        int left = scalePosition(specs[specOffset+SPEC_X_SCALING_MODE],specs[specOffset+SPEC_DESIGN_X],mStretchXS,mVirtualXS,mVirtualXPadding);
+        int top = scalePosition(specs[specOffset+SPEC_Y_SCALING_MODE],specs[specOffset+SPEC_DESIGN_Y],mStretchYS,mVirtualYS,mVirtualYPadding);
+        rects[rectOffset+RECT_LEFT] = left;
+        rects[rectOffset+RECT_TOP] = top;
+        rects[rectOffset+RECT_RIGHT] = left + width;
+        rects[rectOffset+RECT_BOTTOM] = top + height;
+    }
+
+    /**
+     * Compute the rects of the first count children, and record the right and bottom of the content.
+     */
+    public void computeRects(int[] specs, int count, int[] rects){
+        int r = 0, b = 0;
+        for(int i=0;i<count;i++){
+            computeRect(specs,i*SPEC_STRIDE,rects,i*RECT_STRIDE);
+            r = Math.max(r, rects[i*RECT_STRIDE+RECT_RIGHT]);
+            b = Math.max(b, rects[i*RECT_STRIDE+RECT_BOTTOM]);
+        }
+        mContentRight = r;
+        mContentBottom = b;
+    }
+
+    /**
+     * Resolve the canvas and compute the rects of the first count children in one call.
+     */
+    public void measure(int widthMode, int widthSize, int heightMode, int heightSize, int[] specs, int count, int[] rects){
+        resolve(widthMode,widthSize,heightMode,heightSize);
+        computeRects(specs,count,rects);
+    }
+
+    /**
+     * @param contentRight The right of the children, it's used when the width follows the children.
+     * @return The width of the canvas.
+     */
+    public int getMeasuredWidth(int contentRight){
+        return mResolvedWidth!=FROM_CONTENT?mResolvedWidth:Math.min(mMaxWidth,contentRight);
+    }
+
+    /**
+     * @param contentBottom The bottom of the children, it's used when the height follows the children.
+     * @return The height of the canvas.
+     */
+    public int getMeasuredHeight(int contentBottom){
+        return mResolvedHeight!=FROM_CONTENT?mResolvedHeight:Math.min(mMaxHeight,contentBottom);
+    }
+
+    /**
+     * @return The width of the canvas, using the content recorded by {@link #computeRects(int[], int, int[])}.
+     */
+    public int getMeasuredWidth(){
+        return getMeasuredWidth(mContentRight);
+    }
+
+    /**
+     * @return The height of the canvas, using the content recorded by {@link #computeRects(int[], int, int[])}.
+     */
+    public int getMeasuredHeight(){
+        return getMeasuredHeight(mContentBottom);
+    }
+
+    /**
+     * @return Whether the measured width or height follows the children, so moving a child may resize the canvas.
+     */
+    public boolean isSizedByContent(){
+        return mResolvedWidth==FROM_CONTENT||mResolvedHeight==FROM_CONTENT;
+    }
+
+    /**
+     * @return The right of the children recorded by {@link #computeRects(int[], int, int[])}.
+     */
+    public int getContentRight() {
+        return mContentRight;
+    }
+
+    /**
+     * @return The bottom of the children recorded by {@link #computeRects(int[], int, int[])}.
+     */
+    public int getContentBottom() {
+        return mContentBottom;
+    }
+
+    public float getStretchXS() {
+        return mStretchXS;
+    }
+
+    public float getStretchYS() {
+        return mStretchYS;
+    }
+
+    public float getVirtualXS() {
+        return mVirtualXS;
+    }
+
+    public float getVirtualYS() {
+        return mVirtualYS;
+    }
+
+    public int getVirtualXPadding() {
+        return mVirtualXPadding;
+    }
+
+    public int getVirtualYPadding() {
+        return mVirtualYPadding;
+    }
+
+    /**
+     * Scale a design width or height.
+     */
+    public static int scaleSize(int scalingMode, int designSize, float stretchS, float virtualS){
+        switch (scalingMode){
+            case VIRTUAL_DESIGN_MODE:
+                return (int) (virtualS*designSize);
+            case STRETCH_DESIGN_MODE:
+                return (int) (stretchS*designSize);
+            default:
+                return (int) (virtualS*designSize);
+        }
+    }
+
+    /**
+     * Scale a design x or y position.
+     */
+    public static int scalePosition(int scalingMode, int designPosition, float stretchS, float virtualS, int virtualPadding){
+        switch (scalingMode){
+            case VIRTUAL_DESIGN_MODE:
+                return (int) (virtualS*designPosition+virtualPadding);
+            case STRETCH_DESIGN_MODE:
+                return (int) (stretchS*designPosition);
+            default:
+                return (int) (virtualS*designPosition+virtualPadding);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright 2016 YuHao-KitPies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitpies.canvaslayout.geometry;
+
+import java.util.Arrays;
+
+/**
+ * The children of a canvas in packed primitive arrays, indexed by the child slot: the flat specs and rects<br/>
+ * of {@link CanvasGeometry}, the rect every slot was measured at, and a dirty flag for every slot whose spec<br/>
+ * changed since it was measured.<br/>
+ * The rects of the dirty slots are computed in one pass over contiguous memory, without visiting the<br/>
+ * children objects. The arrays only grow, so nothing is allocated while the number of children is stable.
+ */
+public final class ChildStore {
+
+    private int[] mSpecs = new int[0];
+    private int[] mRects = new int[0];
+    private int[] mMeasuredRects = new int[0];
+    private boolean[] mDirty = new boolean[0];
+    private int mCount;
+    private int mDirtyCount;
+    private int mVersion;
+
+    /**
+     * Change the number of slots. The slots added are dirty and have an empty spec.
+     */
+    public void setCount(int count){
+        if(mDirty.length<count){
+            int capacity = Math.max(count,mDirty.length*2);
+            mSpecs = Arrays.copyOf(mSpecs,capacity*CanvasGeometry.SPEC_STRIDE);
+            mRects = Arrays.copyOf(mRects,capacity*CanvasGeometry.RECT_STRIDE);
+            mMeasuredRects = Arrays.copyOf(mMeasuredRects,capacity*CanvasGeometry.RECT_STRIDE);
+            mDirty = Arrays.copyOf(mDirty,capacity);
+        }
+        for(int i=mCount;i<count;i++){
+            clearSpec(i);
+        }
+        if(count<mCount){
+            for(int i=count;i<mCount;i++){
+                if(mDirty[i]){
+                    mDirty[i] = false;
+                    mDirtyCount--;
+                }
+            }
+        }
+        if(count!=mCount){
+            mVersion++;
+        }
+        mCount = count;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return The flat spec array, the spec of a slot may be written directly followed by {@link #markDirty(int)}.
+     */
+    public int[] getSpecs() {
+        return mSpecs;
+    }
+
+    /**
+     * @return The flat rect array.
+     */
+    public int[] getRects() {
+        return mRects;
+    }
+
+    /**
+     * Empty the spec and the rect of the slot, e.g. for a child which isn't placed by the canvas.
+     */
+    public void clearSpec(int slot){
+        Arrays.fill(mSpecs,slot*CanvasGeometry.SPEC_STRIDE,(slot+1)*CanvasGeometry.SPEC_STRIDE,0);
+        Arrays.fill(mRects,slot*CanvasGeometry.RECT_STRIDE,(slot+1)*CanvasGeometry.RECT_STRIDE,0);
+        markDirty(slot);
+    }
+
+    public void markDirty(int slot){
+        if(!mDirty[slot]){
+            mDirty[slot] = true;
+            mDirtyCount++;
+        }
+        mVersion++;
+    }
+
+    /**
+     * The spec of a slot was written together with its rect, so the slot stays clean but the specs changed.
+     */
+    public void markSpecChanged(){
+        mVersion++;
+    }
+
+    /**
+     * @return A number which changes whenever a spec or the number of slots changes, e.g. to find out<br/>
+     * whether a layout plan looked up for the specs still applies.
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    public boolean isDirty(int slot){
+        return mDirty[slot];
+    }
+
+    /**
+     * The child of the slot was measured at the slot's rect, so the slot is clean.
+     */
+    public void markMeasured(int slot){
+        System.arraycopy(mRects,slot*CanvasGeometry.RECT_STRIDE,mMeasuredRects,slot*CanvasGeometry.RECT_STRIDE,CanvasGeometry.RECT_STRIDE);
+        if(mDirty[slot]){
+            mDirty[slot] = false;
+            mDirtyCount--;
+        }
+    }
+
+    /**
+     * @return Whether the slot is clean and its rect is the one it was measured at.
+     */
+    public boolean isMeasured(int slot){
+        if(mDirty[slot])return false;
+        int offset = slot*CanvasGeometry.RECT_STRIDE;
+        return mRects[offset+CanvasGeometry.RECT_LEFT]==mMeasuredRects[offset+CanvasGeometry.RECT_LEFT]
+                &&mRects[offset+CanvasGeometry.RECT_TOP]==mMeasuredRects[offset+CanvasGeometry.RECT_TOP]
+                &&mRects[offset+CanvasGeometry.RECT_RIGHT]==mMeasuredRects[offset+CanvasGeometry.RECT_RIGHT]
+                &&mRects[offset+CanvasGeometry.RECT_BOTTOM]==mMeasuredRects[offset+CanvasGeometry.RECT_BOTTOM];
+    }
+
+    public int getDirtyCount() {
+        return mDirtyCount;
+    }
+
+    /**
+     * Compute the rects of the dirty slots, or of every slot.
+     * @param all Whether the scaling changed, so every rect is computed.
+     */
+    public void computeRects(CanvasGeometry geometry, boolean all){
+        if(all){
+            geometry.computeRects(mSpecs,mCount,mRects);
+            return;
+        }
+        if(mDirtyCount==0){
+            return;
+        }
+        for(int i=0;i<mCount;i++){
+            if(mDirty[i]){
+                geometry.computeRect(mSpecs,i*CanvasGeometry.SPEC_STRIDE,mRects,i*CanvasGeometry.RECT_STRIDE);
+            }
+        }
+    }
+
+    /**
+     * Mark every slot as measured.
+     */
+    public void clearDirty(){
+        if(mDirtyCount>0){
+            Arrays.fill(mDirty,0,mCount,false);
+            mDirtyCount = 0;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2016 YuHao-KitPies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitpies.canvaslayout.geometry;
+
+/**
+ * The z-axis order of the canvas layout children.
+ */
+public final class DrawOrder {
+
+    private DrawOrder(){
+    }
+
+    //The length of the runs sorted by insertion before they are merged.
+    private static final int RUN_LENGTH = 16;
+
+    /**
+     * Fill the order with the indexes of the first count depths, sorted from back to front.<br/>
+     * The sort is stable, so indexes with the same depth keep their order. It's a merge sort of short<br/>
+     * insertion sorted runs, so it's linear for sorted depths and n*log(n) for any others. Nothing is allocated.
+     * @param depths The depth of every index.
+     * @param count The number of indexes to sort.
+     * @param scratch A work array of count ints.
+     * @param order The array to write the sorted indexes in.
+     */
+    public static void sortByDepth(float[] depths, int count, int[] scratch, int[] order){
+        for(int i=0;i<count;i++){
+            order[i] = i;
+        }
+        for(int start=0;start<count;start+=RUN_LENGTH){
+            insertionSort(depths,order,start,Math.min(start+RUN_LENGTH,count));
+        }
+        int[] from = order;
+        int[] to = scratch;
+        int[] swap;
+        for(int width=RUN_LENGTH;width<count;width*=2){
+            for(int start=0;start<count;start+=2*width){
+                merge(depths,from,to,start,Math.min(start+width,count),Math.min(start+2*width,count));
+            }
+            swap = from;
+            from = to;
+            to = swap;
+        }
+        if(from!=order){
+            System.arraycopy(from,0,order,0,count);
+        }
+    }
+
+    private static void insertionSort(float[] depths, int[] order, int start, int end){
+        int index, j;
+        float depth;
+        for(int i=start+1;i<end;i++){
+            index = order[i];
+            depth = depths[index];
+            j = i-1;
+            while(j>=start&&depths[order[j]]>depth){
+                order[j+1] = order[j];
+                j--;
+            }
+            order[j+1] = index;
+        }
+    }
+
+    /**
+     * Merge the sorted ranges [start, middle) and [middle, end) of from into the same range of to.
+     */
+    private static void merge(float[] depths, int[] from, int[] to, int start, int middle, int end){
+        if(middle>=end||depths[from[middle-1]]<=depths[from[middle]]){
+            //Already in order, e.g. the ranges of a design listed from back to front.
+            System.arraycopy(from,start,to,start,end-start);
+            return;
+        }
+        int left = start;
+        int right = middle;
+        for(int i=start;i<end;i++){
+            //Take the left one on a tie, so the sort stays stable.
+            if(right>=end||(left<middle&&depths[from[left]]<=depths[from[right]])){
+                to[i] = from[left++];
+            }else {
+                to[i] = from[right++];
+            }
+        }
+    }
+
+    /**
+     * @return The length of the work array of {@link #sortByDepth(float[], int[], int, int[], int[])}.
+     */
+    public static int treeWorkLength(int count){
+        return 3*count+2;
+    }
+
+    /**
+     * Fill the order of a flattened tree of canvases. An index is placed right after its parent, and before<br/>
+     * the next sibling of its parent, so every canvas keeps its children between itself and its next sibling.<br/>
+     * Siblings are sorted from back to front, stable. The sorted indexes are grouped by parent with a counting<br/>
+     * sort, so the tree is walked in linear time. Nothing is allocated.
+     * @param depths The depth of every index.
+     * @param parents The parent of every index, or -1 if it's a root.
+     * @param count The number of indexes to sort.
+     * @param work A work array of {@link #treeWorkLength(int)} ints.
+     * @param order The array to write the sorted indexes in.
+     */
+    public static void sortByDepth(float[] depths, int[] parents, int count, int[] work, int[] order){
+        //The work array holds the sorted indexes, then the indexes grouped by parent, then the group ends.
+        sortByDepth(depths,count,order,work);
+        int children = count;
+        int ends = 2*count;
+        //The group of an index's children is the index+1, the roots are group 0.
+        for(int group=0;group<=count+1;group++){
+            work[ends+group] = 0;
+        }
+        for(int i=0;i<count;i++){
+            work[ends+parents[i]+2]++;
+        }
+        for(int group=1;group<=count+1;group++){
+            work[ends+group] += work[ends+group-1];
+        }
+        //Each group starts where the previous one ends, so after this the group's slot holds its end.
+        int index;
+        for(int i=0;i<count;i++){
+            index = work[i];
+            work[children+work[ends+parents[index]+1]++] = index;
+        }
+        appendChildren(work,children,ends,order,0,0);
+    }
+
+    private static int appendChildren(int[] work, int children, int ends, int[] order, int group, int position){
+        int index;
+        int end = work[ends+group];
+        for(int i=group>0?work[ends+group-1]:0;i<end;i++){
+            index = work[children+i];
+            order[position++] = index;
+            position = appendChildren(work,children,ends,order,index+1,position);
+        }
+        return position;
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright 2016 YuHao-KitPies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitpies.canvaslayout.geometry;
+
+/**
+ * The computed layout of a canvas design for a pair of measure specs: the children rects and the canvas size.<br/>
+ * A plan is never changed after it's created, so it can be shared between canvases and threads.
+ */
+public final class LayoutPlan {
+
+    private final int[] mRects;
+    private final int mCount;
+    private final int mMeasuredWidth;
+    private final int mMeasuredHeight;
+
+    /**
+     * @param rects The flat rect array of the children, the first count rects are copied.
+     */
+    public LayoutPlan(int[] rects, int count, int measuredWidth, int measuredHeight){
+        mCount = count;
+        mRects = new int[count*CanvasGeometry.RECT_STRIDE];
+        System.arraycopy(rects,0,mRects,0,mRects.length);
+        mMeasuredWidth = measuredWidth;
+        mMeasuredHeight = measuredHeight;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public int getMeasuredWidth() {
+        return mMeasuredWidth;
+    }
+
+    public int getMeasuredHeight() {
+        return mMeasuredHeight;
+    }
+
+    /**
+     * Copy the children rects into a flat rect array.
+     */
+    public void copyRectsTo(int[] rects){
+        System.arraycopy(mRects,0,rects,0,mRects.length);
+    }
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright 2016 YuHao-KitPies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitpies.canvaslayout.geometry;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded LRU cache of {@link LayoutPlan}s, shared by canvases with the same design.<br/>
+ * A plan is keyed by the design fingerprint (the canvas design size and the children specs) and the<br/>
+ * measure specs. Looking up a plan doesn't allocate. All the methods are thread safe.
+ */
+public final class LayoutPlanCache {
+
+    public static final int DEFAULT_MAX_SIZE = 32;
+
+    private static LayoutPlanCache sDefault;
+
+    private final LinkedHashMap<Key,LayoutPlan> mPlans;
+    private final Key mProbe = new Key();
+    private int mMaxSize;
+    private int mHitCount;
+    private int mMissCount;
+
+    /**
+     * @return The process wide cache.
+     */
+    public static synchronized LayoutPlanCache getDefault(){
+        if(sDefault==null){
+            sDefault = new LayoutPlanCache(DEFAULT_MAX_SIZE);
+        }
+        return sDefault;
+    }
+
+    public LayoutPlanCache(int maxSize){
+        if(maxSize<=0){
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+        mPlans = new LinkedHashMap<Key,LayoutPlan>(16,0.75f,true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, LayoutPlan> eldest) {
+                return size()>mMaxSize;
+            }
+        };
+    }
+
+    /**
+     * @param specs The flat spec array of the children, see {@link CanvasGeometry}.
+     * @return The cached plan, or null.
+     */
+    public synchronized LayoutPlan get(int designWidth, int designHeight, int widthMeasureSpec, int heightMeasureSpec, int[] specs, int count){
+        mProbe.set(designWidth,designHeight,widthMeasureSpec,heightMeasureSpec,specs,count);
+        LayoutPlan plan = mPlans.get(mProbe);
+        mProbe.mSpecs = null;
+        if(plan!=null){
+            mHitCount++;
+        }else {
+            mMissCount++;
+        }
+        return plan;
+    }
+
+    /**
+     * Cache a plan. The specs are copied, so the array can be reused after that.
+     */
+    public synchronized void put(int designWidth, int designHeight, int widthMeasureSpec, int heightMeasureSpec, int[] specs, int count, LayoutPlan plan){
+        Key key = new Key();
+        int[] copy = new int[count*CanvasGeometry.SPEC_STRIDE];
+        System.arraycopy(specs,0,copy,0,copy.length);
+        key.set(designWidth,designHeight,widthMeasureSpec,heightMeasureSpec,copy,count);
+        mPlans.put(key,plan);
+    }
+
+    /**
+     * Compute the plan and cache it, unless it's cached already. It's meant to be called on a worker thread<br/>
+     * ahead of time, e.g. for the next rows of a list or the other orientation, so the measure pass only<br/>
+     * has to look the plan up. The cache isn't locked while computing, and the hit and miss counts don't change.
+     * @param specs The flat spec array of the children, it mustn't be changed while computing.
+     * @return The plan.
+     */
+    public LayoutPlan precompute(int designWidth, int designHeight, int widthMeasureSpec, int heightMeasureSpec, int[] specs, int count){
+        synchronized (this){
+            mProbe.set(designWidth,designHeight,widthMeasureSpec,heightMeasureSpec,specs,count);
+            LayoutPlan plan = mPlans.get(mProbe);
+            mProbe.mSpecs = null;
+            if(plan!=null){
+                return plan;
+            }
+        }
+        CanvasGeometry geometry = new CanvasGeometry();
+        geometry.setDesignSize(designWidth,designHeight);
+        geometry.resolve(CanvasGeometry.getMode(widthMeasureSpec),CanvasGeometry.getSize(widthMeasureSpec),
+                CanvasGeometry.getMode(heightMeasureSpec),CanvasGeometry.getSize(heightMeasureSpec));
+        return compute(geometry,widthMeasureSpec,heightMeasureSpec,specs,count,new int[count*CanvasGeometry.RECT_STRIDE]);
+    }
+
+    /**
+     * Compute the plan with a geometry resolved for the measure specs and cache it. Both the measure pass and<br/>
+     * {@link #precompute} compute their plans here, so the size of a canvas which follows its children is the same.
+     * @param rects The flat rect array the children rects are computed into.
+     * @return The plan.
+     */
+    public LayoutPlan compute(CanvasGeometry geometry, int widthMeasureSpec, int heightMeasureSpec, int[] specs, int count, int[] rects){
+        geometry.computeRects(specs,count,rects);
+        LayoutPlan plan = new LayoutPlan(rects,count,geometry.getMeasuredWidth(),geometry.getMeasuredHeight());
+        put(geometry.getDesignWidth(),geometry.getDesignHeight(),widthMeasureSpec,heightMeasureSpec,specs,count,plan);
+        return plan;
+    }
+
+    public synchronized int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Change the max number of plans, the least recently used plans are dropped if there are too many.
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        if(maxSize<=0){
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+        Iterator<Key> iterator = mPlans.keySet().iterator();
+        while(mPlans.size()>mMaxSize&&iterator.hasNext()){
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    public synchronized int size(){
+        return mPlans.size();
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Drop every plan and reset the counters.
+     */
+    public synchronized void clear(){
+        mPlans.clear();
+        mHitCount = 0;
+        mMissCount = 0;
+    }
+
+    private static final class Key {
+
+        private int mDesignWidth, mDesignHeight;
+        private int mWidthMeasureSpec, mHeightMeasureSpec;
+        private int[] mSpecs;
+        private int mCount;
+        private int mHash;
+
+        void set(int designWidth, int designHeight, int widthMeasureSpec, int heightMeasureSpec, int[] specs, int count){
+            mDesignWidth = designWidth;
+            mDesignHeight = designHeight;
+            mWidthMeasureSpec = widthMeasureSpec;
+            mHeightMeasureSpec = heightMeasureSpec;
+            mSpecs = specs;
+            mCount = count;
+            int hash = designWidth;
+            hash = 31*hash+designHeight;
+            hash = 31*hash+widthMeasureSpec;
+            hash = 31*hash+heightMeasureSpec;
+            hash = 31*hash+count;
+            int length = count*CanvasGeometry.SPEC_STRIDE;
+            for(int i=0;i<length;i++){
+                hash = 31*hash+specs[i];
+            }
+            mHash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this==o)return true;
+            if(!(o instanceof Key))return false;
+            Key key = (Key) o;
+            if(mHash!=key.mHash||mCount!=key.mCount
+                    ||mDesignWidth!=key.mDesignWidth||mDesignHeight!=key.mDesignHeight
+                    ||mWidthMeasureSpec!=key.mWidthMeasureSpec||mHeightMeasureSpec!=key.mHeightMeasureSpec){
+                return false;
+            }
+            int length = mCount*CanvasGeometry.SPEC_STRIDE;
+            for(int i=0;i<length;i++){
+                if(mSpecs[i]!=key.mSpecs[i])return false;
+            }
+            return true;
+        }
+    }
+}
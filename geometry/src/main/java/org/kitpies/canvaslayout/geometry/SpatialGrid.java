@@ -0,0 +1,213 @@
+/**
+ * Copyright 2016 YuHao-KitPies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitpies.canvaslayout.geometry;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid of rects, to find the rects under a point or in an area without visiting all of them.<br/>
+ * The items are identified by their index. Updating an item only touches the cells of its old and new rect,<br/>
+ * and an item whose rect didn't change isn't touched at all. Nothing is allocated once the cells grew.<br/>
+ * Rects outside the extent of the grid are kept in the border cells, so the queries are always exact.
+ */
+public final class SpatialGrid {
+
+    public static final int MAX_CELLS_PER_AXIS = 32;
+
+    private int mColumns = 1;
+    private int mRows = 1;
+    private int mCellWidth = 1;
+    private int mCellHeight = 1;
+    //The items of every cell, unordered.
+    private int[][] mCells = {new int[4]};
+    private int[] mCellSizes = new int[1];
+    //The rect of every item, empty if the item isn't in the grid.
+    private int[] mRects = new int[0];
+    private int mCount;
+    //The last area query which visited every item, so an item in several cells is only found once.
+    private int[] mQueryMarks = new int[0];
+    private int mQueryMark;
+
+    /**
+     * Remove every item and split the extent into cells for the expected number of items.
+     */
+    public void reset(int width, int height, int count){
+        int cells = (int) Math.ceil(Math.sqrt(Math.max(count,1)));
+        cells = Math.min(cells,MAX_CELLS_PER_AXIS);
+        mColumns = cells;
+        mRows = cells;
+        mCellWidth = Math.max(1,(width+cells-1)/cells);
+        mCellHeight = Math.max(1,(height+cells-1)/cells);
+        int size = mColumns*mRows;
+        if(mCells.length<size){
+            int[][] grown = Arrays.copyOf(mCells,size);
+            for(int i=mCells.length;i<size;i++){
+                grown[i] = new int[4];
+            }
+            mCells = grown;
+            mCellSizes = new int[size];
+        }else {
+            Arrays.fill(mCellSizes,0);
+        }
+        if(mRects.length<count*CanvasGeometry.RECT_STRIDE){
+            mRects = new int[count*CanvasGeometry.RECT_STRIDE];
+        }else {
+            Arrays.fill(mRects,0);
+        }
+        if(mQueryMarks.length<count){
+            mQueryMarks = new int[count];
+        }
+        mCount = count;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Move an item to a new rect. An empty rect removes the item from the grid.
+     */
+    public void update(int item, int left, int top, int right, int bottom){
+        int offset = item*CanvasGeometry.RECT_STRIDE;
+        if(mRects[offset+CanvasGeometry.RECT_LEFT]==left&&mRects[offset+CanvasGeometry.RECT_TOP]==top
+                &&mRects[offset+CanvasGeometry.RECT_RIGHT]==right&&mRects[offset+CanvasGeometry.RECT_BOTTOM]==bottom){
+            return;
+        }
+        if(!isEmpty(offset)){
+            forEachCell(item,offset,false);
+        }
+        mRects[offset+CanvasGeometry.RECT_LEFT] = left;
+        mRects[offset+CanvasGeometry.RECT_TOP] = top;
+        mRects[offset+CanvasGeometry.RECT_RIGHT] = right;
+        mRects[offset+CanvasGeometry.RECT_BOTTOM] = bottom;
+        if(!isEmpty(offset)){
+            forEachCell(item,offset,true);
+        }
+    }
+
+    /**
+     * Find the items whose rect contains the point, the right and bottom edges are excluded.
+     * @param out It has to be able to hold every item.
+     * @return The number of items written into out, in no particular order.
+     */
+    public int query(int x, int y, int[] out){
+        int cell = row(y)*mColumns+column(x);
+        int[] items = mCells[cell];
+        int size = mCellSizes[cell];
+        int found = 0;
+        int item, offset;
+        for(int i=0;i<size;i++){
+            item = items[i];
+            offset = item*CanvasGeometry.RECT_STRIDE;
+            if(x>=mRects[offset+CanvasGeometry.RECT_LEFT]&&x<mRects[offset+CanvasGeometry.RECT_RIGHT]
+                    &&y>=mRects[offset+CanvasGeometry.RECT_TOP]&&y<mRects[offset+CanvasGeometry.RECT_BOTTOM]){
+                out[found++] = item;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Find the items whose rect intersects the area, like {@code Rect.intersects()}. An empty area finds nothing.
+     * @param out It has to be able to hold every item.
+     * @return The number of items written into out, in no particular order.
+     */
+    public int query(int left, int top, int right, int bottom, int[] out){
+        if(right<=left||bottom<=top)return 0;
+        if(++mQueryMark==0){
+            Arrays.fill(mQueryMarks,0);
+            mQueryMark = 1;
+        }
+        int lastColumn = column(right-1);
+        int lastRow = row(bottom-1);
+        int found = 0;
+        int cell, size, item, offset;
+        int[] items;
+        for(int row=row(top);row<=lastRow;row++){
+            for(int column=column(left);column<=lastColumn;column++){
+                cell = row*mColumns+column;
+                items = mCells[cell];
+                size = mCellSizes[cell];
+                for(int i=0;i<size;i++){
+                    item = items[i];
+                    if(mQueryMarks[item]==mQueryMark)continue;
+                    mQueryMarks[item] = mQueryMark;
+                    offset = item*CanvasGeometry.RECT_STRIDE;
+                    if(left<mRects[offset+CanvasGeometry.RECT_RIGHT]&&mRects[offset+CanvasGeometry.RECT_LEFT]<right
+                            &&top<mRects[offset+CanvasGeometry.RECT_BOTTOM]&&mRects[offset+CanvasGeometry.RECT_TOP]<bottom){
+                        out[found++] = item;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private boolean isEmpty(int offset){
+        return mRects[offset+CanvasGeometry.RECT_RIGHT]<=mRects[offset+CanvasGeometry.RECT_LEFT]
+                ||mRects[offset+CanvasGeometry.RECT_BOTTOM]<=mRects[offset+CanvasGeometry.RECT_TOP];
+    }
+
+    private void forEachCell(int item, int offset, boolean add){
+        int firstColumn = column(mRects[offset+CanvasGeometry.RECT_LEFT]);
+        int lastColumn = column(mRects[offset+CanvasGeometry.RECT_RIGHT]-1);
+        int firstRow = row(mRects[offset+CanvasGeometry.RECT_TOP]);
+        int lastRow = row(mRects[offset+CanvasGeometry.RECT_BOTTOM]-1);
+        for(int row=firstRow;row<=lastRow;row++){
+            for(int column=firstColumn;column<=lastColumn;column++){
+                if(add){
+                    add(row*mColumns+column,item);
+                }else {
+                    remove(row*mColumns+column,item);
+                }
+            }
+        }
+    }
+
+    private void add(int cell, int item){
+        int size = mCellSizes[cell];
+        if(size==mCells[cell].length){
+            mCells[cell] = Arrays.copyOf(mCells[cell],size*2);
+        }
+        mCells[cell][size] = item;
+        mCellSizes[cell] = size+1;
+    }
+
+    private void remove(int cell, int item){
+        int[] items = mCells[cell];
+        int size = mCellSizes[cell];
+        for(int i=0;i<size;i++){
+            if(items[i]==item){
+                items[i] = items[size-1];
+                mCellSizes[cell] = size-1;
+                return;
+            }
+        }
+    }
+
+    private int column(int x){
+        return Math.max(0,Math.min(mColumns-1,floorDiv(x,mCellWidth)));
+    }
+
+    private int row(int y){
+        return Math.max(0,Math.min(mRows-1,floorDiv(y,mCellHeight)));
+    }
+
+    private static int floorDiv(int a, int b){
+        int q = a/b;
+        return (a%b!=0&&a<0)?q-1:q;
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2016 YuHao-KitPies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kitpies.canvaslayout.geometry;
+
+/**
+ * The math of the tiles a large canvas is rendered into. At zoom level L the canvas is rendered at the scale<br/>
+ * 2^L, and split into square tiles of a fixed size in pixels of that scale, so a tile covers tileSize/2^L<br/>
+ * pixels of the canvas. A tile is identified by its level, column and row packed into a long key.
+ */
+public final class TileGrid {
+
+    //The bits of the column and of the row in a key, the level takes the rest.
+    private static final int INDEX_BITS = 28;
+    private static final long INDEX_MASK = (1L<<INDEX_BITS)-1;
+    private static final int LEVEL_OFFSET = 128;
+
+    private TileGrid() {
+    }
+
+    /**
+     * @param scale The scale the canvas is shown at.
+     * @return The lowest level whose scale isn't below the scale, so the tiles never look blurred.
+     */
+    public static int zoomLevel(float scale, int minLevel, int maxLevel){
+        int level = minLevel;
+        while(level<maxLevel&&levelScale(level)<scale){
+            level++;
+        }
+        return level;
+    }
+
+    public static float levelScale(int level){
+        return (float) Math.pow(2,level);
+    }
+
+    public static long key(int level, int column, int row){
+        return ((long) (level+LEVEL_OFFSET)<<(2*INDEX_BITS))|((column&INDEX_MASK)<<INDEX_BITS)|(row&INDEX_MASK);
+    }
+
+    public static int levelOf(long key){
+        return (int) (key>>>(2*INDEX_BITS))-LEVEL_OFFSET;
+    }
+
+    public static int columnOf(long key){
+        return (int) ((key>>>INDEX_BITS)&INDEX_MASK);
+    }
+
+    public static int rowOf(long key){
+        return (int) (key&INDEX_MASK);
+    }
+
+    /**
+     * @return The position of the tile's left or top edge in pixels of the canvas.
+     */
+    public static float tileStart(int index, int level, int tileSize){
+        return index*tileSize/levelScale(level);
+    }
+
+    /**
+     * Find the tiles a rect of the canvas touches, the rect is clamped to the positive quadrant.
+     * @param out The first column, the first row, the last column and the last row, inclusive.
+     * @return Whether the rect touches any tile.
+     */
+    public static boolean range(int left, int top, int right, int bottom, int level, int tileSize, int[] out){
+        left = Math.max(0,left);
+        top = Math.max(0,top);
+        if(right<=left||bottom<=top){
+            return false;
+        }
+        float span = tileSize/levelScale(level);
+        out[0] = (int) (left/span);
+        out[1] = (int) (top/span);
+        out[2] = (int) Math.ceil(right/span)-1;
+        out[3] = (int) Math.ceil(bottom/span)-1;
+        return true;
+    }
+}
@@ -0,0 +1,83 @@
+package org.kitpies.canvaslayout.geometry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the scaling math of the canvas layout.
+ */
+public class CanvasGeometryTest {
+
+    private static int[] spec(int x, int y, int width, int height, int xMode, int yMode, int widthMode, int heightMode){
+        return new int[]{x,y,width,height,xMode,yMode,widthMode,heightMode};
+    }
+
+    @Test
+    public void exactly_virtualWindowIsCentered() throws Exception {
+        CanvasGeometry geometry = new CanvasGeometry();
+        geometry.setDesignSize(100,100);
+        int[] specs = spec(0,0,50,50,CanvasGeometry.VIRTUAL_DESIGN_MODE,CanvasGeometry.VIRTUAL_DESIGN_MODE,
+                CanvasGeometry.VIRTUAL_DESIGN_MODE,CanvasGeometry.VIRTUAL_DESIGN_MODE);
+        int[] rects = new int[CanvasGeometry.RECT_STRIDE];
+        geometry.measure(CanvasGeometry.EXACTLY,400,CanvasGeometry.EXACTLY,200,specs,1,rects);
+
+        assertEquals(2f,geometry.getVirtualXS(),0f);
+        assertEquals(100,geometry.getVirtualXPadding());
+        assertArrayEquals(new int[]{100,0,200,100},rects);
+        assertEquals(400,geometry.getMeasuredWidth());
+        assertEquals(200,geometry.getMeasuredHeight());
+    }
+
+    @Test
+    public void exactly_stretchWindowFillsTheCanvas() throws Exception {
+        CanvasGeometry geometry = new CanvasGeometry();
+        geometry.setDesignSize(100,100);
+        int[] specs = spec(50,50,50,50,CanvasGeometry.STRETCH_DESIGN_MODE,CanvasGeometry.STRETCH_DESIGN_MODE,
+                CanvasGeometry.STRETCH_DESIGN_MODE,CanvasGeometry.STRETCH_DESIGN_MODE);
+        int[] rects = new int[CanvasGeometry.RECT_STRIDE];
+        geometry.measure(CanvasGeometry.EXACTLY,400,CanvasGeometry.EXACTLY,200,specs,1,rects);
+
+        assertArrayEquals(new int[]{200,100,400,200},rects);
+    }
+
+    @Test
+    public void exactlyWidth_unspecifiedHeight_followsDesignAspectRatio() throws Exception {
+        CanvasGeometry geometry = new CanvasGeometry();
+        geometry.setDesignSize(100,50);
+        int[] specs = spec(0,0,100,50,0,0,0,0);
+        int[] rects = new int[CanvasGeometry.RECT_STRIDE];
+        geometry.measure(CanvasGeometry.EXACTLY,300,CanvasGeometry.UNSPECIFIED,0,specs,1,rects);
+
+        assertEquals(300,geometry.getMeasuredWidth());
+        assertEquals(150,geometry.getMeasuredHeight());
+        assertArrayEquals(new int[]{0,0,300,150},rects);
+    }
+
+    @Test
+    public void atMostHeight_withoutDesignSize_followsChildren() throws Exception {
+        CanvasGeometry geometry = new CanvasGeometry();
+        geometry.setDesignSize(100,0);
+        int[] specs = spec(0,0,100,80,0,0,0,0);
+        int[] rects = new int[CanvasGeometry.RECT_STRIDE];
+        geometry.measure(CanvasGeometry.EXACTLY,200,CanvasGeometry.AT_MOST,300,specs,1,rects);
+
+        assertEquals(200,geometry.getMeasuredWidth());
+        assertEquals(0,geometry.getMeasuredHeight(0));
+        assertEquals(120,geometry.getMeasuredHeight(120));
+        assertEquals(300,geometry.getMeasuredHeight(500));
+    }
+
+    @Test
+    public void unspecified_usesDesignSize() throws Exception {
+        CanvasGeometry geometry = new CanvasGeometry();
+        geometry.setDesignSize(120,80);
+        int[] specs = spec(10,20,30,40,0,0,0,0);
+        int[] rects = new int[CanvasGeometry.RECT_STRIDE];
+        geometry.measure(CanvasGeometry.UNSPECIFIED,0,CanvasGeometry.UNSPECIFIED,0,specs,1,rects);
+
+        assertEquals(120,geometry.getMeasuredWidth());
+        assertEquals(80,geometry.getMeasuredHeight());
+        assertArrayEquals(new int[]{10,20,40,60},rects);
+    }
+}
@@ -0,0 +1,106 @@
+package org.kitpies.canvaslayout.geometry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the packed store of the children specs and rects.
+ */
+public class ChildStoreTest {
+
+    private static void setSpec(ChildStore store, int slot, int x, int y, int width, int height){
+        int[] specs = store.getSpecs();
+        int offset = slot*CanvasGeometry.SPEC_STRIDE;
+        specs[offset+CanvasGeometry.SPEC_DESIGN_X] = x;
+        specs[offset+CanvasGeometry.SPEC_DESIGN_Y] = y;
+        specs[offset+CanvasGeometry.SPEC_DESIGN_WIDTH] = width;
+        specs[offset+CanvasGeometry.SPEC_DESIGN_HEIGHT] = height;
+        store.markDirty(slot);
+    }
+
+    @Test
+    public void computeRects_onlyComputesDirtySlots() throws Exception {
+        CanvasGeometry geometry = new CanvasGeometry();
+        geometry.setDesignSize(100,100);
+        geometry.resolve(CanvasGeometry.EXACTLY,200,CanvasGeometry.EXACTLY,200);
+        ChildStore store = new ChildStore();
+        store.setCount(2);
+        setSpec(store,0,0,0,10,10);
+        setSpec(store,1,50,50,10,10);
+        store.computeRects(geometry,false);
+        store.clearDirty();
+        assertEquals(0,store.getDirtyCount());
+
+        //The spec of slot 0 changes without marking it, so its rect isn't computed again.
+        store.getSpecs()[CanvasGeometry.SPEC_DESIGN_X] = 20;
+        setSpec(store,1,60,60,10,10);
+        store.computeRects(geometry,false);
+
+        int[] rects = store.getRects();
+        assertEquals(0,rects[CanvasGeometry.RECT_LEFT]);
+        assertEquals(120,rects[CanvasGeometry.RECT_STRIDE+CanvasGeometry.RECT_LEFT]);
+
+        store.computeRects(geometry,true);
+        assertEquals(40,rects[CanvasGeometry.RECT_LEFT]);
+    }
+
+    @Test
+    public void setCount_addsDirtySlotsAndDropsRemovedOnes() throws Exception {
+        ChildStore store = new ChildStore();
+        store.setCount(3);
+        assertEquals(3,store.getDirtyCount());
+        store.clearDirty();
+
+        store.setCount(5);
+        assertTrue(store.isDirty(4));
+        store.setCount(1);
+        assertEquals(0,store.getDirtyCount());
+        assertEquals(1,store.getCount());
+    }
+
+    @Test
+    public void version_changesWithEverySpecOrCountChange() throws Exception {
+        ChildStore store = new ChildStore();
+        store.setCount(2);
+        int version = store.getVersion();
+        store.clearDirty();
+        store.setCount(2);
+        assertEquals(version,store.getVersion());
+
+        //A dirty slot is written again.
+        setSpec(store,1,0,0,10,10);
+        setSpec(store,1,0,0,20,10);
+        assertEquals(version+2,store.getVersion());
+        store.markSpecChanged();
+        store.setCount(1);
+        assertEquals(version+4,store.getVersion());
+    }
+
+    @Test
+    public void isMeasured_untilTheRectOrTheSpecChanges() throws Exception {
+        CanvasGeometry geometry = new CanvasGeometry();
+        geometry.setDesignSize(100,100);
+        geometry.resolve(CanvasGeometry.EXACTLY,200,CanvasGeometry.EXACTLY,200);
+        ChildStore store = new ChildStore();
+        store.setCount(2);
+        setSpec(store,0,0,0,10,10);
+        setSpec(store,1,50,50,10,10);
+        store.computeRects(geometry,false);
+        assertFalse(store.isMeasured(0));
+        store.markMeasured(0);
+        store.markMeasured(1);
+        assertTrue(store.isMeasured(0));
+        assertEquals(0,store.getDirtyCount());
+
+        setSpec(store,1,50,50,10,10);
+        assertFalse(store.isMeasured(1));
+        store.markMeasured(1);
+
+        //The scaling changed, every rect is computed again.
+        geometry.resolve(CanvasGeometry.EXACTLY,100,CanvasGeometry.EXACTLY,100);
+        store.computeRects(geometry,true);
+        assertFalse(store.isMeasured(0));
+        assertFalse(store.isMeasured(1));
+    }
+}
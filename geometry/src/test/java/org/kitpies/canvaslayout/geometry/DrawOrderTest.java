@@ -0,0 +1,100 @@
+package org.kitpies.canvaslayout.geometry;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the z-axis order of the children.
+ */
+public class DrawOrderTest {
+
+    @Test
+    public void sortByDepth_isStable() throws Exception {
+        float[] depths = {5,0,5,-1,0};
+        int[] order = new int[depths.length];
+        DrawOrder.sortByDepth(depths,depths.length,new int[depths.length],order);
+
+        assertArrayEquals(new int[]{3,1,4,0,2},order);
+    }
+
+    @Test
+    public void sortByDepth_largeDesignsAreSortedAndStable() throws Exception {
+        Random random = new Random(3);
+        for(int count:new int[]{1,15,16,17,100,1000}){
+            float[] reversed = new float[count];
+            float[] layered = new float[count];
+            for(int i=0;i<count;i++){
+                reversed[i] = count-i;
+                layered[i] = random.nextInt(4);
+            }
+            for(float[] depths:new float[][]{reversed,layered}){
+                int[] order = new int[count];
+                DrawOrder.sortByDepth(depths,count,new int[count],order);
+                for(int i=1;i<count;i++){
+                    float previous = depths[order[i-1]];
+                    assertTrue(previous<depths[order[i]]||(previous==depths[order[i]]&&order[i-1]<order[i]));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sortByDepth_keepsChildrenWithTheirParent() throws Exception {
+        //0 and 3 are roots, 1 and 2 are the children of 0, 4 is the child of 2.
+        float[] depths = {10,99,-5,0,0};
+        int[] parents = {-1,0,0,-1,2};
+        int[] work = new int[DrawOrder.treeWorkLength(depths.length)];
+        int[] order = new int[depths.length];
+        DrawOrder.sortByDepth(depths,parents,depths.length,work,order);
+
+        assertArrayEquals(new int[]{3,0,2,4,1},order);
+    }
+
+    @Test
+    public void sortByDepth_largeTreeKeepsEverySubtreeTogether() throws Exception {
+        Random random = new Random(7);
+        int count = 2000;
+        float[] depths = new float[count];
+        int[] parents = new int[count];
+        for(int i=0;i<count;i++){
+            depths[i] = random.nextInt(5);
+            //A parent always comes before its children, like a frame before its former children.
+            parents[i] = i<50?-1:random.nextInt(i);
+        }
+        int[] order = new int[count];
+        DrawOrder.sortByDepth(depths,parents,count,new int[DrawOrder.treeWorkLength(count)],order);
+
+        int[] ranks = new int[count];
+        boolean[] seen = new boolean[count];
+        for(int i=0;i<count;i++){
+            assertFalse(seen[order[i]]);
+            seen[order[i]] = true;
+            ranks[order[i]] = i;
+        }
+        int[] sizes = new int[count];
+        for(int i=count-1;i>=0;i--){
+            sizes[i]++;
+            if(parents[i]>=0){
+                sizes[parents[i]] += sizes[i];
+            }
+        }
+        for(int i=0;i<count;i++){
+            //A subtree takes the positions right after its root.
+            int parent = parents[i];
+            if(parent>=0){
+                assertTrue(ranks[i]>ranks[parent]&&ranks[i]+sizes[i]<=ranks[parent]+sizes[parent]);
+            }
+        }
+        for(int i=0;i<count;i++){
+            for(int j=i+1;j<count;j++){
+                if(parents[i]==parents[j]){
+                    //Siblings are sorted by depth, stable.
+                    assertEquals(depths[i]<=depths[j],ranks[i]<ranks[j]);
+                }
+            }
+        }
+    }
+}
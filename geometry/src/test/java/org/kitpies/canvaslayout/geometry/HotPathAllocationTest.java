@@ -0,0 +1,95 @@
+package org.kitpies.canvaslayout.geometry;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+/**
+ * Tests that a measure and layout pass of the canvas layout doesn't allocate once it reached a steady state.
+ */
+public class HotPathAllocationTest {
+
+    private static final int CHILD_COUNT = 200;
+    private static final int WARM_UP_PASSES = 20000;
+    private static final int PASSES = 10000;
+
+    private final CanvasGeometry mGeometry = new CanvasGeometry();
+    private final LayoutPlanCache mCache = new LayoutPlanCache(4);
+    private final SpatialGrid mGrid = new SpatialGrid();
+    private final int[] mSpecs = new int[CHILD_COUNT*CanvasGeometry.SPEC_STRIDE];
+    private final int[] mRects = new int[CHILD_COUNT*CanvasGeometry.RECT_STRIDE];
+    private final float[] mDepths = new float[CHILD_COUNT];
+    private final int[] mParents = new int[CHILD_COUNT];
+    private final int[] mSorted = new int[DrawOrder.treeWorkLength(CHILD_COUNT)];
+    private final int[] mOrder = new int[CHILD_COUNT];
+    private final int[] mCandidates = new int[CHILD_COUNT];
+    private int mSink;
+
+    /**
+     * The work of CanvasLayout.onMeasure and onLayout: resolve the scaling, look up the shared plan,<br/>
+     * compute the children rects, sort the children by layout_zDepth and update the touch index.
+     */
+    private void pass(int i){
+        int width = 300+(i&7);
+        mGeometry.setDesignSize(100,100);
+        mGeometry.resolve(CanvasGeometry.EXACTLY,width,CanvasGeometry.AT_MOST,1000);
+        LayoutPlan plan = mCache.get(100,100,width,1000,mSpecs,CHILD_COUNT);
+        if(plan!=null){
+            plan.copyRectsTo(mRects);
+        }
+        mGeometry.computeRects(mSpecs,CHILD_COUNT,mRects);
+        mSink += mGeometry.getMeasuredWidth(mGeometry.getContentRight())+mGeometry.getMeasuredHeight(mGeometry.getContentBottom());
+        DrawOrder.sortByDepth(mDepths,CHILD_COUNT,mSorted,mOrder);
+        DrawOrder.sortByDepth(mDepths,mParents,CHILD_COUNT,mSorted,mOrder);
+        for(int j=0;j<CHILD_COUNT;j++){
+            int offset = j*CanvasGeometry.RECT_STRIDE;
+            mGrid.update(j,mRects[offset],mRects[offset+1],mRects[offset+2],mRects[offset+3]);
+        }
+        mSink += mGrid.query(i%width,i%width,mCandidates);
+    }
+
+    @Test
+    public void steadyStatePass_allocatesNothing() throws Exception {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        Random random = new Random(7);
+        for(int i=0;i<CHILD_COUNT;i++){
+            int offset = i*CanvasGeometry.SPEC_STRIDE;
+            mSpecs[offset+CanvasGeometry.SPEC_DESIGN_X] = random.nextInt(90);
+            mSpecs[offset+CanvasGeometry.SPEC_DESIGN_Y] = random.nextInt(90);
+            mSpecs[offset+CanvasGeometry.SPEC_DESIGN_WIDTH] = 1+random.nextInt(10);
+            mSpecs[offset+CanvasGeometry.SPEC_DESIGN_HEIGHT] = 1+random.nextInt(10);
+            mSpecs[offset+CanvasGeometry.SPEC_WIDTH_SCALING_MODE] = random.nextInt(2);
+            mDepths[i] = random.nextInt(5);
+            mParents[i] = i%10==0?-1:i-i%10;
+        }
+        mGeometry.setDesignSize(100,100);
+        mGeometry.resolve(CanvasGeometry.EXACTLY,300,CanvasGeometry.AT_MOST,1000);
+        mGeometry.computeRects(mSpecs,CHILD_COUNT,mRects);
+        mCache.put(100,100,300,1000,mSpecs,CHILD_COUNT,new LayoutPlan(mRects,CHILD_COUNT,300,300));
+        mGrid.reset(300,300,CHILD_COUNT);
+
+        for(int i=0;i<WARM_UP_PASSES;i++){
+            pass(i);
+        }
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for(int i=0;i<PASSES;i++){
+            pass(i);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread)-before;
+
+        //Reading the counter may allocate a little by itself, but not once per pass.
+        assertTrue("allocated "+allocated+" bytes in "+PASSES+" passes",allocated<PASSES);
+        assertTrue(mSink!=0);
+    }
+}
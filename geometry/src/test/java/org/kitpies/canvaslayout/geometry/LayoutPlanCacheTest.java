@@ -0,0 +1,89 @@
+package org.kitpies.canvaslayout.geometry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the shared layout plan cache.
+ */
+public class LayoutPlanCacheTest {
+
+    private static final int EXACTLY_400 = CanvasGeometry.EXACTLY|400;
+
+    private static LayoutPlan plan(int width){
+        return new LayoutPlan(new int[]{0,0,width,width},1,width,width);
+    }
+
+    @Test
+    public void get_sameDesign_hits() throws Exception {
+        LayoutPlanCache cache = new LayoutPlanCache(4);
+        int[] specs = {1,2,3,4,0,0,0,0};
+        assertNull(cache.get(100,100,EXACTLY_400,0,specs,1));
+        cache.put(100,100,EXACTLY_400,0,specs,1,plan(10));
+        //the specs are copied, so changing the array later doesn't change the key.
+        int[] same = specs.clone();
+        specs[0] = 9;
+
+        assertNotNull(cache.get(100,100,EXACTLY_400,0,same,1));
+        assertNull(cache.get(100,100,EXACTLY_400,0,specs,1));
+        assertNull(cache.get(100,101,EXACTLY_400,0,same,1));
+        assertEquals(1,cache.getHitCount());
+        assertEquals(3,cache.getMissCount());
+    }
+
+    @Test
+    public void put_overMaxSize_dropsLeastRecentlyUsed() throws Exception {
+        LayoutPlanCache cache = new LayoutPlanCache(2);
+        int[] specs = new int[CanvasGeometry.SPEC_STRIDE];
+        cache.put(1,1,0,0,specs,1,plan(1));
+        cache.put(2,2,0,0,specs,1,plan(2));
+        cache.get(1,1,0,0,specs,1);
+        cache.put(3,3,0,0,specs,1,plan(3));
+
+        assertEquals(2,cache.size());
+        assertNotNull(cache.get(1,1,0,0,specs,1));
+        assertNull(cache.get(2,2,0,0,specs,1));
+
+        cache.setMaxSize(1);
+        assertEquals(1,cache.size());
+    }
+
+    @Test
+    public void precompute_isFoundByTheMeasurePass() throws Exception {
+        LayoutPlanCache cache = new LayoutPlanCache(4);
+        int[] specs = {10,20,30,40,0,0,0,0};
+        LayoutPlan plan = cache.precompute(100,100,EXACTLY_400,0,specs,1);
+
+        assertSame(plan,cache.get(100,100,EXACTLY_400,0,specs,1));
+        assertSame(plan,cache.precompute(100,100,EXACTLY_400,0,specs,1));
+        int[] rects = new int[CanvasGeometry.RECT_STRIDE];
+        plan.copyRectsTo(rects);
+        assertArrayEquals(new int[]{40,80,160,240},rects);
+        assertEquals(400,plan.getMeasuredWidth());
+        assertEquals(400,plan.getMeasuredHeight());
+        assertEquals(1,cache.getHitCount());
+        assertEquals(0,cache.getMissCount());
+    }
+
+    @Test
+    public void compute_sizedByContent_isThePlanPrecomputeFinds() throws Exception {
+        LayoutPlanCache cache = new LayoutPlanCache(4);
+        int[] specs = {10,20,30,40,0,0,0,0};
+        //No design height, so the height follows the children.
+        CanvasGeometry geometry = new CanvasGeometry();
+        geometry.setDesignSize(100,0);
+        geometry.resolve(CanvasGeometry.EXACTLY,400,CanvasGeometry.UNSPECIFIED,0);
+        //The measure pass computes into the rects of its child store, which may have room for more children.
+        int[] rects = new int[4*CanvasGeometry.RECT_STRIDE];
+        LayoutPlan plan = cache.compute(geometry,EXACTLY_400,0,specs,1,rects);
+
+        assertEquals(400,plan.getMeasuredWidth());
+        assertEquals(240,plan.getMeasuredHeight());
+        assertSame(plan,cache.precompute(100,0,EXACTLY_400,0,specs,1));
+        cache.clear();
+        LayoutPlan precomputed = cache.precompute(100,0,EXACTLY_400,0,specs,1);
+        assertEquals(plan.getMeasuredWidth(),precomputed.getMeasuredWidth());
+        assertEquals(plan.getMeasuredHeight(),precomputed.getMeasuredHeight());
+    }
+}
@@ -0,0 +1,76 @@
+package org.kitpies.canvaslayout.geometry;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the hit-testing index of the children.
+ */
+public class SpatialGridTest {
+
+    private static int[] query(SpatialGrid grid, int x, int y){
+        int[] out = new int[grid.getCount()];
+        int[] found = Arrays.copyOf(out,grid.query(x,y,out));
+        Arrays.sort(found);
+        return found;
+    }
+
+    @Test
+    public void query_findsOverlappingRects() throws Exception {
+        SpatialGrid grid = new SpatialGrid();
+        grid.reset(100,100,3);
+        grid.update(0,0,0,100,100);
+        grid.update(1,40,40,60,60);
+        grid.update(2,-20,-20,10,10);
+
+        assertArrayEquals(new int[]{0,1},query(grid,50,50));
+        assertArrayEquals(new int[]{0},query(grid,60,60));
+        assertArrayEquals(new int[]{0,2},query(grid,0,0));
+        assertArrayEquals(new int[]{2},query(grid,-10,-10));
+        assertArrayEquals(new int[]{},query(grid,150,50));
+    }
+
+    private static int[] query(SpatialGrid grid, int left, int top, int right, int bottom){
+        int[] out = new int[grid.getCount()];
+        int[] found = Arrays.copyOf(out,grid.query(left,top,right,bottom,out));
+        Arrays.sort(found);
+        return found;
+    }
+
+    @Test
+    public void areaQuery_findsEveryIntersectingRectOnce() throws Exception {
+        SpatialGrid grid = new SpatialGrid();
+        grid.reset(100,100,9);
+        for(int i=0;i<4;i++){
+            grid.update(i,i*25,0,i*25+25,25);
+        }
+        //It spans every cell.
+        grid.update(4,0,0,100,100);
+        grid.update(5,200,200,210,210);
+
+        assertArrayEquals(new int[]{0,1,4},query(grid,10,10,50,20));
+        //The right and bottom edges don't intersect, like Rect.intersects().
+        assertArrayEquals(new int[]{4},query(grid,0,25,25,50));
+        assertArrayEquals(new int[]{5},query(grid,150,150,300,300));
+        assertArrayEquals(new int[]{0,1,2,3,4,5},query(grid,-50,-50,250,250));
+        assertArrayEquals(new int[]{},query(grid,10,10,10,50));
+        //Again, an item isn't skipped by the marks of the last query.
+        assertArrayEquals(new int[]{0,1,2,3,4,5},query(grid,-50,-50,250,250));
+    }
+
+    @Test
+    public void update_movesAndRemovesRects() throws Exception {
+        SpatialGrid grid = new SpatialGrid();
+        grid.reset(100,100,2);
+        grid.update(0,0,0,10,10);
+        grid.update(1,0,0,10,10);
+        grid.update(0,80,80,90,90);
+        grid.update(1,0,0,0,0);
+
+        assertArrayEquals(new int[]{},query(grid,5,5));
+        assertArrayEquals(new int[]{0},query(grid,85,85));
+    }
+}
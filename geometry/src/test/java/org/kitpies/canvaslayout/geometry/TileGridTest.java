@@ -0,0 +1,39 @@
+package org.kitpies.canvaslayout.geometry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the tile math of the tiled rendering.
+ */
+public class TileGridTest {
+
+    @Test
+    public void zoomLevel_neverRendersBelowTheScale() throws Exception {
+        assertEquals(0,TileGrid.zoomLevel(1.0f,-4,4));
+        assertEquals(1,TileGrid.zoomLevel(1.2f,-4,4));
+        assertEquals(-2,TileGrid.zoomLevel(0.25f,-4,4));
+        assertEquals(4,TileGrid.zoomLevel(100.0f,-4,4));
+        assertEquals(-4,TileGrid.zoomLevel(0.001f,-4,4));
+    }
+
+    @Test
+    public void key_roundTrips() throws Exception {
+        long key = TileGrid.key(-3,12345,678);
+        assertEquals(-3,TileGrid.levelOf(key));
+        assertEquals(12345,TileGrid.columnOf(key));
+        assertEquals(678,TileGrid.rowOf(key));
+        assertNotEquals(key,TileGrid.key(3,12345,678));
+    }
+
+    @Test
+    public void range_coversTheRectAtTheLevelScale() throws Exception {
+        int[] range = new int[4];
+        //At level 1 a tile of 256 pixels covers 128 pixels of the canvas.
+        assertTrue(TileGrid.range(100,0,257,128,1,256,range));
+        assertArrayEquals(new int[]{0,0,2,0},range);
+        assertEquals(256.0f,TileGrid.tileStart(2,1,256),0.0f);
+        assertFalse(TileGrid.range(-20,-20,-10,-10,0,256,range));
+    }
+}